@@ -34,6 +34,11 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        controller.close();
+    }
+
 
     public static void main(String[] args) {
         launch(args);
@@ -0,0 +1,24 @@
+package zip.config;
+
+/**
+ * 解压时的刷盘策略
+ *
+ * @author Ni187
+ */
+public enum FsyncPolicy {
+
+    /**
+     * 不主动刷盘，由操作系统决定
+     */
+    NONE,
+
+    /**
+     * 每个文件写入完成后立即刷盘
+     */
+    ENTRY,
+
+    /**
+     * 整个压缩包解压完成后，统一刷盘
+     */
+    ARCHIVE
+}
@@ -1,34 +1,120 @@
 package zip.config;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 
 /**
  * 管理全局配置
  * 读取zip.config文本内容
  * 设置读写zip文件时的 缓冲区大小，压缩等级，编码格式，是否采用覆盖模式
+ * 配置在读取或修改时一次性解析为不可变的 {@link ZipSettings} 快照；修改配置时复制后整体替换，
+ * 已经取得快照的任务不受影响
  *
  * @author Ni187
  */
 public class ZipConfigurator {
 
     /**
-     * 配置信息键值对集
+     * 配置信息键值对集，发布后不再修改，修改配置时复制后整体替换
      */
-    static Properties properties = new Properties();
+    private static volatile Properties properties = new Properties();
 
-    //加载类时读取配置文本内容，将信息读取到java.util.Properties对象中
-    static {
-        try(InputStream inputStream = Object.class.getResourceAsStream("/zip.config")) {
-            properties.load(inputStream);
-        } catch (IOException e) {
+    /**
+     * 当前配置的快照
+     */
+    private static volatile ZipSettings settings;
+
+    /**
+     * 重新读取配置文件，替换当前配置
+     */
+    public static synchronized void reload(){
+        Properties loaded = new Properties();
+        try(InputStream inputStream = ZipConfigurator.class.getResourceAsStream("/zip.config")) {
+            loaded.load(inputStream);
+        } catch (IOException | NullPointerException e) {
             System.err.println("读取配置文件异常，程序将会使用默认参数.");
             e.printStackTrace();
         }
+        //配置文件中指定了配置方案时，使用方案中的设置覆盖基础设置
+        String profile = loaded.getProperty(ZipConfigurator.PROFILE_PROPERTIES_NAME);
+        if (profile != null && !profile.trim().isEmpty() && !applyProfile(loaded, profile.trim())) {
+            System.err.println("未找到配置方案“" + profile.trim() + "”，使用基础设置.");
+        }
+        publish(loaded);
+    }
+
+    /**
+     * 取得当前配置的快照
+     * @return 不可变的配置
+     */
+    public static ZipSettings snapshot(){
+        return settings;
+    }
+
+    /**
+     * 复制当前配置并修改，再整体替换
+     * @param change 对副本的修改
+     */
+    private static synchronized void update(Consumer<Properties> change){
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        change.accept(copy);
+        publish(copy);
+    }
+
+    /**
+     * 解析配置并发布新的快照
+     * 格式错误或者超出范围的配置项不中断解析，使用默认值或者限制到范围内的值，全部解析后逐项输出
+     */
+    private static void publish(Properties newProperties){
+        List<String> errors = new ArrayList<>();
+        ZipSettings newSettings = new ZipSettings(
+                readBufferSize(newProperties, errors),
+                readLevel(newProperties, errors),
+                readCharset(newProperties, errors),
+                getBoolean(newProperties, COVERAGE_MODEL_PROPERTIES_NAME, DEFAULT_COVERAGE_MODEL, errors),
+                getBoolean(newProperties, INCREMENTAL_MODEL_PROPERTIES_NAME, DEFAULT_INCREMENTAL_MODEL, errors),
+                getBoolean(newProperties, CRC_CHECK_PROPERTIES_NAME, DEFAULT_CRC_CHECK, errors),
+                getBoolean(newProperties, CHANNEL_MODEL_PROPERTIES_NAME, DEFAULT_CHANNEL_MODEL, errors),
+                readFsyncPolicy(newProperties, errors),
+                getLong(newProperties, PREALLOCATE_THRESHOLD_PROPERTIES_NAME, DEFAULT_PREALLOCATE_THRESHOLD,
+                        0, Long.MAX_VALUE, errors),
+                getLong(newProperties, MAPPED_THRESHOLD_PROPERTIES_NAME, DEFAULT_MAPPED_THRESHOLD,
+                        0, Long.MAX_VALUE, errors),
+                getLong(newProperties, MAP_WINDOW_SIZE_PROPERTIES_NAME, DEFAULT_MAP_WINDOW_SIZE,
+                        MINIMUM_MAP_WINDOW_SIZE, Integer.MAX_VALUE, errors),
+                getDouble(newProperties, TARGET_THROUGHPUT_PROPERTIES_NAME, DEFAULT_TARGET_THROUGHPUT, errors),
+                getLong(newProperties, TIME_BUDGET_PROPERTIES_NAME, DEFAULT_TIME_BUDGET, 0, Long.MAX_VALUE, errors),
+                (int) getLong(newProperties, THREADS_PROPERTIES_NAME, DEFAULT_THREADS, 1, MAXIMUM_THREADS, errors),
+                getLong(newProperties, MEMORY_BUDGET_PROPERTIES_NAME, DEFAULT_MEMORY_BUDGET, 0, Long.MAX_VALUE, errors),
+                getLong(newProperties, SPILL_THRESHOLD_PROPERTIES_NAME, DEFAULT_SPILL_THRESHOLD,
+                        0, Long.MAX_VALUE, errors),
+                getDouble(newProperties, IO_RATE_LIMIT_PROPERTIES_NAME, DEFAULT_IO_RATE_LIMIT, errors),
+                getDouble(newProperties, IO_OPS_LIMIT_PROPERTIES_NAME, DEFAULT_IO_OPS_LIMIT, errors),
+                getString(newProperties, CODEC_PROPERTIES_NAME, DEFAULT_CODEC),
+                getString(newProperties, CODEC_RULES_PROPERTIES_NAME, DEFAULT_CODEC_RULES),
+                getLong(newProperties, SEEK_INTERVAL_PROPERTIES_NAME, DEFAULT_SEEK_INTERVAL, 0, Long.MAX_VALUE, errors),
+                (int) getLong(newProperties, PREFETCH_DEPTH_PROPERTIES_NAME, DEFAULT_PREFETCH_DEPTH,
+                        0, MAXIMUM_THREADS, errors),
+                (int) getLong(newProperties, PREFETCH_THRESHOLD_PROPERTIES_NAME, DEFAULT_PREFETCH_THRESHOLD,
+                        0, Integer.MAX_VALUE - 1, errors));
+        for (String error : errors) {
+            System.err.println(error);
+        }
+        properties = newProperties;
+        settings = newSettings;
     }
 
     /**
@@ -46,6 +132,16 @@ public class ZipConfigurator {
      */
     private final static int MINIMUM_BUFFER_SIZE = 256;
 
+    /**
+     * 最小内存映射窗口，与MappedInput一致
+     */
+    private final static long MINIMUM_MAP_WINDOW_SIZE = 1 << 16;
+
+    /**
+     * 线程数与预读数量的上限
+     */
+    private final static long MAXIMUM_THREADS = 1024;
+
     /**
      * 默认压缩规格等级
      */
@@ -61,6 +157,85 @@ public class ZipConfigurator {
      */
     private final static  boolean DEFAULT_COVERAGE_MODEL = true;
 
+    /**
+     * 解压时默认不开启增量模式
+     */
+    private final static boolean DEFAULT_INCREMENTAL_MODEL = false;
+
+    /**
+     * 增量解压时默认不进行CRC校验
+     */
+    private final static boolean DEFAULT_CRC_CHECK = false;
+
+    /**
+     * 解压时默认使用FileChannel写入
+     */
+    private final static boolean DEFAULT_CHANNEL_MODEL = true;
+
+    /**
+     * 解压时默认不主动刷盘
+     */
+    private final static FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.NONE;
+
+    /**
+     * 解压后不小于该大小（1MB）的文件预先设置文件长度
+     */
+    private final static long DEFAULT_PREALLOCATE_THRESHOLD = 1 << 20;
+
+    /**
+     * 压缩时不小于该大小（16MB）的源文件通过内存映射读取
+     */
+    private final static long DEFAULT_MAPPED_THRESHOLD = 16 << 20;
+
+    /**
+     * 内存映射窗口大小（64MB）
+     */
+    private final static long DEFAULT_MAP_WINDOW_SIZE = 64 << 20;
+
+    /**
+     * 默认不使用自适应压缩等级
+     */
+    private final static double DEFAULT_TARGET_THROUGHPUT = 0;
+    private final static long DEFAULT_TIME_BUDGET = 0;
+
+    /**
+     * 默认单线程压缩
+     */
+    private final static int DEFAULT_THREADS = 1;
+
+    /**
+     * 并行压缩时暂存压缩数据的内存预算（64MB）
+     */
+    private final static long DEFAULT_MEMORY_BUDGET = 64 << 20;
+
+    /**
+     * 并行压缩时，压缩后超过该大小（8MB）的条目转存到临时文件
+     */
+    private final static long DEFAULT_SPILL_THRESHOLD = 8 << 20;
+
+    /**
+     * 默认不限制读写速度与次数
+     */
+    private final static double DEFAULT_IO_RATE_LIMIT = 0;
+    private final static double DEFAULT_IO_OPS_LIMIT = 0;
+
+    /**
+     * 默认使用deflate压缩，没有按条目名选择压缩方式的规则
+     */
+    private final static String DEFAULT_CODEC = "deflate";
+    private final static String DEFAULT_CODEC_RULES = "";
+
+    /**
+     * 默认不记录deflate检查点
+     */
+    private final static long DEFAULT_SEEK_INTERVAL = 0;
+
+    /**
+     * 默认不预读小文件，开启时预读不超过64KB的文件
+     */
+    private final static long DEFAULT_PREFETCH_DEPTH = 0;
+    private final static long DEFAULT_PREFETCH_THRESHOLD = 64 * 1024;
+
     /**
      * 配置信息 key
      */
@@ -68,89 +243,469 @@ public class ZipConfigurator {
     private final static String LEVEL_PROPERTIES_NAME = "level";
     private final static String CHARSET_PROPERTIES_NAME = "charset";
     private final static String COVERAGE_MODEL_PROPERTIES_NAME = "CoverageMode";
+    private final static String INCREMENTAL_MODEL_PROPERTIES_NAME = "IncrementalMode";
+    private final static String CRC_CHECK_PROPERTIES_NAME = "CrcCheck";
+    private final static String CHANNEL_MODEL_PROPERTIES_NAME = "ChannelMode";
+    private final static String FSYNC_POLICY_PROPERTIES_NAME = "FsyncPolicy";
+    private final static String PREALLOCATE_THRESHOLD_PROPERTIES_NAME = "PreallocateThreshold";
+    private final static String MAPPED_THRESHOLD_PROPERTIES_NAME = "MappedThreshold";
+    private final static String MAP_WINDOW_SIZE_PROPERTIES_NAME = "MapWindowSize";
+    private final static String TARGET_THROUGHPUT_PROPERTIES_NAME = "TargetThroughput";
+    private final static String TIME_BUDGET_PROPERTIES_NAME = "TimeBudget";
+    private final static String THREADS_PROPERTIES_NAME = "Threads";
+    private final static String MEMORY_BUDGET_PROPERTIES_NAME = "MemoryBudget";
+    private final static String SPILL_THRESHOLD_PROPERTIES_NAME = "SpillThreshold";
+    private final static String IO_RATE_LIMIT_PROPERTIES_NAME = "IoRateLimit";
+    private final static String IO_OPS_LIMIT_PROPERTIES_NAME = "IoOpsLimit";
+    private final static String CODEC_PROPERTIES_NAME = "Codec";
+    private final static String CODEC_RULES_PROPERTIES_NAME = "CodecRules";
+    private final static String SEEK_INTERVAL_PROPERTIES_NAME = "SeekInterval";
+    private final static String PREFETCH_DEPTH_PROPERTIES_NAME = "PrefetchDepth";
+    private final static String PREFETCH_THRESHOLD_PROPERTIES_NAME = "PrefetchThreshold";
+    private final static String PROFILE_PROPERTIES_NAME = "Profile";
+
+    /**
+     * 配置方案中的设置以 profile.方案名.配置名 保存
+     */
+    private final static String PROFILE_KEY_PREFIX = "profile.";
+
+    //加载类时读取配置文本内容，将信息读取到java.util.Properties对象中，需要在默认值初始化之后
+    static {
+        reload();
+    }
 
 
     public static void setCharset(Charset charset){
-        properties.setProperty(CHARSET_PROPERTIES_NAME, charset.name());
+        update(p -> p.setProperty(CHARSET_PROPERTIES_NAME, charset.name()));
     }
 
     public static  void setBufferSize(int bufferSize){
-        System.out.println("原"+bufferSize);
-        properties.setProperty(BUFFER_SIZE_PROPERTIES_NAME, String.valueOf(bufferSize(bufferSize)));
-        System.out.println("后"+properties.getProperty(BUFFER_SIZE_PROPERTIES_NAME));
-
+        update(p -> p.setProperty(BUFFER_SIZE_PROPERTIES_NAME, String.valueOf(bufferSize(bufferSize))));
     }
 
     public static void setLevel(int level){
-        properties.setProperty(LEVEL_PROPERTIES_NAME, String.valueOf(level(level)));
+        update(p -> p.setProperty(LEVEL_PROPERTIES_NAME, String.valueOf(level(level))));
     }
 
     public static void setCoverageModel(boolean coverageModel){
-        properties.setProperty(CHARSET_PROPERTIES_NAME, String.valueOf(coverageModel));
+        update(p -> p.setProperty(COVERAGE_MODEL_PROPERTIES_NAME, String.valueOf(coverageModel)));
+    }
+
+    /**
+     * 读取配置方案中的设置
+     * @param name 方案名
+     * @return 配置名 -> 配置值，未找到方案时为空
+     */
+    public static Map<String, String> loadProfile(String name){
+        return loadProfile(properties, name);
+    }
+
+    private static Map<String, String> loadProfile(Properties properties, String name){
+        String prefix = PROFILE_KEY_PREFIX + name + ".";
+        Map<String, String> values = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                values.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 使用配置方案：以方案中的设置覆盖当前设置，方案中没有的设置保持不变
+     * @param name 方案名
+     * @return 是否找到该方案
+     */
+    public static boolean useProfile(String name){
+        if (loadProfile(name).isEmpty()) {
+            return false;
+        }
+        update(p -> applyProfile(p, name));
+        return true;
+    }
+
+    private static boolean applyProfile(Properties properties, String name){
+        Map<String, String> values = loadProfile(properties, name);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+        return !values.isEmpty();
+    }
+
+    /**
+     * 将配置方案写入配置文件，替换同名方案原有的设置，文件中的其他内容保持不变
+     * @param configFile 配置文件
+     * @param name 方案名
+     * @param values 配置名 -> 配置值
+     * @throws IOException 读写异常
+     */
+    public static void saveProfile(File configFile, String name, Map<String, String> values) throws IOException {
+        String prefix = PROFILE_KEY_PREFIX + name + ".";
+        List<String> lines = new ArrayList<>();
+        if (configFile.exists()) {
+            for (String line : Files.readAllLines(configFile.toPath(), StandardCharsets.ISO_8859_1)) {
+                if (!line.trim().startsWith(prefix)) {
+                    lines.add(line);
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            lines.add(prefix + entry.getKey() + " = " + entry.getValue());
+        }
+        Files.write(configFile.toPath(), lines, StandardCharsets.ISO_8859_1);
+        update(p -> {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                p.setProperty(prefix + entry.getKey(), entry.getValue());
+            }
+        });
     }
 
     /**
      * 读取配置文件的缓存区容量大小（bufferSize）,如果读取不到返回默认值
      * @return 缓存区容量大小
      */
-    public static int getBufferSize(){
-        String bufferSizeValue;
+    private static int readBufferSize(Properties properties, List<String> errors){
+        String bufferSizeValue = properties.getProperty(BUFFER_SIZE_PROPERTIES_NAME);
+        if (bufferSizeValue == null) {
+            return DEFAULT_BUFFER_SIZE;
+        }
         try {
-            if ((bufferSizeValue = properties.getProperty(BUFFER_SIZE_PROPERTIES_NAME)) != null) {
-                return Integer.parseInt(bufferSizeValue);
+            int size = Integer.parseInt(bufferSizeValue.trim());
+            //换算为2次幂不算错误，超出最大最小容量时说明实际使用的值
+            if (size < MINIMUM_BUFFER_SIZE || size > MAXIMUM_BUFFER_SIZE) {
+                invalid(errors, BUFFER_SIZE_PROPERTIES_NAME, bufferSizeValue, bufferSize(size));
             }
-        }catch (Exception e){
-            System.err.println("读取bufferSize异常，使用默认值"+DEFAULT_BUFFER_SIZE);
-            e.printStackTrace();
+            return bufferSize(size);
+        } catch (NumberFormatException e) {
+            invalid(errors, BUFFER_SIZE_PROPERTIES_NAME, bufferSizeValue, DEFAULT_BUFFER_SIZE);
+            return DEFAULT_BUFFER_SIZE;
         }
-        return DEFAULT_BUFFER_SIZE;
     }
 
     /**
      * 读取配置文件的编码方式（charset）,如果读取不到返回默认值
      * @return 编码方式
      */
-    public static Charset getCharset(){
-        String charSetValue;
+    private static Charset readCharset(Properties properties, List<String> errors){
+        String charSetValue = properties.getProperty(CHARSET_PROPERTIES_NAME);
+        if (charSetValue == null) {
+            return DEFAULT_CHARSET;
+        }
         try {
-            if ((charSetValue = properties.getProperty(CHARSET_PROPERTIES_NAME)) != null) {
-                return Charset.forName(charSetValue);
-            }
-        }catch (Exception e){
-            System.err.println("读取charset异常，使用默认值"+DEFAULT_CHARSET);
-            e.printStackTrace();
+            return Charset.forName(charSetValue.trim());
+        } catch (IllegalArgumentException e) {
+            invalid(errors, CHARSET_PROPERTIES_NAME, charSetValue, DEFAULT_CHARSET);
+            return DEFAULT_CHARSET;
         }
-        return DEFAULT_CHARSET;
     }
 
     /**
      * 读取配置文件的压缩等级（level）,如果读取不到返回默认值
      * @return 压缩等级
      */
-    public static int getLevel(){
-        String levelValue;
+    private static int readLevel(Properties properties, List<String> errors){
+        String levelValue = properties.getProperty(LEVEL_PROPERTIES_NAME);
+        if (levelValue == null) {
+            return DEFAULT_COMPRESSION_LEVEL;
+        }
         try {
-            if ((levelValue = properties.getProperty(LEVEL_PROPERTIES_NAME)) != null) {
-                return level(Integer.parseInt(levelValue));
+            int level = Integer.parseInt(levelValue.trim());
+            if (level(level) != level) {
+                invalid(errors, LEVEL_PROPERTIES_NAME, levelValue, DEFAULT_COMPRESSION_LEVEL);
             }
-        }catch (Exception e){
-            System.err.println("读取level异常，使用默认值"+DEFAULT_COMPRESSION_LEVEL);
-            e.printStackTrace();
+            return level(level);
+        } catch (NumberFormatException e) {
+            invalid(errors, LEVEL_PROPERTIES_NAME, levelValue, DEFAULT_COMPRESSION_LEVEL);
+            return DEFAULT_COMPRESSION_LEVEL;
         }
-        return DEFAULT_COMPRESSION_LEVEL;
+    }
+
+    /**
+     * 读取配置文件的刷盘策略（FsyncPolicy）,如果读取不到返回默认值
+     * @return 刷盘策略
+     */
+    private static FsyncPolicy readFsyncPolicy(Properties properties, List<String> errors){
+        String policyValue = properties.getProperty(FSYNC_POLICY_PROPERTIES_NAME);
+        if (policyValue == null) {
+            return DEFAULT_FSYNC_POLICY;
+        }
+        try {
+            return FsyncPolicy.valueOf(policyValue.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            invalid(errors, FSYNC_POLICY_PROPERTIES_NAME, policyValue, DEFAULT_FSYNC_POLICY);
+            return DEFAULT_FSYNC_POLICY;
+        }
+    }
+
+    /**
+     * 当前配置的缓存区容量大小（bufferSize）
+     * @return 缓存区容量大小
+     */
+    public static int getBufferSize(){
+        return settings.getBufferSize();
+    }
+
+    /**
+     * 当前配置的编码方式（charset）
+     * @return 编码方式
+     */
+    public static Charset getCharset(){
+        return settings.getCharset();
+    }
+
+    /**
+     * 当前配置的压缩等级（level）
+     * @return 压缩等级
+     */
+    public static int getLevel(){
+        return settings.getLevel();
     }
 
     public static boolean isCoverageMode(){
-        String modelValue;
-        try{
-            if ((modelValue = properties.getProperty(COVERAGE_MODEL_PROPERTIES_NAME)) != null) {
-                return Boolean.parseBoolean(modelValue);
+        return settings.isCoverageMode();
+    }
+
+    /**
+     * 当前配置的增量解压模式（IncrementalMode）
+     * @return 是否开启增量解压
+     */
+    public static boolean isIncrementalMode(){
+        return settings.isIncrementalMode();
+    }
+
+    /**
+     * 当前配置的CRC校验设置（CrcCheck）
+     * @return 增量解压时是否通过CRC32确认文件内容
+     */
+    public static boolean isCrcCheck(){
+        return settings.isCrcCheck();
+    }
+
+    /**
+     * 当前配置的FileChannel解压模式（ChannelMode）
+     * @return 解压时是否通过FileChannel写入
+     */
+    public static boolean isChannelMode(){
+        return settings.isChannelMode();
+    }
+
+    /**
+     * 当前配置的刷盘策略（FsyncPolicy）
+     * @return 刷盘策略
+     */
+    public static FsyncPolicy getFsyncPolicy(){
+        return settings.getFsyncPolicy();
+    }
+
+    /**
+     * 当前配置的自适应压缩目标吞吐量（TargetThroughput，MB/s）
+     * @return 目标吞吐量，小于等于0表示不使用
+     */
+    public static double getTargetThroughput(){
+        return settings.getTargetThroughput();
+    }
+
+    /**
+     * 读取配置文件的预分配阈值（PreallocateThreshold）,如果读取不到返回默认值
+     * @return 预分配阈值，小于等于0表示不预分配
+     */
+    public static long getPreallocateThreshold(){
+        return settings.getPreallocateThreshold();
+    }
+
+    /**
+     * 读取配置文件的内存映射阈值（MappedThreshold）,如果读取不到返回默认值
+     * @return 内存映射阈值，小于等于0表示不使用内存映射
+     */
+    public static long getMappedThreshold(){
+        return settings.getMappedThreshold();
+    }
+
+    /**
+     * 读取配置文件的内存映射窗口大小（MapWindowSize）,如果读取不到返回默认值
+     * @return 内存映射窗口大小
+     */
+    public static long getMapWindowSize(){
+        return settings.getMapWindowSize();
+    }
+
+    /**
+     * 读取配置文件的自适应压缩时间预算（TimeBudget，毫秒）,如果读取不到返回默认值
+     * @return 时间预算，小于等于0表示不使用
+     */
+    public static long getTimeBudget(){
+        return settings.getTimeBudget();
+    }
+
+    /**
+     * 读取配置文件的压缩线程数（Threads）,如果读取不到返回默认值
+     * @return 压缩线程数，不小于1
+     */
+    public static int getThreads(){
+        return settings.getThreads();
+    }
+
+    /**
+     * 读取配置文件的并行压缩内存预算（MemoryBudget）,如果读取不到返回默认值
+     * @return 内存预算
+     */
+    public static long getMemoryBudget(){
+        return settings.getMemoryBudget();
+    }
+
+    /**
+     * 读取配置文件的转存阈值（SpillThreshold）,如果读取不到返回默认值
+     * @return 转存阈值，小于等于0表示不转存
+     */
+    public static long getSpillThreshold(){
+        return settings.getSpillThreshold();
+    }
+
+    /**
+     * 当前配置的读写限速（IoRateLimit，MB/s）
+     * @return 读写限速，小于等于0表示不限制
+     */
+    public static double getIoRateLimit(){
+        return settings.getIoRateLimit();
+    }
+
+    /**
+     * 当前配置的每秒读写次数限制（IoOpsLimit）
+     * @return 每秒读写次数限制，小于等于0表示不限制
+     */
+    public static double getIoOpsLimit(){
+        return settings.getIoOpsLimit();
+    }
+
+    /**
+     * 当前配置的默认压缩方式（Codec）
+     * @return 压缩方式名称
+     */
+    public static String getCodec(){
+        return settings.getCodec();
+    }
+
+    /**
+     * 当前配置的按条目名选择压缩方式的规则（CodecRules）
+     * @return 规则，格式为 "模式:压缩方式"，以逗号分隔
+     */
+    public static String getCodecRules(){
+        return settings.getCodecRules();
+    }
+
+    /**
+     * 当前配置的deflate检查点间隔（SeekInterval），大条目每压缩该长度的原始数据记录一个检查点，
+     * 解压时可以从检查点开始并行解压或者读取其中一段
+     * @return 检查点间隔，小于等于0表示不记录
+     */
+    public static long getSeekInterval(){
+        return settings.getSeekInterval();
+    }
+
+    /**
+     * 当前配置的小文件预读数量（PrefetchDepth），压缩时同时提前读取的小文件数量，
+     * 适用于打开文件延迟较高的网络文件系统
+     * @return 预读数量，小于等于0表示不预读
+     */
+    public static int getPrefetchDepth(){
+        return settings.getPrefetchDepth();
+    }
+
+    /**
+     * 当前配置的预读文件大小上限（PrefetchThreshold），不超过该大小的文件才预读
+     * @return 文件大小上限，字节
+     */
+    public static int getPrefetchThreshold(){
+        return settings.getPrefetchThreshold();
+    }
+
+    /**
+     * 读取字符串类型的配置，去除首尾空白，读取不到时返回默认值
+     * @param name 配置名
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    private static String getString(Properties properties, String name, String defaultValue){
+        String value = properties.getProperty(name);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    /**
+     * 读取布尔类型的配置，读取不到时返回默认值，不是true或false时说明并返回默认值
+     * @param name 配置名
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    private static boolean getBoolean(Properties properties, String name, boolean defaultValue, List<String> errors){
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if ("true".equalsIgnoreCase(value.trim()) || "false".equalsIgnoreCase(value.trim())) {
+            return Boolean.parseBoolean(value.trim());
+        }
+        invalid(errors, name, value, defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * 读取小数类型的配置，读取不到时返回默认值，格式错误时说明并返回默认值
+     * 负数与NaN视为0（不使用），并说明
+     * @param name 配置名
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    private static double getDouble(Properties properties, String name, double defaultValue, List<String> errors){
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            if (parsed >= 0) {
+                return parsed;
             }
-        }catch (Exception e){
-            System.err.println("读取CoverageMode异常，使用默认值"+DEFAULT_COMPRESSION_LEVEL);
-            e.printStackTrace();
+            invalid(errors, name, value, 0);
+            return 0;
+        } catch (NumberFormatException e) {
+            invalid(errors, name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 读取整数类型的配置，读取不到时返回默认值，格式错误时说明并返回默认值，超出范围时说明并限制到范围内
+     * @param name 配置名
+     * @param defaultValue 默认值
+     * @param min 最小值
+     * @param max 最大值
+     * @return 配置值
+     */
+    private static long getLong(Properties properties, String name, long defaultValue, long min, long max,
+                                List<String> errors){
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
         }
-        return DEFAULT_COVERAGE_MODEL;
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+            long clamped = Math.min(Math.max(parsed, min), max);
+            invalid(errors, name, value, clamped);
+            return clamped;
+        } catch (NumberFormatException e) {
+            invalid(errors, name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 记录一个无效的配置项：配置名、配置值与实际使用的值
+     */
+    private static void invalid(List<String> errors, String name, String value, Object used){
+        errors.add("配置项" + name + "的值“" + value + "”无效，使用" + used);
     }
 
     /**
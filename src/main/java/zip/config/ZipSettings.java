@@ -0,0 +1,261 @@
+package zip.config;
+
+import java.nio.charset.Charset;
+
+
+/**
+ * 不可变的配置快照：
+ * 由ZipConfigurator在读取或者修改配置时一次性解析、校验生成，之后只读
+ * 每个压缩或解压任务开始时取得一份快照，任务执行期间修改配置不会影响该任务
+ *
+ * @author Ni187
+ */
+public final class ZipSettings {
+
+    private final int bufferSize;
+
+    private final int level;
+
+    private final Charset charset;
+
+    private final boolean coverageMode;
+
+    private final boolean incrementalMode;
+
+    private final boolean crcCheck;
+
+    private final boolean channelMode;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final long preallocateThreshold;
+
+    private final long mappedThreshold;
+
+    private final long mapWindowSize;
+
+    private final double targetThroughput;
+
+    private final long timeBudget;
+
+    private final int threads;
+
+    private final long memoryBudget;
+
+    private final long spillThreshold;
+
+    private final double ioRateLimit;
+
+    private final double ioOpsLimit;
+
+    private final String codec;
+
+    private final String codecRules;
+
+    private final long seekInterval;
+
+    private final int prefetchDepth;
+
+    private final int prefetchThreshold;
+
+    ZipSettings(int bufferSize, int level, Charset charset, boolean coverageMode,
+                boolean incrementalMode, boolean crcCheck, boolean channelMode, FsyncPolicy fsyncPolicy,
+                long preallocateThreshold, long mappedThreshold, long mapWindowSize,
+                double targetThroughput, long timeBudget, int threads, long memoryBudget, long spillThreshold,
+                double ioRateLimit, double ioOpsLimit, String codec, String codecRules,
+                long seekInterval, int prefetchDepth, int prefetchThreshold) {
+        this.bufferSize = bufferSize;
+        this.level = level;
+        this.charset = charset;
+        this.coverageMode = coverageMode;
+        this.incrementalMode = incrementalMode;
+        this.crcCheck = crcCheck;
+        this.channelMode = channelMode;
+        this.fsyncPolicy = fsyncPolicy;
+        this.preallocateThreshold = preallocateThreshold;
+        this.mappedThreshold = mappedThreshold;
+        this.mapWindowSize = mapWindowSize;
+        this.targetThroughput = targetThroughput;
+        this.timeBudget = timeBudget;
+        this.threads = threads;
+        this.memoryBudget = memoryBudget;
+        this.spillThreshold = spillThreshold;
+        this.ioRateLimit = ioRateLimit;
+        this.ioOpsLimit = ioOpsLimit;
+        this.codec = codec;
+        this.codecRules = codecRules;
+        this.seekInterval = seekInterval;
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchThreshold = prefetchThreshold;
+    }
+
+    /**
+     * @return 缓冲区大小
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return 压缩等级
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return 编码格式
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return 是否采用覆盖模式
+     */
+    public boolean isCoverageMode() {
+        return coverageMode;
+    }
+
+    /**
+     * @return 是否开启增量解压
+     */
+    public boolean isIncrementalMode() {
+        return incrementalMode;
+    }
+
+    /**
+     * @return 是否通过CRC32确认文件内容
+     */
+    public boolean isCrcCheck() {
+        return crcCheck;
+    }
+
+    /**
+     * @return 解压时是否通过FileChannel写入
+     */
+    public boolean isChannelMode() {
+        return channelMode;
+    }
+
+    /**
+     * @return 刷盘策略
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * @return 预分配阈值，小于等于0表示不预分配
+     */
+    public long getPreallocateThreshold() {
+        return preallocateThreshold;
+    }
+
+    /**
+     * @return 内存映射阈值，小于等于0表示不使用内存映射
+     */
+    public long getMappedThreshold() {
+        return mappedThreshold;
+    }
+
+    /**
+     * @return 内存映射窗口大小
+     */
+    public long getMapWindowSize() {
+        return mapWindowSize;
+    }
+
+    /**
+     * @return 自适应压缩目标吞吐量（MB/s），小于等于0表示不使用
+     */
+    public double getTargetThroughput() {
+        return targetThroughput;
+    }
+
+    /**
+     * @return 自适应压缩时间预算（毫秒），小于等于0表示不使用
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * @return 压缩线程数，不小于1
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return 并行压缩内存预算
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return 转存阈值，小于等于0表示不转存
+     */
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @return 读写限速（MB/s），小于等于0表示不限制
+     */
+    public double getIoRateLimit() {
+        return ioRateLimit;
+    }
+
+    /**
+     * @return 每秒读写次数限制，小于等于0表示不限制
+     */
+    public double getIoOpsLimit() {
+        return ioOpsLimit;
+    }
+
+    /**
+     * @return 默认的压缩方式名称
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return 按条目名选择压缩方式的规则，格式为 "模式:压缩方式"，以逗号分隔，为空表示没有规则
+     */
+    public String getCodecRules() {
+        return codecRules;
+    }
+
+    /**
+     * @return deflate检查点间隔，小于等于0表示不记录检查点
+     */
+    public long getSeekInterval() {
+        return seekInterval;
+    }
+
+    /**
+     * @return 小文件预读的并发读取数量，小于等于0表示不预读
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * @return 预读的文件大小上限
+     */
+    public int getPrefetchThreshold() {
+        return prefetchThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "buffersize=" + bufferSize + "， " +
+                "level=" + level + "， " +
+                "charset=" + charset + ", " +
+                "coverageModel=" + coverageMode + ", " +
+                "codec=" + codec;
+    }
+}
@@ -0,0 +1,122 @@
+package zip.core;
+
+import java.util.zip.Deflater;
+
+
+/**
+ * 自适应压缩等级：
+ * 在压缩过程中统计实际吞吐量，与目标吞吐量比较，逐条目调高或者调低压缩等级，
+ * 在满足时间要求的前提下得到尽可能高的压缩率
+ * 目标可以是固定的吞吐量，也可以是截止时间（由剩余字节数与剩余时间计算需要的吞吐量）
+ *
+ * @author Ni187
+ */
+class AdaptiveLevelController {
+
+    /**
+     * 累计至少该字节数（4MB）后才评估一次吞吐量，避免小文件的计时误差
+     */
+    private static final long SAMPLE_BYTES = 4 << 20;
+
+    /**
+     * 实际吞吐量低于目标的该比例时降低等级
+     */
+    private static final double LOWER_RATIO = 0.95;
+
+    /**
+     * 实际吞吐量高于目标的该比例时提高等级
+     */
+    private static final double RAISE_RATIO = 1.25;
+
+    /**
+     * 目标吞吐量，MB/s，小于等于0表示不使用
+     */
+    private final double targetThroughput;
+
+    /**
+     * 时间预算，毫秒，小于等于0表示不使用
+     */
+    private final long timeBudget;
+
+    private int level;
+
+    private long deadline;
+
+    private long remainingBytes;
+
+    private long sampleBytes;
+
+    private long sampleNanos;
+
+    /**
+     * @param initialLevel     初始压缩等级
+     * @param targetThroughput 目标吞吐量，MB/s，小于等于0表示不使用
+     * @param timeBudget       整个任务的时间预算，毫秒，小于等于0表示不使用；同时设置时以时间预算为准
+     */
+    AdaptiveLevelController(int initialLevel, double targetThroughput, long timeBudget) {
+        this.level = clamp(initialLevel);
+        this.targetThroughput = targetThroughput;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * 任务开始，记录截止时间与待压缩的总字节数
+     *
+     * @param totalBytes 待压缩的总字节数
+     */
+    synchronized void start(long totalBytes) {
+        this.remainingBytes = totalBytes;
+        this.deadline = System.nanoTime() + timeBudget * 1_000_000;
+        this.sampleBytes = 0;
+        this.sampleNanos = 0;
+    }
+
+    /**
+     * @return 下一个条目使用的压缩等级
+     */
+    synchronized int nextLevel() {
+        return level;
+    }
+
+    /**
+     * 记录一个条目的压缩结果，累计到足够的字节数后调整压缩等级
+     *
+     * @param bytesIn 条目原始大小
+     * @param nanos   条目压缩（含读写）耗时
+     */
+    synchronized void record(long bytesIn, long nanos) {
+        remainingBytes -= bytesIn;
+        sampleBytes += bytesIn;
+        sampleNanos += nanos;
+        if (sampleBytes < SAMPLE_BYTES) {
+            return;
+        }
+        double measured = sampleBytes / 1048576.0 / (sampleNanos / 1e9);
+        double required = requiredThroughput();
+        if (measured < required * LOWER_RATIO) {
+            level = clamp(level - 1);
+        } else if (measured > required * RAISE_RATIO) {
+            level = clamp(level + 1);
+        }
+        sampleBytes = 0;
+        sampleNanos = 0;
+    }
+
+    /**
+     * @return 当前需要达到的吞吐量，MB/s
+     */
+    private double requiredThroughput() {
+        if (timeBudget > 0) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return Double.MAX_VALUE;
+            }
+            return Math.max(remainingBytes, 0) / 1048576.0 / (remainingNanos / 1e9);
+        }
+        return targetThroughput;
+    }
+
+    private static int clamp(int level) {
+        return Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+    }
+}
@@ -0,0 +1,347 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+
+/**
+ * 只读的zip条目访问：
+ * 保持zip文件打开，并以LRU缓存解压后的条目数据，缓存总大小不超过容量，可选择缓存在堆外内存
+ * 多个线程同时读取同一个未缓存的条目时，只有一个线程解压，其余线程等待其结果
+ * 线程安全
+ *
+ * @author Ni187
+ */
+public class ArchiveCache implements Closeable {
+
+    /**
+     * 缓存键：zip文件与条目名
+     */
+    private static class Key {
+        final File archive;
+        final String name;
+
+        Key(File archive, String name) {
+            this.archive = archive;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return archive.equals(key.archive) && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(archive, name);
+        }
+    }
+
+    private final long capacity;
+
+    private final boolean offHeap;
+
+    private final Charset charset;
+
+    /**
+     * 已打开的zip文件
+     */
+    private final Map<File, ZipArchiveReader> archives = new ConcurrentHashMap<>();
+
+    /**
+     * 按访问顺序排列的缓存，最久未访问的在最前，访问时需要同步
+     */
+    private final LinkedHashMap<Key, ByteBuffer> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 正在解压的条目
+     */
+    private final Map<Key, CompletableFuture<ByteBuffer>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 已缓存的字节数
+     */
+    private long cachedBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * 实际解压的次数，同时读取同一个条目的线程只计一次
+     */
+    private long loads;
+
+    private volatile boolean closed;
+
+    /**
+     * @param capacity 缓存容量（字节），大于容量的条目不缓存
+     * @param offHeap  是否将条目数据缓存在堆外内存
+     * @param charset  zip文件的编码
+     */
+    public ArchiveCache(long capacity, boolean offHeap, Charset charset) {
+        this.capacity = Math.max(capacity, 0);
+        this.offHeap = offHeap;
+        this.charset = charset;
+    }
+
+    /**
+     * 读取条目解压后的数据
+     *
+     * @param archive zip文件
+     * @param name    条目名
+     * @return 只读的数据，各调用者之间互不影响读取位置
+     * @throws IOException 未找到条目或者读取异常
+     */
+    public ByteBuffer read(File archive, String name) throws IOException {
+        if (closed) {
+            throw new IOException("缓存已关闭");
+        }
+        Key key = new Key(archive.getAbsoluteFile(), name);
+        synchronized (cache) {
+            ByteBuffer data = cache.get(key);
+            if (data != null) {
+                hits++;
+                return data.duplicate();
+            }
+            misses++;
+        }
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            ByteBuffer data;
+            //检查缓存之后、开始解压之前，其他线程可能刚好完成了解压
+            synchronized (cache) {
+                data = cache.get(key);
+            }
+            if (data == null) {
+                synchronized (cache) {
+                    loads++;
+                }
+                data = load(key).asReadOnlyBuffer();
+                put(key, data);
+            }
+            future.complete(data);
+            return data.duplicate();
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * 读取条目解压后的数据到字节数组
+     *
+     * @param archive zip文件
+     * @param name    条目名
+     * @return 数据
+     * @throws IOException 未找到条目或者读取异常
+     */
+    public byte[] readBytes(File archive, String name) throws IOException {
+        ByteBuffer data = read(archive, name);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 等待其他线程解压完成
+     */
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> future) throws IOException {
+        try {
+            return future.get().duplicate();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("读取条目时发生异常", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("读取条目时被中断", e);
+        }
+    }
+
+    private ByteBuffer load(Key key) throws IOException {
+        ZipArchiveReader reader = open(key.archive);
+        ZipArchiveReader.RawEntry entry = reader.getEntry(key.name);
+        if (entry == null || entry.isDirectory()) {
+            throw new FileNotFoundException("未找到条目“" + key.name + "”");
+        }
+        long size = entry.size;
+        if (size > Integer.MAX_VALUE) {
+            throw new ZipException("条目“" + key.name + "”过大，无法读取到内存");
+        }
+        ZipCodec codec = ZipCodecs.forMethod(entry.method);
+        if (codec == null || (entry.flags & 1) != 0) {
+            throw new ZipException("条目“" + key.name + "”加密或者使用了不支持的压缩方式：" + entry.method);
+        }
+        ByteBuffer data = offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+        byte[] bytes = new byte[(int) Math.min(Math.max(size, 1), 64 * 1024)];
+        CRC32 crc32 = new CRC32();
+        try (InputStream in = codec.decoder(reader.rawInput(entry))) {
+            int len;
+            while (data.hasRemaining() && (len = in.read(bytes, 0, Math.min(bytes.length, data.remaining()))) != -1) {
+                crc32.update(bytes, 0, len);
+                data.put(bytes, 0, len);
+            }
+            if (data.hasRemaining()) {
+                throw new ZipException("条目“" + key.name + "”数据不完整");
+            }
+            //解压后的数据多于记录的大小
+            if (in.read() != -1) {
+                throw new ZipException("条目“" + key.name + "”数据超出记录的大小");
+            }
+        }
+        //校验通过后才加入缓存
+        if (crc32.getValue() != entry.crc) {
+            throw new ZipException("条目“" + key.name + "”CRC校验失败");
+        }
+        data.flip();
+        return data;
+    }
+
+    private ZipArchiveReader open(File archive) throws IOException {
+        ZipArchiveReader reader = archives.get(archive);
+        if (reader != null) {
+            return reader;
+        }
+        if (!archive.exists()) {
+            throw new FileNotFoundException("未找到文件“" + archive.getCanonicalPath() + "”");
+        }
+        synchronized (archives) {
+            reader = archives.get(archive);
+            if (reader == null) {
+                reader = new ZipArchiveReader(archive, charset);
+                archives.put(archive, reader);
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * 加入缓存，超出容量时淘汰最久未访问的条目
+     * 被淘汰的堆外数据可能仍被调用者持有，由GC回收
+     */
+    private void put(Key key, ByteBuffer data) {
+        long size = data.capacity();
+        if (size > capacity || closed) {
+            return;
+        }
+        synchronized (cache) {
+            ByteBuffer previous = cache.put(key, data);
+            if (previous != null) {
+                cachedBytes -= previous.capacity();
+            }
+            cachedBytes += size;
+            Iterator<ByteBuffer> iterator = cache.values().iterator();
+            while (cachedBytes > capacity && iterator.hasNext()) {
+                cachedBytes -= iterator.next().capacity();
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (cache) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return 实际解压条目的次数
+     */
+    public long getLoads() {
+        synchronized (cache) {
+            return loads;
+        }
+    }
+
+    /**
+     * @return 命中率，没有读取时为0
+     */
+    public double getHitRate() {
+        synchronized (cache) {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * @return 已缓存的字节数
+     */
+    public long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * 清空缓存并关闭所有zip文件
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+        synchronized (archives) {
+            for (Map.Entry<File, ZipArchiveReader> archive : archives.entrySet()) {
+                try {
+                    archive.getValue().close();
+                } catch (IOException ioException) {
+                    System.err.println("关闭文件：“" + archive.getKey().getPath() + "” 时，发生异常：");
+                    ioException.printStackTrace();
+                }
+            }
+            archives.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (cache) {
+            return String.format("命中：%d，未命中：%d，命中率：%.2f%%，淘汰：%d，已缓存：%dB",
+                    hits, misses, getHitRate() * 100, evictions, cachedBytes);
+        }
+    }
+}
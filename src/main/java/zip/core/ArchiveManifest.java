@@ -0,0 +1,203 @@
+package zip.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+
+/**
+ * 压缩包清单：记录每个条目的大小、修改时间与CRC32，以及增量压缩包中被删除的条目
+ * 用于增量备份时与当前文件比较，只压缩新增或者修改过的文件
+ * 增量压缩包中以 {@link #ENTRY_NAME} 条目保存完整的清单，因此增量压缩包本身也可以作为下一次增量的基准
+ *
+ * @author Ni187
+ */
+public class ArchiveManifest {
+
+    /**
+     * 增量压缩包中保存清单的条目名
+     */
+    static final String ENTRY_NAME = ".zipdelta.manifest";
+
+    /**
+     * zip中记录的修改时间为DOS格式，精度为2秒
+     */
+    private static final long TIME_PRECISION = 2000;
+
+    private static final String FILE_KEY_PREFIX = "file.";
+    private static final String DELETED_KEY_PREFIX = "deleted.";
+
+    /**
+     * 清单中的一个条目
+     */
+    static class Record {
+        final long size;
+        final long time;
+        final long crc;
+
+        Record(long size, long time, long crc) {
+            this.size = size;
+            this.time = time;
+            this.crc = crc;
+        }
+
+        /**
+         * @return 大小与修改时间是否与文件相同
+         */
+        boolean matches(long size, long time) {
+            return this.size == size && Math.abs(this.time - time) < TIME_PRECISION;
+        }
+    }
+
+    private final Map<String, Record> records = new LinkedHashMap<>();
+
+    /**
+     * 相对于基准被删除的条目
+     */
+    private final Set<String> deleted = new LinkedHashSet<>();
+
+    void put(String name, long size, long time, long crc) {
+        records.put(name, new Record(size, time, crc));
+    }
+
+    Record get(String name) {
+        return records.get(name);
+    }
+
+    void delete(String name) {
+        deleted.add(name);
+    }
+
+    Set<String> names() {
+        return Collections.unmodifiableSet(records.keySet());
+    }
+
+    Set<String> deleted() {
+        return Collections.unmodifiableSet(deleted);
+    }
+
+    /**
+     * @return 条目数量
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * 读取清单：
+     * 如果为zip文件，优先读取其中保存的清单条目，没有时根据中央目录生成；否则按清单文件读取
+     *
+     * @param file    zip文件或者清单文件
+     * @param charset zip文件的编码
+     * @return 清单
+     * @throws IOException 读取异常
+     */
+    public static ArchiveManifest read(File file, Charset charset) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("未找到文件“" + file.getCanonicalPath() + "”");
+        }
+        if (!isZip(file)) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                return load(in);
+            }
+        }
+        //压缩包中可能有deflate之外的压缩方式，ZipFile无法打开，因此直接读取中央目录
+        try (ZipArchiveReader reader = new ZipArchiveReader(file, charset)) {
+            ZipArchiveReader.RawEntry manifestEntry = reader.getEntry(ENTRY_NAME);
+            if (manifestEntry != null) {
+                ZipCodec codec = ZipCodecs.forMethod(manifestEntry.method);
+                if (codec == null) {
+                    throw new ZipException("清单条目使用了不支持的压缩方式：" + manifestEntry.method);
+                }
+                try (InputStream in = codec.decoder(reader.rawInput(manifestEntry))) {
+                    return load(in);
+                }
+            }
+            ArchiveManifest manifest = new ArchiveManifest();
+            for (ZipArchiveReader.RawEntry entry : reader.entries()) {
+                manifest.put(entry.name, entry.size, entry.getTime(), entry.crc);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * 将zip文件的清单保存为清单文件，之后可以代替该zip文件作为增量备份的基准
+     *
+     * @param archive      zip文件
+     * @param manifestFile 清单文件
+     * @param charset      zip文件的编码
+     * @throws IOException 读写异常
+     */
+    public static void export(File archive, File manifestFile, Charset charset) throws IOException {
+        Files.write(manifestFile.toPath(), read(archive, charset).toBytes());
+    }
+
+    /**
+     * 以zip文件头标志判断是否为zip文件
+     */
+    private static boolean isZip(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return in.read() == 'P' && in.read() == 'K';
+        }
+    }
+
+    static ArchiveManifest fromBytes(byte[] bytes) throws IOException {
+        return load(new ByteArrayInputStream(bytes));
+    }
+
+    private static ArchiveManifest load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        ArchiveManifest manifest = new ArchiveManifest();
+        try {
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(FILE_KEY_PREFIX)) {
+                    String[] values = properties.getProperty(key).split(",");
+                    manifest.put(key.substring(FILE_KEY_PREFIX.length()),
+                            Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+                } else if (key.startsWith(DELETED_KEY_PREFIX)) {
+                    manifest.delete(key.substring(DELETED_KEY_PREFIX.length()));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("清单格式错误", e);
+        }
+        return manifest;
+    }
+
+    byte[] toBytes() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            properties.setProperty(FILE_KEY_PREFIX + entry.getKey(), record.size + "," + record.time + "," + record.crc);
+        }
+        for (String name : deleted) {
+            properties.setProperty(DELETED_KEY_PREFIX + name, "");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            properties.store(writer, "zip archive manifest");
+        }
+        return out.toByteArray();
+    }
+}
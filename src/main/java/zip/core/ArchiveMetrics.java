@@ -0,0 +1,335 @@
+package zip.core;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 压缩与解压活动的累计指标，在平台MBeanServer中注册为
+ * zip.core:type=ArchiveMetrics,name=Compress 与 zip.core:type=ArchiveMetrics,name=Extract，
+ * 可以通过JConsole等工具查看，进程中所有的ZipCompressor与ZipDecompressor共用
+ * 所有计数都使用LongAdder，记录时不加锁，多个工作线程同时记录不会互相等待；读取时汇总，因此读取到的各项之间不保证一致
+ * 吞吐量按有任务进行的实际时间计算，多个任务或者多个工作线程同时进行时不重复计时；任务开始与结束时才需要同步
+ * 条目耗时按条目大小分级记录到直方图中，耗时区间按2的幂划分（微秒）
+ *
+ * @author Ni187
+ */
+public class ArchiveMetrics implements ArchiveMetricsMBean {
+
+    /**
+     * 条目大小分级的上限（不包含），最后一级没有上限
+     */
+    private static final long[] SIZE_BOUNDS = {4L << 10, 64L << 10, 1L << 20, 16L << 20, 256L << 20};
+
+    private static final String[] SIZE_CLASSES = {"<4KB", "4KB-64KB", "64KB-1MB", "1MB-16MB", "16MB-256MB", ">=256MB"};
+
+    /**
+     * 耗时区间数量，第i个区间为 [2^(i-1), 2^i) 微秒，最后一个区间约为36分钟以上
+     */
+    private static final int LATENCY_BUCKETS = 32;
+
+    private static final ArchiveMetrics COMPRESS = register("Compress");
+
+    private static final ArchiveMetrics EXTRACT = register("Extract");
+
+    private final LongAdder activeJobs = new LongAdder();
+
+    private final LongAdder completedJobs = new LongAdder();
+
+    private final LongAdder failedJobs = new LongAdder();
+
+    private final LongAdder entries = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * 原始数据的字节数与各条目处理耗时之和，用于计算吞吐量
+     */
+    private final LongAdder rawBytes = new LongAdder();
+
+    private final LongAdder entryNanos = new LongAdder();
+
+    /**
+     * 有任务进行的累计时间：busyJobs从0变为1时开始计时，变回0时累加到busyNanos，由this同步
+     */
+    private int busyJobs;
+
+    private long busySince;
+
+    private long busyNanos;
+
+    private final LongAdder[][] histogram = new LongAdder[SIZE_CLASSES.length][LATENCY_BUCKETS];
+
+    private ArchiveMetrics() {
+        for (LongAdder[] buckets : histogram) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * 创建并注册到平台MBeanServer，注册失败（如同名的MBean已由其他类加载器注册）时仍然记录，只是无法通过JMX查看
+     */
+    private static ArchiveMetrics register(String name) {
+        ArchiveMetrics metrics = new ArchiveMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("zip.core:type=ArchiveMetrics,name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            System.err.println("注册MBean“" + name + "”失败：" + e);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return 压缩活动的指标
+     */
+    public static ArchiveMetrics compress() {
+        return COMPRESS;
+    }
+
+    /**
+     * @return 解压活动的指标
+     */
+    public static ArchiveMetrics extract() {
+        return EXTRACT;
+    }
+
+    /**
+     * 开始一个任务
+     */
+    void jobStarted() {
+        activeJobs.increment();
+        synchronized (this) {
+            if (busyJobs++ == 0) {
+                busySince = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * 结束一个任务
+     *
+     * @param succeeded 是否成功完成
+     */
+    void jobFinished(boolean succeeded) {
+        activeJobs.decrement();
+        synchronized (this) {
+            if (--busyJobs == 0) {
+                busyNanos += System.nanoTime() - busySince;
+            }
+        }
+        if (succeeded) {
+            completedJobs.increment();
+        } else {
+            failedJobs.increment();
+        }
+    }
+
+    /**
+     * 记录一个处理完成的条目
+     *
+     * @param size  原始数据大小，用于确定大小分级
+     * @param in    读入的字节数
+     * @param out   写出的字节数
+     * @param nanos 处理耗时
+     */
+    void entryDone(long size, long in, long out, long nanos) {
+        entries.increment();
+        bytesIn.add(in);
+        bytesOut.add(out);
+        rawBytes.add(size);
+        entryNanos.add(nanos);
+        histogram[sizeClass(size)][bucket(TimeUnit.NANOSECONDS.toMicros(nanos))].increment();
+    }
+
+    /**
+     * 记录一个处理失败的条目
+     */
+    void entryFailed() {
+        errors.increment();
+    }
+
+    private static int sizeClass(long size) {
+        int i = 0;
+        while (i < SIZE_BOUNDS.length && size >= SIZE_BOUNDS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(Math.max(micros, 0)), LATENCY_BUCKETS - 1);
+    }
+
+    @Override
+    public long getActiveJobs() {
+        return activeJobs.sum();
+    }
+
+    @Override
+    public long getCompletedJobs() {
+        return completedJobs.sum();
+    }
+
+    @Override
+    public long getFailedJobs() {
+        return failedJobs.sum();
+    }
+
+    @Override
+    public long getEntries() {
+        return entries.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public double getThroughput() {
+        long nanos;
+        synchronized (this) {
+            nanos = busyNanos + (busyJobs > 0 ? System.nanoTime() - busySince : 0);
+        }
+        return throughput(rawBytes.sum(), nanos);
+    }
+
+    @Override
+    public double getEntryThroughput() {
+        return throughput(rawBytes.sum(), entryNanos.sum());
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes / 1024.0 / 1024.0 / (nanos / 1e9);
+    }
+
+    @Override
+    public String[] getSizeClasses() {
+        return SIZE_CLASSES.clone();
+    }
+
+    @Override
+    public long[] getLatencyBounds() {
+        long[] bounds = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS - 1; i++) {
+            bounds[i] = 1L << i;
+        }
+        bounds[LATENCY_BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    @Override
+    public long[][] getLatencyHistogram() {
+        long[][] counts = new long[SIZE_CLASSES.length][LATENCY_BUCKETS];
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < LATENCY_BUCKETS; j++) {
+                counts[i][j] = histogram[i][j].sum();
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public String getLatencySummary() {
+        long[][] counts = getLatencyHistogram();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            long total = 0;
+            for (long count : counts[i]) {
+                total += count;
+            }
+            if (total == 0) {
+                continue;
+            }
+            builder.append(SIZE_CLASSES[i]).append("：").append(total).append("个")
+                    .append("，p50<").append(percentile(counts[i], total, 50)).append("us")
+                    .append("，p90<").append(percentile(counts[i], total, 90)).append("us")
+                    .append("，p99<").append(percentile(counts[i], total, 99)).append("us")
+                    .append("，p999<").append(percentile(counts[i], total, 99.9)).append("us")
+                    .append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public long latencyPercentile(int sizeClass, double percentile) {
+        if (sizeClass < 0 || sizeClass >= SIZE_CLASSES.length) {
+            throw new IllegalArgumentException("大小分级无效：" + sizeClass);
+        }
+        long[] counts = getLatencyHistogram()[sizeClass];
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total == 0 ? 0 : percentile(counts, total, percentile);
+    }
+
+    /**
+     * @return 百分位数所在区间的上限，微秒
+     */
+    private long percentile(long[] counts, long total, double percentile) {
+        long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        long[] bounds = getLatencyBounds();
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return bounds[i];
+            }
+        }
+        return bounds[bounds.length - 1];
+    }
+
+    @Override
+    public void reset() {
+        completedJobs.reset();
+        failedJobs.reset();
+        entries.reset();
+        errors.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        rawBytes.reset();
+        entryNanos.reset();
+        synchronized (this) {
+            busyNanos = 0;
+            busySince = System.nanoTime();
+        }
+        for (LongAdder[] buckets : histogram) {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "进行中：" + getActiveJobs() + "，完成：" + getCompletedJobs() + "，失败：" + getFailedJobs()
+                + "，条目：" + getEntries() + "，错误：" + getErrors()
+                + "，读入：" + getBytesIn() + "B，写出：" + getBytesOut() + "B"
+                + String.format("，吞吐量：%.2fMB/s", getThroughput());
+    }
+}
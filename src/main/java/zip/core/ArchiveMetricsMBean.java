@@ -0,0 +1,88 @@
+package zip.core;
+
+/**
+ * 压缩或解压活动的JMX接口，见 {@link ArchiveMetrics}
+ *
+ * @author Ni187
+ */
+public interface ArchiveMetricsMBean {
+
+    /**
+     * @return 正在进行的任务数量
+     */
+    long getActiveJobs();
+
+    /**
+     * @return 成功完成的任务数量
+     */
+    long getCompletedJobs();
+
+    /**
+     * @return 因异常结束的任务数量
+     */
+    long getFailedJobs();
+
+    /**
+     * @return 处理完成的条目数量，不包括目录
+     */
+    long getEntries();
+
+    /**
+     * @return 处理失败的条目数量
+     */
+    long getErrors();
+
+    /**
+     * @return 读入的字节数：压缩时为原始数据，解压时为压缩数据
+     */
+    long getBytesIn();
+
+    /**
+     * @return 写出的字节数：压缩时为压缩数据，解压时为原始数据
+     */
+    long getBytesOut();
+
+    /**
+     * @return 原始数据的累计吞吐量（MB/s），按有任务进行的实际时间计算，多个任务或线程同时进行时不重复计时
+     */
+    double getThroughput();
+
+    /**
+     * @return 单个工作线程处理条目的平均速度（MB/s），按各条目的处理时间之和计算
+     */
+    double getEntryThroughput();
+
+    /**
+     * @return 条目大小分级的名称，与直方图的第一维对应
+     */
+    String[] getSizeClasses();
+
+    /**
+     * @return 直方图每个区间耗时的上限（微秒，不包含），与直方图的第二维对应，最后一个区间没有上限
+     */
+    long[] getLatencyBounds();
+
+    /**
+     * @return 条目处理耗时的直方图：[大小分级][耗时区间] = 条目数量
+     */
+    long[][] getLatencyHistogram();
+
+    /**
+     * @return 每个大小分级的条目数量与耗时的p50、p90、p99、p999
+     */
+    String getLatencySummary();
+
+    /**
+     * 估算耗时的百分位数
+     *
+     * @param sizeClass  大小分级的序号
+     * @param percentile 百分位，0到100
+     * @return 百分位数所在区间的上限，微秒，没有记录时为0
+     */
+    long latencyPercentile(int sizeClass, double percentile);
+
+    /**
+     * 清零所有计数，正在进行的任务数量除外
+     */
+    void reset();
+}
@@ -0,0 +1,421 @@
+package zip.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+
+/**
+ * 以Flow.Publisher的形式在内存中读取zip文件，不写入磁盘：
+ * 订阅后按请求数量依次发布条目，每个条目本身也是一个Publisher，订阅后按请求数量发布解压后的数据块
+ * 数据在调用request的线程上读取与解压，订阅者不请求时不读取，因此内存占用只取决于请求的数量
+ * 数据块来自缓冲池，只在onNext执行期间有效，onNext返回后被回收复用，需要保留数据时应当复制
+ * 条目的数据可以在任何时候订阅，也可以多次订阅，每次订阅都从头解压；数据结束时校验CRC32
+ * zip文件在有订阅时保持打开，所有订阅结束后关闭
+ *
+ * @author Ni187
+ */
+public class ArchivePublisher implements Flow.Publisher<ArchivePublisher.Entry> {
+
+    /**
+     * 缓冲池中保留的空闲数据块数量上限
+     */
+    private static final int MAX_POOLED_CHUNKS = 16;
+
+    /**
+     * zip中的一个条目：元数据与解压后数据的Publisher
+     */
+    public final class Entry implements Flow.Publisher<ByteBuffer> {
+
+        private final ZipArchiveReader.RawEntry entry;
+
+        private Entry(ZipArchiveReader.RawEntry entry) {
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return entry.name;
+        }
+
+        public boolean isDirectory() {
+            return entry.isDirectory();
+        }
+
+        /**
+         * @return 解压后的大小
+         */
+        public long getSize() {
+            return entry.size;
+        }
+
+        /**
+         * @return 压缩后的大小
+         */
+        public long getCompressedSize() {
+            return entry.compressedSize;
+        }
+
+        public long getCrc() {
+            return entry.crc;
+        }
+
+        /**
+         * @return 修改时间，无法解析时为-1
+         */
+        public long getTime() {
+            return entry.getTime();
+        }
+
+        /**
+         * 订阅条目解压后的数据，目录没有数据，直接完成
+         *
+         * @param subscriber 订阅者
+         */
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            new ChunkEmission(subscriber, entry).start();
+        }
+
+        @Override
+        public String toString() {
+            return entry.name;
+        }
+    }
+
+    private final File archive;
+
+    private final Charset charset;
+
+    private final int chunkSize;
+
+    private final IoThrottle throttle;
+
+    private final LongConsumer throttled;
+
+    /**
+     * 空闲的数据块
+     */
+    private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 打开的zip文件与正在进行的订阅数量，访问时需要同步
+     */
+    private ZipArchiveReader reader;
+
+    private int references;
+
+    /**
+     * 第一次打开时读取的中央目录，之后重新打开时沿用
+     */
+    private List<ZipArchiveReader.RawEntry> entries;
+
+    ArchivePublisher(File archive, Charset charset, int chunkSize, IoThrottle throttle, LongConsumer throttled) {
+        this.archive = archive;
+        this.charset = charset;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.throttle = throttle;
+        this.throttled = throttled;
+    }
+
+    /**
+     * 订阅条目，按中央目录中的顺序发布；读取中央目录失败时通过onError通知
+     *
+     * @param subscriber 订阅者
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Entry> subscriber) {
+        new EntryEmission(subscriber).start();
+    }
+
+    /**
+     * @return zip文件
+     */
+    public File getArchive() {
+        return archive;
+    }
+
+    private synchronized ZipArchiveReader acquire() throws IOException {
+        if (reader == null) {
+            reader = new ZipArchiveReader(archive, charset);
+            if (entries == null) {
+                entries = reader.entries();
+            }
+        }
+        references++;
+        return reader;
+    }
+
+    private synchronized void release() {
+        if (--references == 0) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            reader = null;
+        }
+    }
+
+    private synchronized List<ZipArchiveReader.RawEntry> entries() {
+        return entries;
+    }
+
+    /**
+     * 一次订阅：
+     * 请求与取消可能来自任何线程，也可能在onNext中调用，发布只在一个线程上进行，
+     * 其他线程的调用只增加计数，由正在发布的线程继续处理
+     */
+    private abstract static class Emission<T> implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * 发布循环需要处理的调用次数，不为0时已经有线程在发布
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        /**
+         * 开始前或者请求时发生的错误
+         */
+        private volatile Throwable error;
+
+        private boolean opened;
+
+        private boolean done;
+
+        Emission(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("请求数量必须大于0：" + n);
+            } else {
+                requested.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (pending.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done) {
+                    emit();
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * 按请求数量发布，直到没有请求、取消、出错或者结束
+         */
+        private void emit() {
+            try {
+                while (!cancelled && error == null && requested.get() > 0) {
+                    if (!opened) {
+                        open();
+                        opened = true;
+                    }
+                    T item = next();
+                    if (item == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(item);
+                    } finally {
+                        recycle(item);
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            if (cancelled) {
+                finish();
+            } else if (error != null) {
+                finish();
+                subscriber.onError(error);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (opened) {
+                close();
+            }
+        }
+
+        /**
+         * 第一次请求时打开资源，失败时不需要关闭
+         */
+        abstract void open() throws IOException;
+
+        /**
+         * @return 下一项，没有时返回null
+         */
+        abstract T next() throws IOException;
+
+        /**
+         * onNext返回之后调用
+         */
+        void recycle(T item) {
+        }
+
+        /**
+         * 结束、取消或出错时关闭资源，只在open之后调用一次
+         */
+        abstract void close();
+    }
+
+    /**
+     * 发布条目
+     */
+    private final class EntryEmission extends Emission<Entry> {
+
+        private int index;
+
+        EntryEmission(Flow.Subscriber<? super Entry> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        void open() throws IOException {
+            acquire();
+        }
+
+        @Override
+        Entry next() {
+            List<ZipArchiveReader.RawEntry> entries = entries();
+            return index < entries.size() ? new Entry(entries.get(index++)) : null;
+        }
+
+        @Override
+        void close() {
+            release();
+        }
+    }
+
+    /**
+     * 发布一个条目解压后的数据块
+     */
+    private final class ChunkEmission extends Emission<ByteBuffer> {
+
+        private final ZipArchiveReader.RawEntry entry;
+
+        private final CRC32 crc32 = new CRC32();
+
+        private InputStream in;
+
+        private long produced;
+
+        ChunkEmission(Flow.Subscriber<? super ByteBuffer> subscriber, ZipArchiveReader.RawEntry entry) {
+            super(subscriber);
+            this.entry = entry;
+        }
+
+        @Override
+        void open() throws IOException {
+            ZipArchiveReader reader = acquire();
+            if (entry.isDirectory()) {
+                return;
+            }
+            try {
+                if ((entry.flags & 1) != 0) {
+                    throw new ZipException("不支持加密的条目“" + entry.name + "”");
+                }
+                ZipCodec codec = ZipCodecs.forMethod(entry.method);
+                if (codec == null) {
+                    throw new ZipException("条目“" + entry.name + "”使用了不支持的压缩方式：" + entry.method);
+                }
+                in = throttle.input(codec.decoder(reader.rawInput(entry)), throttled);
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        @Override
+        ByteBuffer next() throws IOException {
+            if (in == null) {
+                return null;
+            }
+            ByteBuffer chunk = chunks.poll();
+            if (chunk == null) {
+                chunk = ByteBuffer.allocate(chunkSize);
+            }
+            chunk.clear();
+            //尽量填满数据块，减少onNext的次数
+            int count = 0;
+            int n;
+            while (count < chunkSize && (n = in.read(chunk.array(), count, chunkSize - count)) != -1) {
+                count += n;
+            }
+            if (count == 0) {
+                recycle(chunk);
+                if (produced != entry.size || crc32.getValue() != entry.crc) {
+                    throw new ZipException("条目“" + entry.name + "”CRC校验失败");
+                }
+                return null;
+            }
+            crc32.update(chunk.array(), 0, count);
+            produced += count;
+            chunk.limit(count);
+            return chunk;
+        }
+
+        @Override
+        void recycle(ByteBuffer chunk) {
+            if (chunks.size() < MAX_POOLED_CHUNKS) {
+                chunks.offer(chunk);
+            }
+        }
+
+        @Override
+        void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            release();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static zip.core.ZipArchiveReader.*;
+import static zip.core.ZipArchiveWriter.VERSION;
+import static zip.core.ZipArchiveWriter.ZIP64_VERSION;
+
+
+/**
+ * 紧凑的中央目录：
+ * 条目结束时，其中央目录记录立即编码为最终写入zip文件的字节，追加到堆外的内存块中，不再为每个条目保留对象，
+ * 文件名以编码后的字节保存在同一块连续的存储中；内存中的数据超过阈值后转存到临时文件，之后的记录经过一个内存块写入临时文件
+ * 因此无论条目数量多少，堆内存占用不变，堆外内存不超过 阈值 + 一个内存块
+ * 写入zip文件时按条目结束的顺序原样复制
+ *
+ * @author Ni187
+ */
+class CentralDirectory implements Closeable {
+
+    /**
+     * 内存块大小
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * 默认在内存中保留的中央目录大小，约可容纳20万个条目，超过后转存到临时文件
+     */
+    static final long DEFAULT_SPILL_THRESHOLD = 16 * 1024 * 1024;
+
+    private final long spillThreshold;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * 编码单条记录的缓冲区，记录超过其容量时扩大
+     */
+    private ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Path spillFile;
+
+    private FileChannel spillChannel;
+
+    /**
+     * 记录数量
+     */
+    private long count;
+
+    /**
+     * 中央目录的总字节数
+     */
+    private long size;
+
+    /**
+     * @param spillThreshold 内存中保留的最大字节数，小于等于0时不转存
+     */
+    CentralDirectory(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * 编码并追加一条中央目录记录，需要的Zip64扩展字段按大小与位置自动加入
+     *
+     * @param entry 已结束的条目
+     * @throws IOException 转存异常
+     */
+    void add(ZipArchiveWriter.CentralRecord entry) throws IOException {
+        boolean sizeZip64 = entry.size >= ZIP64_MAGIC;
+        boolean compressedZip64 = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetZip64 = entry.offset >= ZIP64_MAGIC;
+        int zip64Length = (sizeZip64 ? 8 : 0) + (compressedZip64 ? 8 : 0) + (offsetZip64 ? 8 : 0);
+        if (zip64Length > 0) {
+            zip64Length += 4;
+        }
+        int extraLength = zip64Length + (entry.extra == null ? 0 : entry.extra.length);
+        int length = CENTRAL_HEADER_SIZE + entry.name.length + extraLength;
+        if (record.capacity() < length) {
+            record = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        record.clear();
+        int version = zip64Length > 0 ? ZIP64_VERSION : VERSION;
+        record.putInt(CENTRAL_HEADER_SIGNATURE);
+        record.putShort((short) version);
+        record.putShort((short) version);
+        record.putShort((short) entry.flags);
+        record.putShort((short) entry.method);
+        record.putInt((int) entry.dosTime);
+        record.putInt((int) entry.crc);
+        record.putInt((int) (compressedZip64 ? ZIP64_MAGIC : entry.compressedSize));
+        record.putInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.size));
+        record.putShort((short) entry.name.length);
+        record.putShort((short) extraLength);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putShort((short) 0);
+        record.putInt(0);
+        record.putInt((int) (offsetZip64 ? ZIP64_MAGIC : entry.offset));
+        record.put(entry.name);
+        if (zip64Length > 0) {
+            record.putShort((short) ZIP64_EXTRA_ID);
+            record.putShort((short) (zip64Length - 4));
+            if (sizeZip64) {
+                record.putLong(entry.size);
+            }
+            if (compressedZip64) {
+                record.putLong(entry.compressedSize);
+            }
+            if (offsetZip64) {
+                record.putLong(entry.offset);
+            }
+        }
+        if (entry.extra != null) {
+            record.put(entry.extra);
+        }
+        record.flip();
+        append(record);
+        count++;
+    }
+
+    /**
+     * 追加到最后一个内存块，写满时使用新的内存块；已转存时只使用一个内存块，写满后写入临时文件
+     */
+    private void append(ByteBuffer data) throws IOException {
+        size += data.remaining();
+        while (data.hasRemaining()) {
+            ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (chunk == null || !chunk.hasRemaining()) {
+                if (spillChannel != null) {
+                    drainTo(chunk);
+                } else {
+                    chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                    chunks.add(chunk);
+                }
+            }
+            int n = Math.min(chunk.remaining(), data.remaining());
+            ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + n);
+            chunk.put(slice);
+            data.position(data.position() + n);
+        }
+        if (spillChannel == null && spillThreshold > 0 && size > spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * 将内存中的数据转存到临时文件，只保留一个内存块
+     */
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("zip-central", ".tmp");
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        for (ByteBuffer chunk : chunks) {
+            drainTo(chunk);
+        }
+        ByteBuffer kept = chunks.get(0);
+        chunks.clear();
+        chunks.add(kept);
+    }
+
+    /**
+     * 将内存块中的数据写入临时文件，并清空内存块
+     */
+    private void drainTo(ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            spillChannel.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    /**
+     * 按追加的顺序写出全部记录
+     *
+     * @param out 输出通道
+     * @throws IOException 读写异常
+     */
+    void writeTo(WritableByteChannel out) throws IOException {
+        if (spillChannel != null) {
+            long spilled = spillChannel.size();
+            long transferred = 0;
+            while (transferred < spilled) {
+                long n = spillChannel.transferTo(transferred, spilled - transferred, out);
+                if (n <= 0) {
+                    throw new IOException("临时文件意外结束");
+                }
+                transferred += n;
+            }
+        }
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer data = chunk.duplicate();
+            data.flip();
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
+
+    /**
+     * 释放内存块并删除临时文件
+     *
+     * @throws IOException 删除临时文件异常
+     */
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        if (spillChannel != null) {
+            spillChannel.close();
+            spillChannel = null;
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
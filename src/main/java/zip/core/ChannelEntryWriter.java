@@ -0,0 +1,330 @@
+package zip.core;
+
+import zip.config.FsyncPolicy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+
+/**
+ * 基于FileChannel的解压写入：
+ * 从zip文件中直接读取压缩数据到可复用的直接缓冲区，解压到另一个直接缓冲区后写入目标文件的FileChannel，
+ * 不再经过ZipFile输入流与Buffered*Stream的多次拷贝；STORED条目经过同一个直接缓冲区读写，同时校验CRC32
+ * 对大文件按解压后的大小预先设置文件长度
+ *
+ * @author Ni187
+ */
+class ChannelEntryWriter implements Closeable {
+
+    private final ZipArchiveReader reader;
+
+    /**
+     * 压缩数据输入缓冲区
+     */
+    private final ByteBuffer inBuffer;
+
+    /**
+     * 解压数据输出缓冲区
+     */
+    private final ByteBuffer outBuffer;
+
+    /**
+     * 所有条目复用的解压器
+     */
+    private final Inflater inflater = new Inflater(true);
+
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * 解压后大小不小于该值的文件，预先设置文件长度，小于等于0时不预分配
+     */
+    private final long preallocateThreshold;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * 刷盘策略为ARCHIVE时，记录已写入的文件，在结束时统一刷盘
+     */
+    private final List<Path> unsynced = new ArrayList<>();
+
+    private final IoThrottle throttle;
+
+    private final LongConsumer throttled;
+
+    ChannelEntryWriter(ZipArchiveReader reader, int bufferSize, long preallocateThreshold, FsyncPolicy fsyncPolicy,
+                       IoThrottle throttle, LongConsumer throttled) {
+        this.reader = reader;
+        this.throttle = throttle;
+        this.throttled = throttled;
+        this.inBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.outBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.preallocateThreshold = preallocateThreshold;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * 是否可以通过该方式写入，仅支持STORED与DEFLATED，且未加密的条目
+     *
+     * @param entry 条目
+     * @return 是否支持
+     */
+    boolean supports(ZipArchiveReader.RawEntry entry) {
+        return entry != null
+                && (entry.flags & 1) == 0
+                && (entry.method == ZipEntry.STORED || entry.method == ZipEntry.DEFLATED);
+    }
+
+    /**
+     * 将条目写入目标文件，文件以创建或截断的方式打开
+     *
+     * @param entry  条目
+     * @param target 目标文件
+     * @throws IOException 读写异常或数据损坏
+     */
+    void write(ZipArchiveReader.RawEntry entry, Path target) throws IOException {
+        long dataOffset = reader.dataOffset(entry);
+        try (FileChannel out = open(target, entry.size)) {
+            long written;
+            if (entry.method == ZipEntry.STORED) {
+                written = transfer(entry, dataOffset, out);
+            } else {
+                written = inflate(entry, dataOffset, out);
+            }
+            //实际大小与记录大小不一致时，去掉预分配的多余部分
+            if (out.size() != written) {
+                out.truncate(written);
+            }
+            if (fsyncPolicy == FsyncPolicy.ENTRY) {
+                out.force(true);
+            } else if (fsyncPolicy == FsyncPolicy.ARCHIVE) {
+                unsynced.add(target);
+            }
+        }
+    }
+
+    /**
+     * 将带检查点索引的DEFLATED条目按段并行解压到目标文件：
+     * 每段使用单独的Inflater从检查点开始解压，写入目标文件中对应的位置，
+     * 各段的CRC32按顺序合并后与条目记录的CRC32比较
+     *
+     * @param entry    条目，需要满足 {@link SeekableInflater#supports}
+     * @param target   目标文件
+     * @param inflater 从检查点开始解压
+     * @param executor 解压各段的线程池
+     * @throws IOException 读写异常或数据损坏
+     */
+    void writeSegments(ZipArchiveReader.RawEntry entry, Path target, SeekableInflater inflater,
+                       ExecutorService executor) throws IOException {
+        SeekIndex index = entry.seekIndex;
+        int segments = index.segments();
+        List<Future<Long>> futures = new ArrayList<>(segments);
+        try (FileChannel out = open(target, entry.size)) {
+            try {
+                for (int i = 0; i < segments; i++) {
+                    int segment = i;
+                    futures.add(executor.submit(() -> writeSegment(entry, segment, inflater, out)));
+                }
+                long crc = 0;
+                for (int i = 0; i < segments; i++) {
+                    long length = i == segments - 1 ? entry.size - index.start(i) : index.interval;
+                    crc = SeekableInflater.crc32Combine(crc, futures.get(i).get(), length);
+                }
+                if (crc != entry.crc) {
+                    throw new ZipException("CRC校验失败：“" + entry.name + "”");
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("解压条目“" + entry.name + "”时发生异常", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("解压条目“" + entry.name + "”时被中断", e);
+            } finally {
+                //不中断正在执行的任务，中断会关闭正在读取的zip文件通道
+                for (Future<Long> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            if (out.size() != entry.size) {
+                out.truncate(entry.size);
+            }
+            if (fsyncPolicy == FsyncPolicy.ENTRY) {
+                out.force(true);
+            } else if (fsyncPolicy == FsyncPolicy.ARCHIVE) {
+                unsynced.add(target);
+            }
+        }
+    }
+
+    /**
+     * 解压一段并写入目标文件中对应的位置
+     *
+     * @return 该段数据的CRC32
+     */
+    private long writeSegment(ZipArchiveReader.RawEntry entry, int segment, SeekableInflater inflater,
+                              FileChannel out) throws IOException {
+        SeekIndex index = entry.seekIndex;
+        boolean last = segment == index.segments() - 1;
+        long start = index.start(segment);
+        CRC32 segmentCrc = new CRC32();
+        long[] position = {start};
+        long length = inflater.inflate(entry, index.compressedStart(segment),
+                index.compressedEnd(segment, entry.compressedSize), last, data -> {
+                    segmentCrc.update(data.duplicate());
+                    throttle.acquire(data.remaining(), throttled);
+                    while (data.hasRemaining()) {
+                        position[0] += out.write(data, position[0]);
+                    }
+                    return true;
+                });
+        if (length != (last ? entry.size - start : index.interval)) {
+            throw new ZipException("压缩数据损坏：“" + entry.name + "”，第" + segment + "段长度不一致");
+        }
+        return segmentCrc.getValue();
+    }
+
+    /**
+     * 打开目标文件，大文件先设置为最终长度，使文件系统可以一次分配连续的空间
+     */
+    private FileChannel open(Path target, long size) throws IOException {
+        if (preallocateThreshold > 0 && size >= preallocateThreshold) {
+            RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw");
+            try {
+                file.setLength(size);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+            return file.getChannel();
+        }
+        return FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * STORED条目：经过直接缓冲区从zip文件通道复制到目标文件通道，同时校验CRC32
+     * 不使用transferTo，数据需要经过CRC32计算，否则损坏的STORED条目会被直接写入
+     */
+    private long transfer(ZipArchiveReader.RawEntry entry, long position, FileChannel out) throws IOException {
+        FileChannel in = reader.channel();
+        long size = entry.size;
+        long written = 0;
+        crc32.reset();
+        while (written < size) {
+            inBuffer.clear();
+            if (size - written < inBuffer.capacity()) {
+                inBuffer.limit((int) (size - written));
+            }
+            int n = in.read(inBuffer, position + written);
+            if (n < 0) {
+                throw new ZipException("zip文件意外结束");
+            }
+            //读取与写入各计一次
+            throttle.acquire(n, throttled);
+            throttle.acquire(n, throttled);
+            inBuffer.flip();
+            crc32.update(inBuffer);
+            inBuffer.flip();
+            while (inBuffer.hasRemaining()) {
+                written += out.write(inBuffer, written);
+            }
+        }
+        if (crc32.getValue() != entry.crc) {
+            throw new ZipException("CRC校验失败：“" + entry.name + "”");
+        }
+        return written;
+    }
+
+    /**
+     * DEFLATED条目：分段读取压缩数据，解压后写入目标文件，同时校验CRC32
+     */
+    private long inflate(ZipArchiveReader.RawEntry entry, long position, FileChannel out) throws IOException {
+        FileChannel in = reader.channel();
+        long remaining = entry.compressedSize;
+        long written = 0;
+        boolean padded = false;
+        inflater.reset();
+        crc32.reset();
+        inBuffer.clear().limit(0);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    inBuffer.clear();
+                    if (remaining > 0) {
+                        if (remaining < inBuffer.capacity()) {
+                            inBuffer.limit((int) remaining);
+                        }
+                        int n = in.read(inBuffer, position);
+                        if (n < 0) {
+                            throw new ZipException("zip文件意外结束");
+                        }
+                        throttle.acquire(n, throttled);
+                        position += n;
+                        remaining -= n;
+                    } else if (!padded) {
+                        //nowrap模式下，数据结束后需要额外提供一个字节
+                        inBuffer.put((byte) 0);
+                        padded = true;
+                    } else {
+                        throw new ZipException("压缩数据不完整：“" + entry.name + "”");
+                    }
+                    inBuffer.flip();
+                    inflater.setInput(inBuffer);
+                }
+                outBuffer.clear();
+                inflater.inflate(outBuffer);
+                outBuffer.flip();
+                crc32.update(outBuffer);
+                outBuffer.flip();
+                if (outBuffer.hasRemaining()) {
+                    throttle.acquire(outBuffer.remaining(), throttled);
+                }
+                while (outBuffer.hasRemaining()) {
+                    written += out.write(outBuffer, written);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("压缩数据损坏：“" + entry.name + "”，" + e.getMessage());
+        }
+        if (crc32.getValue() != entry.crc) {
+            throw new ZipException("CRC校验失败：“" + entry.name + "”");
+        }
+        return written;
+    }
+
+    /**
+     * 刷盘策略为ARCHIVE时，对所有已写入的文件统一刷盘
+     *
+     * @throws IOException 刷盘异常
+     */
+    void sync() throws IOException {
+        for (Path path : unsynced) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        unsynced.clear();
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+}
@@ -0,0 +1,84 @@
+package zip.core;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * 按条目名选择压缩方式：
+ * 规则的格式为 "模式:压缩方式"，多条规则以逗号分隔，按顺序匹配，第一条匹配的规则生效，都不匹配时使用默认的压缩方式
+ * 模式为glob，不包含"/"时只与文件名比较（如 *.log），否则与条目的完整路径比较（如 logs/**）
+ * 例如：CodecRules = *.log:lz4, *.jpg:stored, *.png:stored
+ *
+ * @author Ni187
+ */
+class CodecSelector {
+
+    private static class Rule {
+        final PathMatcher matcher;
+        final boolean fileNameOnly;
+        final ZipCodec codec;
+
+        Rule(PathMatcher matcher, boolean fileNameOnly, ZipCodec codec) {
+            this.matcher = matcher;
+            this.fileNameOnly = fileNameOnly;
+            this.codec = codec;
+        }
+    }
+
+    private final ZipCodec defaultCodec;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * @param codec 默认的压缩方式名称，不支持时使用deflate
+     * @param rules 规则，可以为null或者空
+     */
+    CodecSelector(String codec, String rules) {
+        ZipCodec found = ZipCodecs.forName(codec);
+        if (found == null) {
+            System.err.println("不支持的压缩方式“" + codec + "”，使用deflate");
+            found = ZipCodecs.DEFLATE;
+        }
+        this.defaultCodec = found;
+        if (rules == null) {
+            return;
+        }
+        for (String rule : rules.split(",")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int colon = rule.lastIndexOf(':');
+            ZipCodec ruleCodec = colon > 0 ? ZipCodecs.forName(rule.substring(colon + 1)) : null;
+            if (ruleCodec == null) {
+                System.err.println("无法解析压缩方式规则“" + rule + "”，已忽略");
+                continue;
+            }
+            String pattern = rule.substring(0, colon).trim();
+            this.rules.add(new Rule(FileSystems.getDefault().getPathMatcher("glob:" + pattern),
+                    !pattern.contains("/"), ruleCodec));
+        }
+    }
+
+    /**
+     * @param name 条目名，目录之间的分隔符可以是"/"或者系统的分隔符
+     * @return 该条目使用的压缩方式
+     */
+    ZipCodec select(String name) {
+        if (rules.isEmpty()) {
+            return defaultCodec;
+        }
+        String path = name.replace('\\', '/');
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        for (Rule rule : rules) {
+            if (rule.matcher.matches(Paths.get(rule.fileNameOnly ? fileName : path))) {
+                return rule.codec;
+            }
+        }
+        return defaultCodec;
+    }
+}
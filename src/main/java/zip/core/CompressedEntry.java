@@ -0,0 +1,99 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * 工作线程压缩完成、等待写入zip文件的条目
+ *
+ * @author Ni187
+ */
+class CompressedEntry implements Closeable {
+
+    /**
+     * 条目名，目录以"/"结尾
+     */
+    final String name;
+
+    /**
+     * 修改时间
+     */
+    final long time;
+
+    /**
+     * 压缩方式
+     */
+    final int method;
+
+    /**
+     * 使用的压缩等级
+     */
+    final int level;
+
+    final long crc;
+
+    /**
+     * 原始大小
+     */
+    final long size;
+
+    /**
+     * 压缩数据，目录为null
+     */
+    final SpillableBuffer data;
+
+    /**
+     * deflate检查点索引，没有时为null
+     */
+    final SeekIndex seekIndex;
+
+    CompressedEntry(String name, long time, int method, int level, long crc, long size, SpillableBuffer data,
+                    SeekIndex seekIndex) {
+        this.name = name;
+        this.time = time;
+        this.method = method;
+        this.level = level;
+        this.crc = crc;
+        this.size = size;
+        this.data = data;
+        this.seekIndex = seekIndex;
+    }
+
+    /**
+     * 目录条目
+     */
+    CompressedEntry(String name, long time) {
+        this(name, time, 0, 0, 0, 0, null, null);
+    }
+
+    long compressedSize() {
+        return data == null ? 0 : data.size();
+    }
+
+    /**
+     * 写入zip文件，CRC与大小已知，不需要数据描述符
+     *
+     * @param writer zip写入器
+     * @throws IOException 写入异常
+     */
+    void writeTo(ZipArchiveWriter writer) throws IOException {
+        if (data == null) {
+            writer.putDirectory(name, time);
+            return;
+        }
+        writer.putEntry(name, method, time, crc, data.size(), size);
+        data.writeTo(writer);
+        if (seekIndex != null) {
+            writer.setCentralExtra(seekIndex.toExtra());
+        }
+        writer.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (data != null) {
+            data.close();
+        }
+    }
+}
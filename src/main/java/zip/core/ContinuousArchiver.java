@@ -0,0 +1,512 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 持续归档：
+ * 通过WatchService监听源目录（包括之后新建的子目录）中文件的创建与修改，文件在去抖时间内没有新的修改时认为已经写完，
+ * 加入当前批次；批次的总大小或者等待时间达到上限时，用ZipCompressor写入一个新的zip文件，文件名带时间戳
+ * 稳定运行时只处理发生变化的文件，不重新扫描整个目录，内存占用只与变化的文件数量有关
+ *
+ * 每个写完的文件至少归档一次：归档目录中的日志文件（archiver.journal）记录
+ * 第一次发现变化时的文件路径，以及一个时间点，该时间点之前修改的文件都已经归档或者记录在日志中；
+ * zip文件写入并刷盘后才更新日志。重新启动时，日志中的文件与该时间点之后修改过的文件都会重新归档，
+ * 事件队列溢出时同样按该时间点重新扫描；因此程序中断后可能重复归档，但不会遗漏
+ * 第一次启动时没有日志，目录中已有的文件全部归档
+ *
+ * @author Ni187
+ */
+public class ContinuousArchiver implements Runnable, Closeable {
+
+    /**
+     * 日志文件名
+     */
+    static final String JOURNAL_NAME = "archiver.journal";
+
+    /**
+     * 日志中的时间点减去该余量后再比较修改时间，抵消事件的延迟与修改时间的精度
+     */
+    private static final long CLOCK_MARGIN = 5000;
+
+    /**
+     * 一个批次的最大文件数量，限制内存占用
+     */
+    private static final int MAX_BATCH_FILES = 100_000;
+
+    private final ZipCompressor compressor;
+
+    private final Path source;
+
+    private final Path archiveDir;
+
+    private final Path journal;
+
+    /**
+     * 条目名的前缀，与 packFiles 压缩源目录时相同
+     */
+    private final String base;
+
+    private long debounceMillis = 2000;
+
+    private long maxArchiveBytes = 256L << 20;
+
+    private long maxArchiveMillis = 10 * 60 * 1000;
+
+    /**
+     * 正在去抖的文件 -> 最后一次事件的时间
+     */
+    private final Map<Path, Long> settling = new HashMap<>();
+
+    /**
+     * 当前批次：已经写完、等待归档的文件
+     */
+    private final Set<Path> batch = new LinkedHashSet<>();
+
+    private long batchBytes;
+
+    /**
+     * 当前批次第一个文件加入的时间，为0时批次为空
+     */
+    private long batchStart;
+
+    /**
+     * 最近一次归档后写入日志的时间点
+     */
+    private long watermark;
+
+    /**
+     * 开始处理最近一次取出的事件的时间，该时间之前发生的事件都已经记录
+     */
+    private long drainTime;
+
+    private FileChannel journalChannel;
+
+    private boolean journalDirty;
+
+    private volatile WatchService watcher;
+
+    private volatile boolean closed;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * 已经注册的目录，重新扫描时不必重复注册
+     */
+    private final Set<Path> registered = new HashSet<>();
+
+    /**
+     * 由归档线程更新，可以在其他线程中读取
+     */
+    private volatile long archives;
+
+    private volatile long archivedFiles;
+
+    /**
+     * @param compressor 压缩器，使用其压缩等级、编码等设置
+     * @param source     监听的源目录
+     * @param archiveDir 归档目录，可以在源目录之中，其中的文件不会被归档
+     * @throws IOException 源目录不存在或者无法创建归档目录
+     */
+    public ContinuousArchiver(ZipCompressor compressor, File source, File archiveDir) throws IOException {
+        if (!source.isDirectory()) {
+            throw new NoSuchFileException(source.getPath(), null, "源目录不存在");
+        }
+        this.compressor = compressor;
+        this.source = source.getCanonicalFile().toPath();
+        Files.createDirectories(archiveDir.toPath());
+        this.archiveDir = archiveDir.getCanonicalFile().toPath();
+        this.journal = this.archiveDir.resolve(JOURNAL_NAME);
+        File parent = this.source.toFile().getParentFile();
+        this.base = (parent == null ? "" : parent.getName()) + File.separator + this.source.getFileName();
+    }
+
+    /**
+     * 设置去抖时间：文件在该时间内没有新的修改时认为已经写完
+     *
+     * @param debounceMillis 毫秒
+     */
+    public void setDebounce(long debounceMillis) {
+        this.debounceMillis = Math.max(debounceMillis, 0);
+    }
+
+    /**
+     * 设置滚动条件：当前批次的总大小或者等待时间达到任意一个上限时写入一个zip文件
+     *
+     * @param maxArchiveBytes  批次总大小上限
+     * @param maxArchiveMillis 批次等待时间上限，毫秒
+     */
+    public void setRollPolicy(long maxArchiveBytes, long maxArchiveMillis) {
+        this.maxArchiveBytes = Math.max(maxArchiveBytes, 1);
+        this.maxArchiveMillis = Math.max(maxArchiveMillis, 0);
+    }
+
+    /**
+     * 在新线程中运行
+     *
+     * @return 运行归档的线程
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "archiver-" + source.getFileName());
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 监听并归档，直到调用close；结束前归档已经写完的文件，仍在去抖的文件保留在日志中，下次启动时归档
+     */
+    @Override
+    public void run() {
+        try (WatchService watchService = source.getFileSystem().newWatchService()) {
+            watcher = watchService;
+            if (closed) {
+                return;
+            }
+            journalChannel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            long now = System.currentTimeMillis();
+            drainTime = now;
+            for (Path path : readJournal()) {
+                touch(path, now);
+            }
+            //注册所有目录，同时找出上次运行之后修改过的文件
+            register(source, watermark - CLOCK_MARGIN, now);
+            flushJournal();
+            while (!closed) {
+                WatchKey key = watchService.poll(nextWakeup(System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+                drainTime = System.currentTimeMillis();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= process(key, drainTime);
+                    key = watchService.poll();
+                }
+                if (overflow) {
+                    System.err.println("文件事件过多，重新扫描“" + source + "”");
+                    register(source, watermark - CLOCK_MARGIN, drainTime);
+                }
+                flushJournal();
+                long time = System.currentTimeMillis();
+                settle(time);
+                if (!batch.isEmpty() && (batchBytes >= maxArchiveBytes || batch.size() >= MAX_BATCH_FILES
+                        || time - batchStart >= maxArchiveMillis)) {
+                    roll(time);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //close时关闭了WatchService
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException("持续归档过程发生异常", e);
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * 停止监听，正在运行的run在归档已经写完的文件后返回
+     *
+     * @throws IOException 关闭WatchService异常
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService watchService = watcher;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * @return 已经写入的zip文件数量
+     */
+    public long getArchives() {
+        return archives;
+    }
+
+    /**
+     * @return 已经归档的文件数量，重复归档的文件重复计数
+     */
+    public long getArchivedFiles() {
+        return archivedFiles;
+    }
+
+    /**
+     * 结束前归档已经写完的文件，并关闭日志
+     */
+    private void finish() {
+        try {
+            if (journalChannel != null) {
+                settle(System.currentTimeMillis());
+                if (!batch.isEmpty()) {
+                    roll(System.currentTimeMillis());
+                }
+                journalChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("持续归档结束时发生异常，未归档的文件将在下次启动时归档");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return 下一次需要检查的时间距现在的毫秒数：最早一个文件去抖结束，或者当前批次等待时间达到上限
+     */
+    private long nextWakeup(long now) {
+        long next = now + Math.max(maxArchiveMillis, 1000);
+        for (long last : settling.values()) {
+            next = Math.min(next, last + debounceMillis);
+        }
+        if (!batch.isEmpty()) {
+            next = Math.min(next, batchStart + maxArchiveMillis);
+        }
+        return Math.max(next - now, 10);
+    }
+
+    /**
+     * 处理一个目录的事件
+     *
+     * @return 是否发生了事件队列溢出
+     */
+    private boolean process(WatchKey key, long now) throws IOException {
+        Path dir = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (path.startsWith(archiveDir)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                //新建或者移入的目录，其中已有的文件全部归档
+                register(path, Long.MIN_VALUE, now);
+            } else if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE) {
+                touch(path, now);
+            }
+        }
+        if (!key.reset()) {
+            registered.remove(directories.remove(key));
+        }
+        return overflow;
+    }
+
+    /**
+     * 注册目录及其子目录，并将修改时间不早于since的文件加入去抖
+     */
+    private void register(Path start, long since, long now) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (dir.startsWith(archiveDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (registered.add(dir)) {
+                    directories.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() >= since) {
+                    touch(file, now);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                //扫描时已被删除的文件
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 文件发生变化：第一次发现时记录到日志，并重新开始去抖
+     */
+    private void touch(Path path, long now) throws IOException {
+        if (settling.put(path, now) == null) {
+            appendJournal("+" + path + "\n");
+        }
+    }
+
+    /**
+     * 去抖结束的文件加入当前批次，已被删除的文件丢弃
+     */
+    private void settle(long now) {
+        Iterator<Map.Entry<Path, Long>> iterator = settling.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (now - entry.getValue() < debounceMillis) {
+                continue;
+            }
+            iterator.remove();
+            Path path = entry.getKey();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && batch.add(path)) {
+                    batchBytes += attributes.size();
+                    if (batchStart == 0) {
+                        batchStart = now;
+                    }
+                }
+            } catch (IOException e) {
+                //已被删除
+            }
+        }
+    }
+
+    /**
+     * 将当前批次写入新的zip文件，刷盘后更新日志；失败时保留批次，等待下一次滚动时重试
+     */
+    private void roll(long now) throws IOException {
+        List<SourceEntry> entries = new ArrayList<>();
+        for (Path path : batch) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                String name = base + File.separator + source.relativize(path).toString();
+                entries.add(new SourceEntry(path.toFile(), name, false, attributes.size(),
+                        attributes.lastModifiedTime().toMillis()));
+            } catch (IOException e) {
+                //归档之前已被删除
+            }
+        }
+        if (!entries.isEmpty()) {
+            File target = newArchive(now);
+            try {
+                compressor.packBatch(entries, target);
+                try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("写入归档“" + target + "”失败，稍后重试");
+                e.printStackTrace();
+                Files.deleteIfExists(target.toPath());
+                batchStart = now;
+                return;
+            }
+            archives++;
+            archivedFiles += entries.size();
+        }
+        batch.clear();
+        batchBytes = 0;
+        batchStart = 0;
+        commitJournal(drainTime);
+    }
+
+    /**
+     * @return 带时间戳的新zip文件，同名文件已存在时加上序号
+     */
+    private File newArchive(long now) {
+        String name = source.getFileName() + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(now));
+        File target = archiveDir.resolve(name + ".zip").toFile();
+        for (int i = 1; target.exists(); i++) {
+            target = archiveDir.resolve(name + "-" + i + ".zip").toFile();
+        }
+        return target;
+    }
+
+    /**
+     * 读取日志：时间点与尚未归档的文件
+     */
+    private List<Path> readJournal() throws IOException {
+        Set<Path> paths = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+            if (line.startsWith("@")) {
+                try {
+                    watermark = Long.parseLong(line.substring(1).trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("无法解析日志中的时间点“" + line + "”，已忽略");
+                }
+            } else if (line.startsWith("+")) {
+                paths.add(source.getFileSystem().getPath(line.substring(1)));
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+
+    private void appendJournal(String line) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (data.hasRemaining()) {
+            journalChannel.write(data);
+        }
+        journalDirty = true;
+    }
+
+    /**
+     * 将新记录的文件刷盘
+     */
+    private void flushJournal() throws IOException {
+        if (journalDirty) {
+            journalChannel.force(false);
+            journalDirty = false;
+        }
+    }
+
+    /**
+     * 归档之后重写日志：新的时间点，以及仍在去抖的文件
+     * 先写入临时文件再替换，任何时刻中断都保留完整的旧日志或者新日志
+     *
+     * @param time 该时间之前发生的事件都已经处理
+     */
+    private void commitJournal(long time) throws IOException {
+        watermark = time;
+        StringBuilder builder = new StringBuilder("@").append(time).append('\n');
+        for (Path path : settling.keySet()) {
+            builder.append('+').append(path).append('\n');
+        }
+        Path temp = archiveDir.resolve(JOURNAL_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        journalChannel.close();
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalChannel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalDirty = false;
+    }
+}
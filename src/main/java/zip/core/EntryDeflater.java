@@ -0,0 +1,394 @@
+package zip.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * 单个条目的压缩：读取源文件，计算CRC32，以DEFLATED格式（或者其他压缩方式）压缩后交给输出
+ * 压缩器、CRC与缓冲区在多个条目之间复用，每个线程使用一个实例
+ *
+ * @author Ni187
+ */
+class EntryDeflater {
+
+    /**
+     * 限速时映射窗口每次交给Deflater的最大长度，每段在被访问之前申请令牌
+     */
+    private static final int THROTTLE_SLICE = 1024 * 1024;
+
+    /**
+     * 压缩数据的输出
+     */
+    interface Output {
+        void write(ByteBuffer data) throws IOException;
+    }
+
+    private final Deflater deflater;
+
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * 小文件读取缓冲区
+     */
+    private final byte[] bytes;
+
+    /**
+     * 压缩数据输出缓冲区
+     */
+    private final ByteBuffer outBuffer;
+
+    /**
+     * 不小于该大小的源文件通过内存映射读取，小于等于0时不使用映射
+     */
+    private final long mappedThreshold;
+
+    private final long mapWindowSize;
+
+    /**
+     * 读取源文件时的限速，为null时不限速
+     */
+    private IoThrottle throttle;
+
+    private LongConsumer throttled;
+
+    /**
+     * 最近一个条目的原始大小与压缩后大小
+     */
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    /**
+     * 检查点间隔，小于等于0时不记录检查点
+     */
+    private long seekInterval;
+
+    /**
+     * 当前条目已交给Deflater的原始数据长度
+     */
+    private long fed;
+
+    /**
+     * 当前条目各检查点在压缩数据中的位置
+     */
+    private final List<Long> checkpoints = new ArrayList<>();
+
+    EntryDeflater(int level, int bufferSize, long mappedThreshold, long mapWindowSize) {
+        this.deflater = new Deflater(level, true);
+        this.bytes = new byte[bufferSize];
+        this.outBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.mappedThreshold = mappedThreshold;
+        this.mapWindowSize = mapWindowSize;
+    }
+
+    /**
+     * 设置读取源文件时的限速
+     *
+     * @param throttle  限速
+     * @param throttled 等待时间的记录
+     */
+    void setThrottle(IoThrottle throttle, LongConsumer throttled) {
+        this.throttle = throttle;
+        this.throttled = throttled;
+    }
+
+    /**
+     * 设置检查点间隔：每压缩该长度的原始数据执行一次FULL_FLUSH并记录压缩数据的位置，见SeekIndex
+     * FULL_FLUSH会清空压缩字典，间隔过小时压缩率明显下降
+     *
+     * @param seekInterval 检查点间隔，小于等于0时不记录
+     */
+    void setSeekInterval(long seekInterval) {
+        this.seekInterval = seekInterval;
+    }
+
+    /**
+     * 压缩一个文件
+     *
+     * @param file   源文件
+     * @param size   文件大小
+     * @param level  压缩等级
+     * @param output 压缩数据的输出
+     * @throws IOException 读取或写入异常
+     */
+    void deflate(File file, long size, int level, Output output) throws IOException {
+        deflater.reset();
+        deflater.setLevel(level);
+        crc32.reset();
+        resetCheckpoints();
+        //大文件通过内存映射直接交给Deflater，否则读取到堆内数组
+        if (mappedThreshold > 0 && size >= mappedThreshold) {
+            deflateMapped(file, output);
+        } else {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                deflateStream(input(inputStream), output);
+            } finally {
+                close(inputStream, file);
+            }
+        }
+        finish(output);
+    }
+
+    /**
+     * 以指定的压缩方式压缩一个文件，不使用内存映射
+     *
+     * @param codec  压缩方式
+     * @param file   源文件
+     * @param level  压缩等级
+     * @param output 压缩数据的输出
+     * @throws IOException 读取或写入异常
+     */
+    void encode(ZipCodec codec, File file, int level, Output output) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            encode(codec, input(inputStream), level, output);
+        } finally {
+            close(inputStream, file);
+        }
+    }
+
+    /**
+     * 以指定的压缩方式压缩输入流中的数据，输入流由调用者关闭
+     *
+     * @param codec  压缩方式
+     * @param in     输入流
+     * @param level  压缩等级
+     * @param output 压缩数据的输出
+     * @throws IOException 读取或写入异常
+     */
+    void encode(ZipCodec codec, InputStream in, int level, Output output) throws IOException {
+        crc32.reset();
+        checkpoints.clear();
+        long[] written = new long[1];
+        //压缩数据直接交给输出，关闭时不关闭输出
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                output.write(ByteBuffer.wrap(b, off, len));
+                written[0] += len;
+            }
+        };
+        long size = 0;
+        try (OutputStream encoder = codec.encoder(sink, level)) {
+            int len;
+            while ((len = in.read(bytes)) != -1) {
+                crc32.update(bytes, 0, len);
+                encoder.write(bytes, 0, len);
+                size += len;
+            }
+        }
+        bytesRead = size;
+        bytesWritten = written[0];
+    }
+
+    /**
+     * 压缩输入流中的数据，输入流由调用者关闭
+     *
+     * @param in     输入流
+     * @param level  压缩等级
+     * @param output 压缩数据的输出
+     * @throws IOException 读取或写入异常
+     */
+    void deflate(InputStream in, int level, Output output) throws IOException {
+        deflater.reset();
+        deflater.setLevel(level);
+        crc32.reset();
+        resetCheckpoints();
+        deflateStream(in, output);
+        finish(output);
+    }
+
+    /**
+     * 压缩已经读取到内存中的数据
+     *
+     * @param data   数据，不会被修改
+     * @param level  压缩等级
+     * @param output 压缩数据的输出
+     * @throws IOException 写入异常
+     */
+    void deflate(ByteBuffer data, int level, Output output) throws IOException {
+        deflater.reset();
+        deflater.setLevel(level);
+        crc32.reset();
+        resetCheckpoints();
+        crc32.update(data.duplicate());
+        feed(data.duplicate(), false, output);
+        finish(output);
+    }
+
+    /**
+     * 不压缩，直接复制输入流中的数据（STORED），同时计算CRC32
+     *
+     * @param in     输入流
+     * @param output 数据的输出
+     * @return 数据大小
+     * @throws IOException 读取或写入异常
+     */
+    long store(InputStream in, Output output) throws IOException {
+        crc32.reset();
+        checkpoints.clear();
+        long size = 0;
+        int len;
+        while ((len = in.read(bytes)) != -1) {
+            crc32.update(bytes, 0, len);
+            output.write(ByteBuffer.wrap(bytes, 0, len));
+            size += len;
+        }
+        bytesRead = size;
+        bytesWritten = size;
+        return size;
+    }
+
+    private void finish(Output output) throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(output);
+        }
+        bytesRead = deflater.getBytesRead();
+        bytesWritten = deflater.getBytesWritten();
+    }
+
+    /**
+     * @return 经过限速的输入流
+     */
+    private InputStream input(InputStream in) {
+        return throttle == null ? in : throttle.input(in, throttled);
+    }
+
+    private static void close(InputStream inputStream, File file) {
+        try {
+            inputStream.close();
+        } catch (IOException ioException) {
+            System.err.println("关闭文件：“" + file.getPath() + "” 时，发生异常：");
+            ioException.printStackTrace();
+        }
+    }
+
+    /**
+     * 逐个映射文件窗口，映射缓冲区直接作为Deflater与CRC32的输入，不经过堆内数组
+     * CRC32在feed中按段计算，限速时每段访问之前申请令牌，避免整个窗口一次性读入
+     */
+    private void deflateMapped(File file, Output output) throws IOException {
+        try (MappedInput input = new MappedInput(file.toPath(), mapWindowSize)) {
+            ByteBuffer window;
+            while ((window = input.next()) != null) {
+                feed(window, true, output);
+            }
+        }
+    }
+
+    /**
+     * 读取数据到堆内数组后交给Deflater
+     */
+    private void deflateStream(InputStream in, Output output) throws IOException {
+        int len;
+        while ((len = in.read(bytes)) != -1) {
+            crc32.update(bytes, 0, len);
+            feed(ByteBuffer.wrap(bytes, 0, len), false, output);
+        }
+    }
+
+    private void resetCheckpoints() {
+        fed = 0;
+        checkpoints.clear();
+    }
+
+    /**
+     * 将数据交给Deflater，数据跨过检查点时在检查点处拆分，先执行FULL_FLUSH再继续压缩
+     *
+     * @param mapped 是否为映射窗口：是则在此计算CRC32，并在限速时按段申请令牌
+     */
+    private void feed(ByteBuffer input, boolean mapped, Output output) throws IOException {
+        while (input.hasRemaining()) {
+            int length = input.remaining();
+            if (seekInterval > 0) {
+                long next = (checkpoints.size() + 1) * seekInterval;
+                if (fed == next) {
+                    checkpoint(output);
+                    next += seekInterval;
+                }
+                length = (int) Math.min(length, next - fed);
+            }
+            if (mapped && throttle != null) {
+                length = Math.min(length, THROTTLE_SLICE);
+            }
+            ByteBuffer slice = input.duplicate();
+            slice.limit(slice.position() + length);
+            if (mapped) {
+                if (throttle != null) {
+                    throttle.acquire(length, throttled);
+                }
+                crc32.update(slice.duplicate());
+            }
+            deflater.setInput(slice);
+            while (!deflater.needsInput()) {
+                drain(output);
+            }
+            input.position(input.position() + length);
+            fed += length;
+        }
+    }
+
+    /**
+     * 执行FULL_FLUSH，之后的压缩数据从字节边界开始且不引用之前的数据，记录此时的压缩数据长度
+     */
+    private void checkpoint(Output output) throws IOException {
+        int written;
+        do {
+            outBuffer.clear();
+            written = deflater.deflate(outBuffer, Deflater.FULL_FLUSH);
+            outBuffer.flip();
+            output.write(outBuffer);
+        } while (written == outBuffer.capacity());
+        checkpoints.add(deflater.getBytesWritten());
+    }
+
+    /**
+     * 取出Deflater的一段输出
+     */
+    private void drain(Output output) throws IOException {
+        outBuffer.clear();
+        deflater.deflate(outBuffer);
+        outBuffer.flip();
+        output.write(outBuffer);
+    }
+
+    long getCrc() {
+        return crc32.getValue();
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return 最近一个条目的检查点索引，没有检查点时返回null
+     */
+    SeekIndex getSeekIndex() {
+        return checkpoints.isEmpty() ? null : SeekIndex.of(seekInterval, checkpoints);
+    }
+
+    void end() {
+        deflater.end();
+    }
+}
@@ -0,0 +1,118 @@
+package zip.core;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.zip.ZipException;
+
+
+/**
+ * 解压计划：
+ * 解压前先从zip的中央目录计算出所有需要的目录，按顺序一次性创建，
+ * 并在内存中记录已经存在的目录，解压文件时不再逐个检查父目录是否存在
+ *
+ * @author Ni187
+ */
+class ExtractionPlanner {
+
+    /**
+     * 解压目标目录
+     */
+    private final Path targetDir;
+
+    /**
+     * 已知存在的目录
+     */
+    private final Set<Path> knownDirectories = new HashSet<>();
+
+    /**
+     * 本次解压新创建的目录，其中的文件一定不存在，不需要再检查
+     */
+    private final Set<Path> createdDirectories = new HashSet<>();
+
+    ExtractionPlanner(Path targetDir) {
+        this.targetDir = targetDir.toAbsolutePath().normalize();
+        this.knownDirectories.add(this.targetDir);
+    }
+
+    /**
+     * 遍历中央目录，收集所有目录（包含文件的父目录与中间目录），按路径排序后依次创建
+     * 排序后父目录一定在子目录之前，因此每个目录只需要一次创建操作
+     *
+     * @param entries 中央目录中的条目
+     * @param filter  只处理名称满足条件的条目，为null时处理全部条目
+     * @throws IOException 条目路径非法或者创建目录失败
+     */
+    void plan(List<ZipArchiveReader.RawEntry> entries, Predicate<String> filter) throws IOException {
+        TreeSet<Path> directories = new TreeSet<>();
+        for (ZipArchiveReader.RawEntry entry : entries) {
+            if (filter != null && !filter.test(entry.name)) {
+                continue;
+            }
+            Path path = resolve(entry.name);
+            Path dir = entry.isDirectory() ? path : path.getParent();
+            //向上收集中间目录，直到遇到已收集的目录或者目标目录
+            while (dir != null && !knownDirectories.contains(dir) && directories.add(dir)) {
+                dir = dir.getParent();
+            }
+        }
+        for (Path dir : directories) {
+            createDirectory(dir);
+        }
+    }
+
+    /**
+     * 计算条目在目标目录下的路径，拒绝解压到目标目录之外的条目（如 "../"）
+     *
+     * @param name 条目名
+     * @return 目标路径
+     * @throws ZipException 条目路径非法
+     */
+    Path resolve(String name) throws ZipException {
+        Path path = targetDir.resolve(name).normalize();
+        if (!path.startsWith(targetDir)) {
+            throw new ZipException("非法的条目路径：“" + name + "”");
+        }
+        return path;
+    }
+
+    /**
+     * 准备写入文件：保证父目录存在（仅在计划中遗漏时才会真正创建）
+     *
+     * @param path 文件路径
+     * @return 文件是否一定不存在（父目录为本次新建）
+     * @throws IOException 创建目录失败
+     */
+    boolean prepareFile(Path path) throws IOException {
+        Path parent = path.getParent();
+        if (!knownDirectories.contains(parent)) {
+            Files.createDirectories(parent);
+            knownDirectories.add(parent);
+        }
+        return createdDirectories.contains(parent);
+    }
+
+    /**
+     * 创建单个目录，父目录已在之前创建
+     *
+     * @param dir 目录
+     * @throws IOException 创建失败或者同名文件已存在
+     */
+    private void createDirectory(Path dir) throws IOException {
+        try {
+            Files.createDirectory(dir);
+            createdDirectories.add(dir);
+        } catch (FileAlreadyExistsException e) {
+            if (!Files.isDirectory(dir)) {
+                throw new IOException("创建文件夹：“" + dir + "”失败，已存在同名文件");
+            }
+        }
+        knownDirectories.add(dir);
+    }
+}
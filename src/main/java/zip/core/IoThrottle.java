@@ -0,0 +1,227 @@
+package zip.core;
+
+import zip.config.ZipConfigurator;
+import zip.config.ZipSettings;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+
+/**
+ * 读写限速：以令牌桶分别限制每秒字节数（MB/s）与每秒读写次数（IOPS）
+ * 每次读写先预约令牌，令牌不足时记为欠额，由本次调用者等待到欠额补足为止，之后的调用者依次排在其后，
+ * 因此同一个实例上的多个线程、多个任务共同分享限额
+ * 桶容量为一秒的限额，限额可以在运行时修改，小于等于0表示不限制
+ *
+ * @author Ni187
+ */
+public class IoThrottle {
+
+    /**
+     * JVM内共享的实例，初始限额读取自配置文件
+     */
+    private static final IoThrottle SHARED;
+
+    static {
+        ZipSettings settings = ZipConfigurator.snapshot();
+        SHARED = new IoThrottle(settings.getIoRateLimit(), settings.getIoOpsLimit());
+    }
+
+    /**
+     * 每秒字节数
+     */
+    private double bytesPerSecond;
+
+    private double opsPerSecond;
+
+    /**
+     * 当前可用的令牌，可以为负数（欠额）
+     */
+    private double availableBytes;
+
+    private double availableOps;
+
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * 两项都不限制时跳过预约，不加锁
+     */
+    private volatile boolean unlimited;
+
+    /**
+     * @param rateLimit 每秒字节数限额，MB/s，小于等于0表示不限制
+     * @param opsLimit  每秒读写次数限额，小于等于0表示不限制
+     */
+    public IoThrottle(double rateLimit, double opsLimit) {
+        setLimits(rateLimit, opsLimit);
+    }
+
+    /**
+     * @return JVM内所有压缩、解压任务默认共享的实例
+     */
+    public static IoThrottle shared() {
+        return SHARED;
+    }
+
+    /**
+     * 修改限额，立即对所有使用该实例的任务生效
+     *
+     * @param rateLimit 每秒字节数限额，MB/s，小于等于0表示不限制
+     * @param opsLimit  每秒读写次数限额，小于等于0表示不限制
+     */
+    public synchronized void setLimits(double rateLimit, double opsLimit) {
+        refill(System.nanoTime());
+        this.bytesPerSecond = rateLimit > 0 ? rateLimit * 1048576 : 0;
+        this.opsPerSecond = opsLimit > 0 ? opsLimit : 0;
+        this.availableBytes = Math.min(availableBytes, bytesPerSecond);
+        this.availableOps = Math.min(availableOps, opsPerSecond);
+        this.unlimited = bytesPerSecond == 0 && opsPerSecond == 0;
+    }
+
+    /**
+     * @return 每秒字节数限额，MB/s，0表示不限制
+     */
+    public synchronized double getRateLimit() {
+        return bytesPerSecond / 1048576;
+    }
+
+    /**
+     * @return 每秒读写次数限额，0表示不限制
+     */
+    public synchronized double getOpsLimit() {
+        return opsPerSecond;
+    }
+
+    /**
+     * 预约一次读写，令牌不足时等待
+     *
+     * @param bytes     读写的字节数
+     * @param throttled 等待时间（纳秒）的记录，可以为null
+     * @throws InterruptedIOException 等待时被中断
+     */
+    void acquire(long bytes, LongConsumer throttled) throws InterruptedIOException {
+        if (unlimited) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            double wait = 0;
+            if (bytesPerSecond > 0) {
+                availableBytes -= bytes;
+                wait = Math.max(wait, -availableBytes / bytesPerSecond);
+            }
+            if (opsPerSecond > 0) {
+                availableOps -= 1;
+                wait = Math.max(wait, -availableOps / opsPerSecond);
+            }
+            waitNanos = (long) (wait * 1e9);
+        }
+        if (waitNanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("限速等待时被中断");
+            }
+        }
+        if (throttled != null) {
+            throttled.accept(waitNanos);
+        }
+    }
+
+    /**
+     * 按经过的时间补充令牌，不超过一秒的限额
+     */
+    private void refill(long now) {
+        double seconds = (now - lastRefill) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastRefill = now;
+        if (bytesPerSecond > 0) {
+            availableBytes = Math.min(bytesPerSecond, availableBytes + seconds * bytesPerSecond);
+        }
+        if (opsPerSecond > 0) {
+            availableOps = Math.min(opsPerSecond, availableOps + seconds * opsPerSecond);
+        }
+    }
+
+    /**
+     * @return 每次读取都经过限速的输入流
+     */
+    InputStream input(InputStream in, LongConsumer throttled) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    acquire(1, throttled);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    acquire(n, throttled);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * @return 每次写入都经过限速的输出流
+     */
+    OutputStream output(OutputStream out, LongConsumer throttled) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                acquire(1, throttled);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                acquire(len, throttled);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return 每次写入都经过限速的通道
+     */
+    WritableByteChannel channel(WritableByteChannel channel, LongConsumer throttled) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                acquire(src.remaining(), throttled);
+                return channel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,409 @@
+package zip.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+
+/**
+ * LZ4压缩：压缩率低于deflate，但压缩与解压速度快得多，适合生命周期短、需要频繁读写的压缩包
+ * 原始数据按64KB分块，每块独立地以LZ4块格式压缩，块前依次为4字节的压缩后长度与4字节的原始长度（小端序），
+ * 压缩后不小于原始长度的块直接保存原始数据，并在压缩后长度的最高位标记
+ * zip规范没有为LZ4分配压缩方式编号，这里使用非标准的编号 0x4C34（"L4"），其他工具无法解压此类条目
+ *
+ * @author Ni187
+ */
+class Lz4Codec implements ZipCodec {
+
+    static final int METHOD = 0x4C34;
+
+    /**
+     * 分块大小，块内的匹配距离不会超过LZ4的最大距离65535
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 块头中标记未压缩的位
+     */
+    private static final int RAW_FLAG = 0x80000000;
+
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * LZ4块格式要求：最后5个字节必须是字面量，最后一个匹配必须在结束前12个字节之前开始
+     */
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+
+    private static final int HASH_LOG = 12;
+
+    @Override
+    public int getMethod() {
+        return METHOD;
+    }
+
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public OutputStream encoder(OutputStream out, int level) {
+        return new Lz4OutputStream(out);
+    }
+
+    @Override
+    public InputStream decoder(InputStream in) {
+        return new Lz4InputStream(in);
+    }
+
+    /**
+     * @return 压缩length字节可能需要的最大空间
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * 以LZ4块格式压缩
+     *
+     * @param src    原始数据
+     * @param length 原始数据长度
+     * @param dst    输出，长度不小于 maxCompressedLength(length)
+     * @param table  哈希表，长度为 1 << HASH_LOG
+     * @return 压缩后的长度
+     */
+    static int compress(byte[] src, int length, byte[] dst, int[] table) {
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int op = 0;
+        if (length > MF_LIMIT) {
+            int limit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int ip = 0;
+            while (ip < limit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || readInt(src, ref) != sequence) {
+                    //连续未找到匹配时逐渐加大步长，跳过不可压缩的数据
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+                //向前扩展匹配
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 < limit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+        return writeSequence(src, anchor, length - anchor, 0, 0, dst, op);
+    }
+
+    /**
+     * 写入一个序列：令牌、字面量长度、字面量、匹配距离、匹配长度；matchLength为0时只写入最后的字面量
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int op) {
+        int tokenPos = op++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            op = writeLength(literalLength - 15, dst, op);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        if (matchLength > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int length = matchLength - MIN_MATCH;
+            if (length >= 15) {
+                token |= 15;
+                op = writeLength(length - 15, dst, op);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * 解压LZ4块格式的数据
+     *
+     * @param src    压缩数据
+     * @param length 压缩数据长度
+     * @param dst    输出
+     * @param size   原始数据长度
+     * @throws ZipException 数据损坏
+     */
+    static void decompress(byte[] src, int length, byte[] dst, int size) throws ZipException {
+        int ip = 0;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (ip + literalLength > length || op + literalLength > size) {
+                    throw new ZipException("LZ4数据损坏");
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == length) {
+                    break;
+                }
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (offset == 0 || offset > op || op + matchLength > size) {
+                    throw new ZipException("LZ4数据损坏");
+                }
+                int ref = op - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    //匹配与输出重叠，逐字节复制
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ZipException("LZ4数据损坏");
+        }
+        if (op != size) {
+            throw new ZipException("LZ4数据长度不一致");
+        }
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+    }
+
+    private static void writeInt(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >>> 8);
+        b[pos + 2] = (byte) (value >>> 16);
+        b[pos + 3] = (byte) (value >>> 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * 分块压缩的输出流
+     */
+    private static class Lz4OutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[HEADER_SIZE + maxCompressedLength(BLOCK_SIZE)];
+        private final int[] table = new int[1 << HASH_LOG];
+        private int count;
+        private boolean closed;
+
+        Lz4OutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == BLOCK_SIZE) {
+                writeBlock();
+            }
+            block[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == BLOCK_SIZE) {
+                    writeBlock();
+                }
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            int length = compress(block, count, compressed, table);
+            if (length >= count) {
+                writeInt(compressed, 0, count | RAW_FLAG);
+                writeInt(compressed, 4, count);
+                out.write(compressed, 0, HEADER_SIZE);
+                out.write(block, 0, count);
+            } else {
+                //压缩数据写在块头之后
+                System.arraycopy(compressed, 0, compressed, HEADER_SIZE, length);
+                writeInt(compressed, 0, length);
+                writeInt(compressed, 4, count);
+                out.write(compressed, 0, HEADER_SIZE + length);
+            }
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (count > 0) {
+                    writeBlock();
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * 分块解压的输入流
+     */
+    private static class Lz4InputStream extends InputStream {
+        private final InputStream in;
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int position;
+        private int limit;
+        private boolean eof;
+
+        Lz4InputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextBlock()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        /**
+         * 读取并解压下一块
+         *
+         * @return 是否还有数据
+         */
+        private boolean nextBlock() throws IOException {
+            while (!eof) {
+                int n = readFully(header, HEADER_SIZE);
+                if (n == 0) {
+                    eof = true;
+                    return false;
+                }
+                if (n < HEADER_SIZE) {
+                    throw new EOFException("LZ4块头不完整");
+                }
+                int length = readInt(header, 0);
+                boolean raw = (length & RAW_FLAG) != 0;
+                length &= ~RAW_FLAG;
+                int size = readInt(header, 4);
+                if (size < 0 || size > BLOCK_SIZE || length > compressed.length || (raw && length != size)) {
+                    throw new ZipException("LZ4块头损坏");
+                }
+                if (raw) {
+                    if (readFully(block, size) < size) {
+                        throw new EOFException("LZ4数据意外结束");
+                    }
+                } else {
+                    if (readFully(compressed, length) < length) {
+                        throw new EOFException("LZ4数据意外结束");
+                    }
+                    decompress(compressed, length, block, size);
+                }
+                position = 0;
+                limit = size;
+                if (size > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int readFully(byte[] b, int len) throws IOException {
+            int n = 0;
+            while (n < len) {
+                int read = in.read(b, n, len - n);
+                if (read < 0) {
+                    break;
+                }
+                n += read;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
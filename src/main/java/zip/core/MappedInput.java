@@ -0,0 +1,113 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * 按窗口映射文件：
+ * 每次只映射文件的一段，用完后立即解除映射，因此超过2GB的文件也可以映射，且占用的地址空间有上限
+ *
+ * @author Ni187
+ */
+class MappedInput implements Closeable {
+
+    /**
+     * 用于立即解除映射的 Unsafe.invokeCleaner，不可用时为null，由GC解除映射
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final long windowSize;
+
+    /**
+     * 下一个窗口的起始位置
+     */
+    private long position;
+
+    /**
+     * 当前窗口
+     */
+    private MappedByteBuffer window;
+
+    MappedInput(Path path, long windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = Math.min(Math.max(windowSize, 1 << 16), Integer.MAX_VALUE);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * 解除上一个窗口的映射并映射下一个窗口
+     *
+     * @return 下一个窗口，文件结束时返回null
+     * @throws IOException 映射异常
+     */
+    ByteBuffer next() throws IOException {
+        release();
+        if (position >= size) {
+            return null;
+        }
+        long length = Math.min(windowSize, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+        return window;
+    }
+
+    private void release() {
+        if (window != null) {
+            unmap(window);
+            window = null;
+        }
+    }
+
+    /**
+     * 立即解除映射，失败时交给GC处理
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null && buffer.isDirect()) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (Exception ignored) {
+                //由GC解除映射
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        channel.close();
+    }
+}
@@ -0,0 +1,61 @@
+package zip.core;
+
+/**
+ * 内存预算：
+ * 并行压缩时，所有尚未写入zip文件的压缩数据共享一个总的字节预算，预算用完时申请内存的线程阻塞，
+ * 直到写入线程写出数据并释放内存
+ * 写入线程正在等待的条目（按顺序的下一个条目）不受预算限制，否则它与后面已完成的条目会互相等待
+ *
+ * @author Ni187
+ */
+class MemoryGovernor {
+
+    private final long budget;
+
+    private long used;
+
+    private long peak;
+
+    /**
+     * 写入线程正在等待的条目序号
+     */
+    private long head;
+
+    MemoryGovernor(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * 申请内存，预算不足时阻塞
+     *
+     * @param bytes    字节数
+     * @param sequence 条目序号
+     * @throws InterruptedException 等待时被中断
+     */
+    synchronized void acquire(long bytes, long sequence) throws InterruptedException {
+        while (used + bytes > budget && sequence != head) {
+            wait();
+        }
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+
+    synchronized void release(long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * 写入线程开始等待下一个条目
+     *
+     * @param sequence 条目序号
+     */
+    synchronized void advance(long sequence) {
+        head = sequence;
+        notifyAll();
+    }
+
+    synchronized long getPeak() {
+        return peak;
+    }
+}
@@ -0,0 +1,406 @@
+package zip.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * 分段上传到兼容S3的对象存储：
+ * 写入的数据按分段大小切分，每满一段就提交给上传线程，同时继续接收后面的数据，关闭时上传最后一段并合并
+ * 同时上传的分段数量有上限，所有分段缓冲区都在上传时，写入会阻塞，内存占用不超过 (maxInFlight + 1) * partSize
+ * 分段上传失败时按指数退避重试，重试用尽后后续的写入与关闭都会失败，并取消整个上传
+ * 写入与关闭使用同一个锁，取消使用另一个锁，因此可以在其他线程中随时取消，不需要等待阻塞中的写入
+ * 使用S3的分段上传接口（?uploads、?partNumber=&uploadId=、?uploadId=），请求不做签名，
+ * 认证信息通过请求头传入，例如网关的令牌
+ *
+ * @author Ni187
+ */
+public class MultipartUploadSink implements WritableByteChannel {
+
+    /**
+     * S3限制分段数量不超过10000，除最后一段外每段不小于5MB
+     */
+    private static final int MAX_PARTS = 10000;
+
+    /**
+     * 第一次重试前的等待时间，毫秒，之后每次加倍
+     */
+    private static final long RETRY_DELAY = 500;
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>(.*?)</UploadId>", Pattern.DOTALL);
+
+    private final URI object;
+
+    private final Map<String, String> headers;
+
+    private final int partSize;
+
+    private final int maxInFlight;
+
+    private final int maxRetries;
+
+    private final HttpClient client;
+
+    private final ExecutorService executor;
+
+    private final String uploadId;
+
+    /**
+     * 空闲的分段缓冲区，最多 maxInFlight + 1 个，用尽时写入阻塞
+     */
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    private int allocatedBuffers;
+
+    /**
+     * 写入与关闭的锁，保护正在填充的分段与分段列表的追加；取消时只使用对象本身的锁
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * 正在填充的分段
+     */
+    private byte[] part;
+
+    private int count;
+
+    /**
+     * 按分段编号顺序保存的上传结果（ETag）
+     */
+    private final List<Future<String>> parts = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile long uploadedBytes;
+
+    /**
+     * 第一个上传失败的原因
+     */
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    /**
+     * 以默认参数开始分段上传：每段8MB，最多同时上传4段，每段最多重试3次
+     *
+     * @param object  对象的地址，如 http://host:9000/bucket/backup.zip
+     * @param headers 每个请求都附带的请求头，可以为null
+     * @throws IOException 开始上传失败
+     */
+    public MultipartUploadSink(URI object, Map<String, String> headers) throws IOException {
+        this(object, headers, 8 << 20, 4, 3);
+    }
+
+    /**
+     * 开始分段上传
+     *
+     * @param object      对象的地址，如 http://host:9000/bucket/backup.zip
+     * @param headers     每个请求都附带的请求头，可以为null
+     * @param partSize    分段大小，S3要求不小于5MB
+     * @param maxInFlight 最多同时上传的分段数量
+     * @param maxRetries  每段最多重试的次数
+     * @throws IOException 开始上传失败
+     */
+    public MultipartUploadSink(URI object, Map<String, String> headers, int partSize, int maxInFlight,
+                               int maxRetries) throws IOException {
+        this.object = object;
+        this.headers = headers == null ? Collections.emptyMap() : new LinkedHashMap<>(headers);
+        this.partSize = Math.max(partSize, 1);
+        this.maxInFlight = Math.max(maxInFlight, 1);
+        this.maxRetries = Math.max(maxRetries, 0);
+        this.freeBuffers = new ArrayBlockingQueue<>(this.maxInFlight + 1);
+        this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        HttpResponse<String> response = send(request("?uploads").POST(HttpRequest.BodyPublishers.noBody()));
+        if (response.statusCode() != 200) {
+            throw new IOException("开始分段上传失败：" + response.statusCode() + " " + response.body());
+        }
+        Matcher matcher = UPLOAD_ID.matcher(response.body());
+        if (!matcher.find()) {
+            throw new IOException("开始分段上传失败，响应中没有UploadId：" + response.body());
+        }
+        this.uploadId = matcher.group(1).trim();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "upload-" + object.getPath());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            int length = src.remaining();
+            while (src.hasRemaining()) {
+                if (part == null) {
+                    part = takeBuffer();
+                    count = 0;
+                }
+                int n = Math.min(src.remaining(), partSize - count);
+                src.get(part, count, n);
+                count += n;
+                if (count == partSize) {
+                    submitPart();
+                }
+            }
+            return length;
+        }
+    }
+
+    /**
+     * 取得一个空闲的分段缓冲区，所有缓冲区都在上传时等待
+     */
+    private byte[] takeBuffer() throws IOException {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedBuffers < maxInFlight + 1) {
+            allocatedBuffers++;
+            return new byte[partSize];
+        }
+        try {
+            //定时检查是否已经取消或者失败，取消后不再等待
+            while ((buffer = freeBuffers.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                ensureOpen();
+            }
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待分段上传时被中断");
+        }
+    }
+
+    /**
+     * 提交正在填充的分段
+     */
+    private void submitPart() throws IOException {
+        ensureOpen();
+        int partNumber = parts.size() + 1;
+        if (partNumber > MAX_PARTS) {
+            throw new IOException("分段数量超过" + MAX_PARTS + "，请增大分段大小");
+        }
+        byte[] data = part;
+        int length = count;
+        part = null;
+        count = 0;
+        Future<String> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    return uploadPart(partNumber, data, length);
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    throw e;
+                } finally {
+                    freeBuffers.offer(data);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //其他线程已经取消上传
+            throw new ClosedChannelException();
+        }
+        parts.add(future);
+        uploadedBytes += length;
+    }
+
+    /**
+     * 上传一个分段，网络异常、5xx与429时重试
+     *
+     * @return 分段的ETag
+     */
+    private String uploadPart(int partNumber, byte[] data, int length) throws IOException, InterruptedException {
+        String query = "?partNumber=" + partNumber + "&uploadId=" + encode(uploadId);
+        for (int attempt = 0; ; attempt++) {
+            if (failure != null) {
+                //其他分段已经失败，不再上传
+                throw new IOException("分段上传已失败", failure);
+            }
+            IOException error;
+            boolean retryable = true;
+            try {
+                HttpResponse<String> response = send(request(query)
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(data, 0, length)));
+                int status = response.statusCode();
+                if (status == 200) {
+                    return response.headers().firstValue("ETag")
+                            .orElseThrow(() -> new IOException("分段" + partNumber + "的响应中没有ETag"));
+                }
+                error = new IOException("上传分段" + partNumber + "失败：" + status + " " + response.body());
+                retryable = status >= 500 || status == 429;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                error = e;
+            }
+            if (!retryable || attempt >= maxRetries) {
+                throw error;
+            }
+            System.err.println("上传分段" + partNumber + "失败，第" + (attempt + 1) + "次重试：" + error.getMessage());
+            Thread.sleep(Math.min(RETRY_DELAY << attempt, 10_000));
+        }
+    }
+
+    /**
+     * @return 已提交上传的字节数
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * @return 对象的地址
+     */
+    public URI getObject() {
+        return object;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * 上传最后一段，等待所有分段上传完成后合并为完整的对象；任何分段失败时取消上传
+     *
+     * @throws IOException 上传或合并失败
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                //没有任何数据时也需要上传一个空的分段
+                if (part != null || parts.isEmpty()) {
+                    if (part == null) {
+                        part = takeBuffer();
+                    }
+                    submitPart();
+                }
+                StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+                for (int i = 0; i < parts.size(); i++) {
+                    body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                            .append(escape(parts.get(i).get())).append("</ETag></Part>");
+                }
+                body.append("</CompleteMultipartUpload>");
+                HttpResponse<String> response = send(request("?uploadId=" + encode(uploadId))
+                        .header("Content-Type", "application/xml")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8)));
+                //S3在合并失败时也可能返回200，错误信息在响应体中
+                if (response.statusCode() != 200 || response.body().contains("<Error>")) {
+                    throw new IOException("合并分段失败：" + response.statusCode() + " " + response.body());
+                }
+                closed = true;
+                executor.shutdown();
+            } catch (ExecutionException e) {
+                abort();
+                throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException("分段上传失败", e.getCause());
+            } catch (CancellationException e) {
+                //其他线程取消了上传
+                abort();
+                throw new IOException("分段上传已取消", failure);
+            } catch (InterruptedException e) {
+                abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待分段上传时被中断");
+            } catch (IOException | RuntimeException e) {
+                abort();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 取消上传：停止尚未开始的分段，并通知对象存储删除已上传的分段
+     * 可以在其他线程中调用，不等待正在进行的写入，阻塞中的写入随后以ClosedChannelException结束
+     */
+    public synchronized void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (failure == null) {
+            failure = new IOException("分段上传已取消");
+        }
+        synchronized (parts) {
+            for (Future<String> future : parts) {
+                future.cancel(true);
+            }
+        }
+        executor.shutdownNow();
+        try {
+            send(request("?uploadId=" + encode(uploadId)).DELETE());
+        } catch (IOException e) {
+            System.err.println("取消分段上传“" + uploadId + "”时发生异常，已上传的分段可能需要手动清理");
+            e.printStackTrace();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (failure != null) {
+            throw new IOException("分段上传已失败", failure);
+        }
+    }
+
+    private HttpRequest.Builder request(String query) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(object + query)).timeout(TIMEOUT);
+        headers.forEach(builder::header);
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws IOException {
+        try {
+            return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断");
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    @Override
+    public String toString() {
+        return object.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package zip.core;
+
+
+/**
+ * 压缩预估结果：由抽样测量推算的zip文件大小、压缩率与耗时，以及95%置信区间
+ * 耗时按单线程测得的吞吐量与压缩线程数推算，不包含扫描文件的时间
+ *
+ * @author Ni187
+ */
+public class PackEstimate {
+
+    private final long entries;
+
+    private final long totalBytes;
+
+    private final int samples;
+
+    private final long sampledBytes;
+
+    private final long size;
+
+    private final long sizeLow;
+
+    private final long sizeHigh;
+
+    private final long timeMillis;
+
+    private final long timeLowMillis;
+
+    private final long timeHighMillis;
+
+    private final long scanMillis;
+
+    private final long sampleMillis;
+
+    PackEstimate(long entries, long totalBytes, int samples, long sampledBytes,
+                 long size, long sizeLow, long sizeHigh,
+                 long timeMillis, long timeLowMillis, long timeHighMillis,
+                 long scanMillis, long sampleMillis) {
+        this.entries = entries;
+        this.totalBytes = totalBytes;
+        this.samples = samples;
+        this.sampledBytes = sampledBytes;
+        this.size = size;
+        this.sizeLow = sizeLow;
+        this.sizeHigh = sizeHigh;
+        this.timeMillis = timeMillis;
+        this.timeLowMillis = timeLowMillis;
+        this.timeHighMillis = timeHighMillis;
+        this.scanMillis = scanMillis;
+        this.sampleMillis = sampleMillis;
+    }
+
+    /**
+     * @return 条目数量，包括空目录
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 源文件总大小
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return 实际测量的样本数量（文件或者数据块）
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return 实际压缩的样本字节数
+     */
+    public long getSampledBytes() {
+        return sampledBytes;
+    }
+
+    /**
+     * @return 预估的zip文件大小
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getSizeLow() {
+        return sizeLow;
+    }
+
+    public long getSizeHigh() {
+        return sizeHigh;
+    }
+
+    /**
+     * @return 预估的压缩率（zip文件大小 / 源文件总大小），源文件总大小为0时为0
+     */
+    public double getRatio() {
+        return ratio(size);
+    }
+
+    public double getRatioLow() {
+        return ratio(sizeLow);
+    }
+
+    public double getRatioHigh() {
+        return ratio(sizeHigh);
+    }
+
+    private double ratio(long size) {
+        return totalBytes == 0 ? 0 : (double) size / totalBytes;
+    }
+
+    /**
+     * @return 预估的压缩耗时，毫秒
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getTimeLowMillis() {
+        return timeLowMillis;
+    }
+
+    public long getTimeHighMillis() {
+        return timeHighMillis;
+    }
+
+    /**
+     * @return 扫描文件的耗时，毫秒
+     */
+    public long getScanMillis() {
+        return scanMillis;
+    }
+
+    /**
+     * @return 抽样测量的耗时，毫秒
+     */
+    public long getSampleMillis() {
+        return sampleMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "条目：" + entries + "，输入：" + totalBytes + "B，样本：" + samples + "（" + sampledBytes + "B）"
+                + "，预估大小：" + size + "B [" + sizeLow + ", " + sizeHigh + "]"
+                + String.format("，压缩率：%.3f [%.3f, %.3f]", getRatio(), getRatioLow(), getRatioHigh())
+                + "，预估耗时：" + timeMillis + "ms [" + timeLowMillis + ", " + timeHighMillis + "]"
+                + "，扫描：" + scanMillis + "ms，抽样：" + sampleMillis + "ms";
+    }
+}
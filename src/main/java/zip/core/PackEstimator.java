@@ -0,0 +1,305 @@
+package zip.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static zip.core.ZipArchiveReader.*;
+
+
+/**
+ * 压缩预估：不写入zip文件，通过抽样测量推算压缩结果
+ * 将源文件分为两层分别抽样（不放回）：
+ * 小文件层以文件为单位，压缩整个文件，测量结果包含打开文件的开销；
+ * 大文件层将文件划分为固定大小的数据块，以数据块为单位，读取并压缩随机选中的数据块
+ * 每层以 单位数 * 样本均值 推算总量，以样本标准差与有限总体修正计算置信区间，两层之和即为结果
+ * 抽样次数与时间都有上限，因此耗时与源文件的总大小无关
+ *
+ * @author Ni187
+ */
+class PackEstimator {
+
+    /**
+     * 大文件的数据块大小，不大于该大小的文件属于小文件层
+     */
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * 95%置信区间
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * 固定的随机种子，同一目录多次预估的结果一致
+     */
+    private static final long SEED = 187;
+
+    /**
+     * 样本的压缩数据只计数，不保存
+     */
+    private static final EntryDeflater.Output DISCARD = data -> {
+    };
+
+    private final int level;
+
+    private final int bufferSize;
+
+    private final Charset charset;
+
+    private final int threads;
+
+    /**
+     * 读写限速，MB/s，小于等于0表示不限制
+     */
+    private final double rateLimit;
+
+    /**
+     * 每层的最大样本数
+     */
+    private final int samplesPerStratum;
+
+    /**
+     * 抽样时间上限，纳秒
+     */
+    private final long budgetNanos;
+
+    PackEstimator(int level, int bufferSize, Charset charset, int threads, double rateLimit,
+                  int samples, long budgetMillis) {
+        this.level = level;
+        this.bufferSize = bufferSize;
+        this.charset = charset;
+        this.threads = Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+        this.rateLimit = rateLimit;
+        this.samplesPerStratum = Math.max(1, samples / 2);
+        this.budgetNanos = Math.max(budgetMillis, 0) * 1_000_000;
+    }
+
+    /**
+     * 一层的样本：每个样本的压缩后大小与耗时
+     */
+    private static class Stratum {
+        /**
+         * 单位总数
+         */
+        final long population;
+        final List<long[]> samples = new ArrayList<>();
+
+        Stratum(long population) {
+            this.population = population;
+        }
+
+        void add(long out, long nanos) {
+            samples.add(new long[]{out, nanos});
+        }
+
+        /**
+         * @return {推算的总量, 标准误差}
+         */
+        double[] total(int index) {
+            int n = samples.size();
+            if (n == 0) {
+                return new double[]{0, 0};
+            }
+            double sum = 0;
+            for (long[] sample : samples) {
+                sum += sample[index];
+            }
+            double mean = sum / n;
+            double squares = 0;
+            for (long[] sample : samples) {
+                squares += (sample[index] - mean) * (sample[index] - mean);
+            }
+            double variance = n > 1 ? squares / (n - 1) : mean * mean;
+            double fpc = Math.max(0, 1 - (double) n / population);
+            return new double[]{population * mean, population * Math.sqrt(variance / n * fpc)};
+        }
+    }
+
+    /**
+     * @param entries   扫描得到的条目清单
+     * @param scanNanos 扫描耗时
+     * @return 预估结果
+     * @throws IOException 读取异常
+     */
+    PackEstimate estimate(List<SourceEntry> entries, long scanNanos) throws IOException {
+        long startTime = System.nanoTime();
+        long totalBytes = 0;
+        long overhead = END_SIZE;
+        List<SourceEntry> small = new ArrayList<>();
+        List<SourceEntry> large = new ArrayList<>();
+        for (SourceEntry entry : entries) {
+            //文件头与中央目录的大小是确定的，不需要抽样
+            int nameLength = entry.zipPath.getBytes(charset).length;
+            overhead += LOCAL_HEADER_SIZE + CENTRAL_HEADER_SIZE + 2L * nameLength;
+            if (entry.directory) {
+                continue;
+            }
+            overhead += 16;
+            totalBytes += entry.size;
+            if (entry.size > BLOCK_SIZE) {
+                large.add(entry);
+            } else {
+                small.add(entry);
+            }
+        }
+        //大文件层按数据块编号，blockEnds[i]为前i+1个大文件的数据块总数
+        long[] blockEnds = new long[large.size()];
+        long blocks = 0;
+        for (int i = 0; i < blockEnds.length; i++) {
+            blocks += (large.get(i).size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            blockEnds[i] = blocks;
+        }
+
+        Random random = new Random(SEED);
+        long[] smallPicks = pick(small.size(), random);
+        long[] blockPicks = pick(blocks, random);
+        Stratum smallStratum = new Stratum(small.size());
+        Stratum largeStratum = new Stratum(blocks);
+        EntryDeflater deflater = new EntryDeflater(level, bufferSize, 0, 0);
+        byte[] block = new byte[BLOCK_SIZE];
+        long sampledBytes = 0;
+        long deadline = startTime + budgetNanos;
+        try {
+            //两层交替抽样，时间用尽时两层的样本数相近
+            for (int i = 0; i < Math.max(smallPicks.length, blockPicks.length); i++) {
+                if (i > 0 && System.nanoTime() - deadline > 0) {
+                    break;
+                }
+                if (i < smallPicks.length) {
+                    sampledBytes += sampleFile(small.get((int) smallPicks[i]), deflater, smallStratum);
+                }
+                if (i < blockPicks.length) {
+                    long index = blockPicks[i];
+                    int file = Arrays.binarySearch(blockEnds, index + 1);
+                    if (file < 0) {
+                        file = -file - 1;
+                    }
+                    SourceEntry entry = large.get(file);
+                    long first = blockEnds[file] - (entry.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+                    sampledBytes += sampleBlock(entry, (index - first) * BLOCK_SIZE, block, deflater, largeStratum);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        double[] smallSize = smallStratum.total(0);
+        double[] largeSize = largeStratum.total(0);
+        double[] smallTime = smallStratum.total(1);
+        double[] largeTime = largeStratum.total(1);
+        double size = overhead + smallSize[0] + largeSize[0];
+        double sizeError = Z * Math.sqrt(smallSize[1] * smallSize[1] + largeSize[1] * largeSize[1]);
+        //单线程测得的耗时按线程数均分，限速时不低于按限额读取全部数据的时间
+        double time = (smallTime[0] + largeTime[0]) / threads;
+        double timeError = Z * Math.sqrt(smallTime[1] * smallTime[1] + largeTime[1] * largeTime[1]) / threads;
+        double minTime = rateLimit > 0 ? totalBytes / (rateLimit * 1048576) * 1e9 : 0;
+        return new PackEstimate(entries.size(), totalBytes,
+                smallStratum.samples.size() + largeStratum.samples.size(), sampledBytes,
+                Math.round(size), Math.round(Math.max(overhead, size - sizeError)), Math.round(size + sizeError),
+                millis(Math.max(time, minTime)), millis(Math.max(time - timeError, minTime)),
+                millis(Math.max(time + timeError, minTime)),
+                scanNanos / 1_000_000, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * 压缩整个小文件，读取失败时跳过该样本
+     *
+     * @return 样本的字节数
+     */
+    private long sampleFile(SourceEntry entry, EntryDeflater deflater, Stratum stratum) {
+        long begin = System.nanoTime();
+        try {
+            deflater.deflate(entry.file, entry.size, level, DISCARD);
+        } catch (IOException ioException) {
+            System.err.println("读取文件：“" + entry.file.getPath() + "” 时，发生异常，跳过该样本：" + ioException.getMessage());
+            return 0;
+        }
+        stratum.add(deflater.getBytesWritten(), System.nanoTime() - begin);
+        return deflater.getBytesRead();
+    }
+
+    /**
+     * 读取并压缩大文件中的一个数据块，读取失败时跳过该样本
+     *
+     * @return 样本的字节数
+     */
+    private long sampleBlock(SourceEntry entry, long position, byte[] block, EntryDeflater deflater, Stratum stratum)
+            throws IOException {
+        long begin = System.nanoTime();
+        int length;
+        try {
+            length = read(entry.file, position, block);
+        } catch (IOException ioException) {
+            System.err.println("读取文件：“" + entry.file.getPath() + "” 时，发生异常，跳过该样本：" + ioException.getMessage());
+            return 0;
+        }
+        deflater.deflate(new ByteArrayInputStream(block, 0, length), level, DISCARD);
+        stratum.add(deflater.getBytesWritten(), System.nanoTime() - begin);
+        return length;
+    }
+
+    /**
+     * 不放回地随机选取单位编号，单位总数不超过样本数时全部选取
+     *
+     * @param population 单位总数
+     * @return 随机顺序的单位编号
+     */
+    private long[] pick(long population, Random random) {
+        if (population <= samplesPerStratum) {
+            long[] picks = new long[(int) population];
+            for (int i = 0; i < picks.length; i++) {
+                picks[i] = i;
+            }
+            //打乱顺序，时间用尽时已抽取的样本仍然是随机的
+            for (int i = picks.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long tmp = picks[i];
+                picks[i] = picks[j];
+                picks[j] = tmp;
+            }
+            return picks;
+        }
+        Set<Long> picked = new HashSet<>();
+        long[] picks = new long[samplesPerStratum];
+        int count = 0;
+        while (count < picks.length) {
+            long index = (long) (random.nextDouble() * population);
+            if (index < population && picked.add(index)) {
+                picks[count++] = index;
+            }
+        }
+        return picks;
+    }
+
+    /**
+     * 读取文件中从position开始的一个数据块
+     *
+     * @return 读取的字节数
+     */
+    private static int read(File file, long position, byte[] block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                int len = channel.read(buffer, position + buffer.position());
+                if (len < 0) {
+                    break;
+                }
+            }
+        }
+        return buffer.position();
+    }
+
+    private static long millis(double nanos) {
+        return Math.round(nanos / 1e6);
+    }
+}
@@ -0,0 +1,145 @@
+package zip.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+
+/**
+ * 压缩统计信息：记录一次压缩任务的条目数、输入输出字节数、耗时，以及每个条目使用的压缩等级
+ *
+ * @author Ni187
+ */
+public class PackStatistics {
+
+    private long entries;
+
+    private long bytesIn;
+
+    private long bytesOut;
+
+    private final long startTime = System.nanoTime();
+
+    private long elapsedNanos;
+
+    /**
+     * 因读写限速而等待的时间，多线程时为各线程等待时间之和
+     */
+    private long throttledNanos;
+
+    /**
+     * 并行压缩时，暂存压缩数据占用内存的峰值
+     */
+    private long peakMemory;
+
+    /**
+     * 并行压缩时，转存到临时文件的条目数量
+     */
+    private long spilledEntries;
+
+    /**
+     * 每个条目使用的压缩等级，按压缩顺序
+     */
+    private final Map<String, Integer> entryLevels = new LinkedHashMap<>();
+
+    /**
+     * 各压缩等级的条目数量
+     */
+    private final long[] levelCounts = new long[Deflater.BEST_COMPRESSION + 1];
+
+    synchronized void record(String name, int level, long in, long out) {
+        entries++;
+        bytesIn += in;
+        bytesOut += out;
+        entryLevels.put(name, level);
+        if (level >= 0 && level < levelCounts.length) {
+            levelCounts[level]++;
+        }
+    }
+
+    synchronized void memory(long peakMemory, long spilledEntries) {
+        this.peakMemory = peakMemory;
+        this.spilledEntries = spilledEntries;
+    }
+
+    synchronized void throttled(long nanos) {
+        throttledNanos += nanos;
+    }
+
+    synchronized void finish() {
+        elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    public synchronized long getEntries() {
+        return entries;
+    }
+
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+
+    public synchronized long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * @return 因读写限速而等待的时间，毫秒
+     */
+    public synchronized long getThrottledMillis() {
+        return throttledNanos / 1_000_000;
+    }
+
+    /**
+     * @return 除去限速等待之外的耗时，毫秒
+     */
+    public synchronized long getWorkMillis() {
+        return Math.max(elapsedNanos - throttledNanos, 0) / 1_000_000;
+    }
+
+    public synchronized long getPeakMemory() {
+        return peakMemory;
+    }
+
+    public synchronized long getSpilledEntries() {
+        return spilledEntries;
+    }
+
+    /**
+     * @return 每个条目使用的压缩等级
+     */
+    public synchronized Map<String, Integer> getEntryLevels() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(entryLevels));
+    }
+
+    /**
+     * @param level 压缩等级
+     * @return 使用该等级的条目数量
+     */
+    public synchronized long getLevelCount(int level) {
+        return level >= 0 && level < levelCounts.length ? levelCounts[level] : 0;
+    }
+
+    /**
+     * @return 平均吞吐量，MB/s
+     */
+    public synchronized double getThroughput() {
+        return elapsedNanos == 0 ? 0 : bytesIn / 1048576.0 / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder levels = new StringBuilder();
+        for (int i = 0; i < levelCounts.length; i++) {
+            if (levelCounts[i] > 0) {
+                levels.append(" L").append(i).append('=').append(levelCounts[i]);
+            }
+        }
+        return "条目：" + entries + "，输入：" + bytesIn + "B，输出：" + bytesOut + "B，耗时："
+                + getElapsedMillis() + "ms，限速等待：" + getThrottledMillis() + "ms，吞吐量：" + String.format("%.2f", getThroughput()) + "MB/s，内存峰值：" + peakMemory + "B，转存条目：" + spilledEntries + "，等级分布：" + levels;
+    }
+}
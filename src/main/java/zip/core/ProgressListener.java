@@ -0,0 +1,27 @@
+package zip.core;
+
+/**
+ * 压缩、解压进度的监听器
+ * 在执行任务的线程（并行压缩时为写入zip文件的线程）中调用，实现需要尽快返回，
+ * 不应在其中直接更新界面
+ *
+ * @author Ni187
+ */
+public interface ProgressListener {
+
+    /**
+     * 确定了一批需要处理的条目，一次任务中可能调用多次（如解压多个zip文件），总量累加
+     *
+     * @param entries 条目数量
+     * @param bytes   条目原始大小之和
+     */
+    void planned(long entries, long bytes);
+
+    /**
+     * 一个条目处理完成（包括被跳过的条目）
+     *
+     * @param name  条目名
+     * @param bytes 条目原始大小
+     */
+    void entryDone(String name, long bytes);
+}
@@ -0,0 +1,133 @@
+package zip.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+
+/**
+ * 可定位的deflate数据的检查点索引：
+ * 压缩时每压缩 interval 字节原始数据执行一次 FULL_FLUSH，之后的压缩数据不再引用之前的数据，且从字节边界开始，
+ * 因此可以从任意一个检查点开始用新的Inflater解压
+ * 第k个检查点（k从1开始）对应原始数据的位置 k * interval，记录其在压缩数据中的位置
+ * 索引保存在中央目录的扩展字段中，标准的解压工具会忽略该字段
+ *
+ * @author Ni187
+ */
+class SeekIndex {
+
+    /**
+     * 扩展字段的ID
+     */
+    static final int EXTRA_ID = 0x534B;
+
+    /**
+     * 扩展字段数据的最大长度，检查点过多时合并相邻的段，使中央目录中的文件头不超过65535字节
+     */
+    private static final int MAX_DATA_SIZE = 32 * 1024;
+
+    /**
+     * 相邻检查点之间的原始数据长度
+     */
+    final long interval;
+
+    /**
+     * 各检查点在压缩数据中的位置
+     */
+    final long[] offsets;
+
+    private SeekIndex(long interval, long[] offsets) {
+        this.interval = interval;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 检查点过多时，每次间隔加倍、只保留偶数编号的检查点，直到扩展字段不超过最大长度
+     *
+     * @param interval 检查点间隔
+     * @param offsets  各检查点在压缩数据中的位置
+     * @return 索引，没有检查点时返回null
+     */
+    static SeekIndex of(long interval, List<Long> offsets) {
+        long[] kept = new long[offsets.size()];
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = offsets.get(i);
+        }
+        while (8 + 8L * kept.length > MAX_DATA_SIZE) {
+            long[] half = new long[kept.length / 2];
+            for (int i = 0; i < half.length; i++) {
+                half[i] = kept[2 * i + 1];
+            }
+            kept = half;
+            interval *= 2;
+        }
+        return kept.length == 0 ? null : new SeekIndex(interval, kept);
+    }
+
+    /**
+     * @return 段的数量
+     */
+    int segments() {
+        return offsets.length + 1;
+    }
+
+    /**
+     * @return 段在压缩数据中的起始位置
+     */
+    long compressedStart(int segment) {
+        return segment == 0 ? 0 : offsets[segment - 1];
+    }
+
+    /**
+     * @return 段在压缩数据中的结束位置
+     */
+    long compressedEnd(int segment, long compressedSize) {
+        return segment < offsets.length ? offsets[segment] : compressedSize;
+    }
+
+    /**
+     * @return 段在原始数据中的起始位置
+     */
+    long start(int segment) {
+        return segment * interval;
+    }
+
+    /**
+     * @return 包含原始数据中position位置的段
+     */
+    int segmentOf(long position) {
+        return (int) Math.min(position / interval, offsets.length);
+    }
+
+    /**
+     * @return 包含扩展字段头的完整扩展字段
+     */
+    byte[] toExtra() {
+        int size = 8 + 8 * offsets.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) EXTRA_ID);
+        buffer.putShort((short) size);
+        buffer.putLong(interval);
+        for (long offset : offsets) {
+            buffer.putLong(offset);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 读取扩展字段的数据部分
+     *
+     * @return 索引，数据格式不正确时返回null
+     */
+    static SeekIndex read(ByteBuffer buffer, int offset, int size) {
+        if (size < 16 || (size - 8) % 8 != 0) {
+            return null;
+        }
+        long interval = buffer.getLong(offset);
+        long[] offsets = new long[(size - 8) / 8];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffer.getLong(offset + 8 + 8 * i);
+        }
+        return interval > 0 ? new SeekIndex(interval, offsets) : null;
+    }
+}
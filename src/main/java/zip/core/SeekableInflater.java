@@ -0,0 +1,280 @@
+package zip.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+
+/**
+ * 从压缩数据的任意位置开始解压：
+ * 带检查点索引（见SeekIndex）的DEFLATED条目可以从任意检查点开始解压，因此可以按段并行解压，
+ * 或者只解压包含所需范围的部分；STORED条目直接读取，其他压缩方式只能从头解压后跳过
+ * 多个线程可以同时使用同一个实例
+ *
+ * @author Ni187
+ */
+class SeekableInflater {
+
+    /**
+     * 解压数据的接收者
+     */
+    interface Sink {
+        /**
+         * @param data 一段解压后的数据
+         * @return 是否继续解压
+         */
+        boolean accept(ByteBuffer data) throws IOException;
+    }
+
+    private final ZipArchiveReader reader;
+
+    private final int bufferSize;
+
+    private final IoThrottle throttle;
+
+    private final LongConsumer throttled;
+
+    SeekableInflater(ZipArchiveReader reader, int bufferSize, IoThrottle throttle, LongConsumer throttled) {
+        this.reader = reader;
+        this.bufferSize = bufferSize;
+        this.throttle = throttle;
+        this.throttled = throttled;
+    }
+
+    /**
+     * 是否可以按段并行解压：未加密、带检查点索引的DEFLATED条目
+     *
+     * @param entry 条目
+     * @return 是否支持
+     */
+    static boolean supports(ZipArchiveReader.RawEntry entry) {
+        return entry.seekIndex != null
+                && (entry.flags & 1) == 0
+                && entry.method == ZipEntry.DEFLATED;
+    }
+
+    /**
+     * 解压一段DEFLATED压缩数据，from必须是压缩数据的开始或者一个检查点
+     *
+     * @param entry 条目
+     * @param from  起始位置，相对于压缩数据的开始
+     * @param to    结束位置（不包含），相对于压缩数据的开始
+     * @param last  是否包含压缩数据的结尾，不包含时在to处结束，包含时需要读到最后一个块
+     * @param sink  解压数据的接收者
+     * @return 解压后的数据长度
+     * @throws IOException 读取异常或数据损坏
+     */
+    long inflate(ZipArchiveReader.RawEntry entry, long from, long to, boolean last, Sink sink) throws IOException {
+        FileChannel in = reader.channel();
+        long position = reader.dataOffset(entry) + from;
+        long end = reader.dataOffset(entry) + to;
+        ByteBuffer inBuffer = ByteBuffer.allocateDirect(bufferSize);
+        ByteBuffer outBuffer = ByteBuffer.allocateDirect(bufferSize);
+        Inflater inflater = new Inflater(true);
+        long produced = 0;
+        boolean padded = false;
+        //输入已经全部交给Inflater，此后不再产生输出时结束
+        boolean exhausted = false;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput() && !exhausted) {
+                    inBuffer.clear();
+                    if (position < end) {
+                        if (end - position < inBuffer.capacity()) {
+                            inBuffer.limit((int) (end - position));
+                        }
+                        int n = in.read(inBuffer, position);
+                        if (n < 0) {
+                            throw new ZipException("zip文件意外结束");
+                        }
+                        throttle.acquire(n, throttled);
+                        position += n;
+                    } else if (last && !padded) {
+                        //nowrap模式下，数据结束后需要额外提供一个字节
+                        inBuffer.put((byte) 0);
+                        padded = true;
+                    } else {
+                        exhausted = true;
+                    }
+                    inBuffer.flip();
+                    inflater.setInput(inBuffer);
+                }
+                outBuffer.clear();
+                int n = inflater.inflate(outBuffer);
+                outBuffer.flip();
+                if (n == 0 && exhausted) {
+                    break;
+                }
+                if (outBuffer.hasRemaining()) {
+                    produced += outBuffer.remaining();
+                    if (!sink.accept(outBuffer)) {
+                        return produced;
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("压缩数据损坏：“" + entry.name + "”，" + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        if (last && !inflater.finished()) {
+            throw new ZipException("压缩数据不完整：“" + entry.name + "”");
+        }
+        return produced;
+    }
+
+    /**
+     * 读取条目解压后的一段数据，带检查点索引的条目从最近的检查点开始解压
+     *
+     * @param entry  条目
+     * @param offset 解压后数据中的起始位置
+     * @param length 读取长度，超出条目结尾的部分被忽略
+     * @return 读取到的数据
+     * @throws IOException 读取异常、不支持的压缩方式或者数据损坏
+     */
+    byte[] read(ZipArchiveReader.RawEntry entry, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("读取范围无效：" + offset + "，" + length);
+        }
+        if ((entry.flags & 1) != 0) {
+            throw new ZipException("不支持加密的条目“" + entry.name + "”");
+        }
+        byte[] result = new byte[(int) Math.max(0, Math.min(length, entry.size - offset))];
+        if (result.length == 0) {
+            return result;
+        }
+        ByteBuffer target = ByteBuffer.wrap(result);
+        if (entry.method == ZipEntry.STORED) {
+            long position = reader.dataOffset(entry) + offset;
+            while (target.hasRemaining()) {
+                int n = reader.channel().read(target, position);
+                if (n < 0) {
+                    throw new ZipException("zip文件意外结束");
+                }
+                throttle.acquire(n, throttled);
+                position += n;
+            }
+        } else if (entry.method == ZipEntry.DEFLATED) {
+            SeekIndex index = entry.seekIndex;
+            int segment = index == null ? 0 : index.segmentOf(offset);
+            long from = index == null ? 0 : index.compressedStart(segment);
+            long[] skip = {index == null ? offset : offset - index.start(segment)};
+            inflate(entry, from, entry.compressedSize, true, data -> {
+                if (skip[0] >= data.remaining()) {
+                    skip[0] -= data.remaining();
+                    return true;
+                }
+                data.position(data.position() + (int) skip[0]);
+                skip[0] = 0;
+                if (data.remaining() > target.remaining()) {
+                    data.limit(data.position() + target.remaining());
+                }
+                target.put(data);
+                return target.hasRemaining();
+            });
+        } else {
+            readStream(entry, offset, result);
+            return result;
+        }
+        if (target.hasRemaining()) {
+            throw new ZipException("压缩数据不完整：“" + entry.name + "”");
+        }
+        return result;
+    }
+
+    /**
+     * 其他压缩方式：从头解压，跳过offset之前的数据
+     */
+    private void readStream(ZipArchiveReader.RawEntry entry, long offset, byte[] result) throws IOException {
+        ZipCodec codec = ZipCodecs.forMethod(entry.method);
+        if (codec == null) {
+            throw new ZipException("条目“" + entry.name + "”使用了不支持的压缩方式：" + entry.method);
+        }
+        try (InputStream in = throttle.input(codec.decoder(reader.rawInput(entry)), throttled)) {
+            long skip = offset;
+            while (skip > 0) {
+                long n = in.skip(skip);
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        throw new ZipException("压缩数据不完整：“" + entry.name + "”");
+                    }
+                    n = 1;
+                }
+                skip -= n;
+            }
+            int read = 0;
+            while (read < result.length) {
+                int n = in.read(result, read, result.length - read);
+                if (n < 0) {
+                    throw new ZipException("压缩数据不完整：“" + entry.name + "”");
+                }
+                read += n;
+            }
+        }
+    }
+
+    /**
+     * 合并两段连续数据的CRC32，算法与zlib的crc32_combine相同
+     *
+     * @param crc1 第一段数据的CRC32
+     * @param crc2 第二段数据的CRC32
+     * @param len2 第二段数据的长度
+     * @return 两段数据连接后的CRC32
+     */
+    static long crc32Combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        //odd为移动1位的运算矩阵
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        //移动2位、4位
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        //每次将运算矩阵平方，按len2的二进制位对crc1移动len2个字节（8 * len2位）
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+}
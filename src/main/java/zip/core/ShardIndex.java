@@ -0,0 +1,181 @@
+package zip.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+
+/**
+ * 分片索引：记录分片zip文件的名称，以及每个条目所在的分片
+ * 以Properties格式保存，分片文件名为相对于索引文件所在目录的路径
+ *
+ * @author Ni187
+ */
+class ShardIndex {
+
+    static final String INDEX_SUFFIX = ".zipidx";
+
+    private static final String SHARDS_KEY = "shards";
+    private static final String SHARD_KEY_PREFIX = "shard.";
+    private static final String ENTRY_KEY_PREFIX = "entry.";
+
+    /**
+     * 分片文件
+     */
+    final File[] shards;
+
+    /**
+     * 条目名 -> 分片序号
+     */
+    final Map<String, Integer> entries;
+
+    private ShardIndex(File[] shards, Map<String, Integer> entries) {
+        this.shards = shards;
+        this.entries = entries;
+    }
+
+    /**
+     * @param name 条目名
+     * @return 条目所在的分片文件，不存在时返回null
+     */
+    File shardOf(String name) {
+        Integer shard = entries.get(name);
+        return shard == null ? null : shards[shard];
+    }
+
+    /**
+     * @param target 目标文件，如 backup.zip
+     * @return 索引文件，如 backup.zipidx
+     */
+    static File indexFile(File target) {
+        return new File(target.getAbsoluteFile().getParentFile(), baseName(target) + INDEX_SUFFIX);
+    }
+
+    /**
+     * @param target 目标文件，如 backup.zip
+     * @param shards 分片数量
+     * @return 分片文件，如 backup.001.zip
+     */
+    static File[] shardFiles(File target, int shards) {
+        File dir = target.getAbsoluteFile().getParentFile();
+        File[] files = new File[shards];
+        for (int i = 0; i < shards; i++) {
+            files[i] = new File(dir, String.format("%s.%03d.zip", baseName(target), i + 1));
+        }
+        return files;
+    }
+
+    private static String baseName(File target) {
+        String name = target.getName();
+        return name.toLowerCase().endsWith(".zip") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    /**
+     * 按大小将条目分为多份：从大到小依次分给当前总大小最小的分片，分片内保持原清单顺序
+     *
+     * @param entries 条目清单
+     * @param shards  分片数量
+     * @return 每个分片的条目
+     */
+    static List<List<SourceEntry>> partition(List<SourceEntry> entries, int shards) {
+        List<Integer> order = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong((Integer i) -> entries.get(i).size).reversed());
+
+        //分片序号，按分片总大小排序
+        long[] loads = new long[shards];
+        PriorityQueue<Integer> lightest = new PriorityQueue<>(
+                Comparator.comparingLong((Integer shard) -> loads[shard]).thenComparingInt(shard -> shard));
+        List<List<Integer>> assigned = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            lightest.add(i);
+            assigned.add(new ArrayList<>());
+        }
+        for (Integer index : order) {
+            int shard = lightest.poll();
+            assigned.get(shard).add(index);
+            loads[shard] += entries.get(index).size;
+            lightest.add(shard);
+        }
+
+        List<List<SourceEntry>> partition = new ArrayList<>();
+        for (List<Integer> indexes : assigned) {
+            indexes.sort(null);
+            List<SourceEntry> shardEntries = new ArrayList<>(indexes.size());
+            for (Integer index : indexes) {
+                shardEntries.add(entries.get(index));
+            }
+            partition.add(shardEntries);
+        }
+        return partition;
+    }
+
+    /**
+     * 保存索引文件
+     *
+     * @param indexFile 索引文件
+     * @param shards    分片文件
+     * @param partition 每个分片的条目
+     * @throws IOException 写入异常
+     */
+    static void write(File indexFile, File[] shards, List<List<SourceEntry>> partition) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(SHARDS_KEY, String.valueOf(shards.length));
+        for (int i = 0; i < shards.length; i++) {
+            properties.setProperty(SHARD_KEY_PREFIX + i, shards[i].getName());
+            for (SourceEntry entry : partition.get(i)) {
+                properties.setProperty(ENTRY_KEY_PREFIX + entry.zipPath, String.valueOf(i));
+            }
+        }
+        try (Writer writer = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.store(writer, "zip shard index");
+        }
+    }
+
+    /**
+     * 读取索引文件
+     *
+     * @param indexFile 索引文件
+     * @return 分片索引
+     * @throws IOException 读取异常或格式错误
+     */
+    static ShardIndex read(File indexFile) throws IOException {
+        if (!indexFile.exists()) {
+            throw new FileNotFoundException("未找到索引文件“" + indexFile.getCanonicalPath() + "”");
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        File dir = indexFile.getAbsoluteFile().getParentFile();
+        File[] shards;
+        Map<String, Integer> entries = new HashMap<>();
+        try {
+            shards = new File[Integer.parseInt(properties.getProperty(SHARDS_KEY))];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new File(dir, properties.getProperty(SHARD_KEY_PREFIX + i));
+            }
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(ENTRY_KEY_PREFIX)) {
+                    entries.put(key.substring(ENTRY_KEY_PREFIX.length()), Integer.parseInt(properties.getProperty(key)));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("索引文件格式错误“" + indexFile.getCanonicalPath() + "”", e);
+        }
+        return new ShardIndex(shards, entries);
+    }
+}
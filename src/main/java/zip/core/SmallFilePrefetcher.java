@@ -0,0 +1,187 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongConsumer;
+
+
+/**
+ * 小文件预读：
+ * 在网络文件系统上，每个文件的打开与读取都需要一次网络往返，逐个读取小文件时带宽无法用满
+ * 预读线程按条目清单的顺序提前将小文件整个读取到缓冲区中，同时进行的读取数量不超过depth，
+ * 压缩线程按顺序取出已读取的数据，压缩后归还缓冲区；缓冲区复用，总内存不超过 depth * threshold
+ * 只由一个压缩线程按顺序使用
+ *
+ * @author Ni187
+ */
+class SmallFilePrefetcher implements Closeable {
+
+    private final List<SourceEntry> entries;
+
+    /**
+     * 同时进行的读取数量，也是缓冲区数量，小于等于0时不预读
+     */
+    private final int depth;
+
+    /**
+     * 不大于该大小的文件才预读
+     */
+    private final int threshold;
+
+    private final IoThrottle throttle;
+
+    private final LongConsumer throttled;
+
+    private final ExecutorService executor;
+
+    /**
+     * 空闲的缓冲区
+     */
+    private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<>();
+
+    private int allocatedBuffers;
+
+    /**
+     * 条目序号 -> 正在读取或已读取的数据
+     */
+    private final Map<Integer, Future<ByteBuffer>> pending = new HashMap<>();
+
+    /**
+     * 下一个需要检查是否预读的条目序号
+     */
+    private int cursor;
+
+    SmallFilePrefetcher(List<SourceEntry> entries, int depth, int threshold, IoThrottle throttle,
+                        LongConsumer throttled) {
+        this.entries = entries;
+        this.depth = depth;
+        this.threshold = threshold;
+        this.throttle = throttle;
+        this.throttled = throttled;
+        this.executor = depth > 0 && threshold > 0 ? Executors.newFixedThreadPool(depth, runnable -> {
+            Thread thread = new Thread(runnable, "prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 取出一个条目预读的数据，需要按条目序号递增的顺序调用，同时提交后面的小文件的读取
+     *
+     * @param index 条目序号
+     * @return 文件的全部数据，未预读（目录、大文件、读取失败或者读取时文件已经变大）时返回null，
+     * 使用完毕后通过release归还
+     * @throws InterruptedIOException 等待读取时被中断
+     */
+    ByteBuffer take(int index) throws InterruptedIOException {
+        if (executor == null) {
+            return null;
+        }
+        try {
+            submit(index);
+            Future<ByteBuffer> future = pending.remove(index);
+            if (future == null) {
+                return null;
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待预读时被中断");
+        } catch (ExecutionException e) {
+            //读取失败时由调用者重新读取，异常在那里按原来的方式处理
+            return null;
+        }
+    }
+
+    /**
+     * 归还缓冲区
+     *
+     * @param data take返回的数据，可以为null
+     */
+    void release(ByteBuffer data) {
+        if (data != null) {
+            freeBuffers.offer(data.array());
+        }
+    }
+
+    /**
+     * 提交读取：一定提交到index为止，之后在有空闲缓冲区时继续向后提交
+     */
+    private void submit(int index) throws InterruptedException {
+        while (cursor < entries.size()) {
+            SourceEntry entry = entries.get(cursor);
+            if (!entry.directory && entry.size <= threshold) {
+                byte[] buffer = cursor <= index ? takeBuffer() : pollBuffer();
+                if (buffer == null) {
+                    return;
+                }
+                pending.put(cursor, executor.submit(() -> read(entry, buffer)));
+            }
+            cursor++;
+        }
+    }
+
+    private byte[] pollBuffer() {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null && allocatedBuffers < depth) {
+            allocatedBuffers++;
+            //多一个字节，用于发现读取时已经变大的文件
+            buffer = new byte[threshold + 1];
+        }
+        return buffer;
+    }
+
+    private byte[] takeBuffer() throws InterruptedException {
+        byte[] buffer = pollBuffer();
+        return buffer != null ? buffer : freeBuffers.take();
+    }
+
+    /**
+     * 读取整个文件，文件超过缓冲区大小时放弃
+     */
+    private ByteBuffer read(SourceEntry entry, byte[] buffer) throws IOException {
+        int count = 0;
+        try (FileInputStream in = new FileInputStream(entry.file)) {
+            int n;
+            while (count < buffer.length && (n = in.read(buffer, count, buffer.length - count)) != -1) {
+                count += n;
+            }
+            if (count > threshold) {
+                throw new IOException("文件“" + entry.file + "”已经变大");
+            }
+            if (throttle != null) {
+                throttle.acquire(count, throttled);
+            }
+        } catch (IOException | RuntimeException e) {
+            freeBuffers.offer(buffer);
+            throw e;
+        }
+        return ByteBuffer.wrap(buffer, 0, count);
+    }
+
+    /**
+     * 停止预读，已读取但未取出的数据被丢弃
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            for (Future<ByteBuffer> future : pending.values()) {
+                future.cancel(true);
+            }
+            pending.clear();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package zip.core;
+
+import java.io.File;
+
+
+/**
+ * 扫描源文件得到的一个待压缩条目：文件或者空目录
+ *
+ * @author Ni187
+ */
+class SourceEntry {
+
+    /**
+     * 源文件
+     */
+    final File file;
+
+    /**
+     * 在zip包下的位置，空目录以"/"结尾
+     */
+    final String zipPath;
+
+    /**
+     * 是否为空目录
+     */
+    final boolean directory;
+
+    /**
+     * 文件大小
+     */
+    final long size;
+
+    /**
+     * 修改时间
+     */
+    final long lastModified;
+
+    SourceEntry(File file, String zipPath, boolean directory, long size, long lastModified) {
+        this.file = file;
+        this.zipPath = zipPath;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+}
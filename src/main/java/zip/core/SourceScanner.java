@@ -0,0 +1,91 @@
+package zip.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * 扫描待压缩的文件与目录，生成条目清单
+ * 清单在压缩开始前确定，压缩时可以预先知道条目数量与总大小
+ *
+ * @author Ni187
+ */
+class SourceScanner {
+
+    /**
+     * 目标文件路径，扫描时跳过（如果缺少这一步比较，可能会发生自己不断压缩自己的现象）
+     */
+    private final Set<String> targetPaths = new HashSet<>();
+
+    SourceScanner(File... targets) throws IOException {
+        for (File target : targets) {
+            if (target != null) {
+                targetPaths.add(target.getCanonicalPath());
+            }
+        }
+    }
+
+    /**
+     * 扫描多个文件或者目录，使用各自的父目录作为在zip文件夹下的根目录
+     *
+     * @param sources 文件或者目录
+     * @return 条目清单
+     * @throws IOException 文件不存在或读取异常
+     */
+    List<SourceEntry> scan(File[] sources) throws IOException {
+        List<SourceEntry> entries = new ArrayList<>();
+        for (File source : sources) {
+            scan(source, source.getCanonicalFile().getParentFile().getName(), entries);
+        }
+        return entries;
+    }
+
+    /**
+     * 递归扫描文件或者目录
+     *
+     * @param file    文件或目录
+     * @param base    zip下目录
+     * @param entries 条目清单
+     * @throws IOException 文件不存在或读取异常
+     */
+    void scan(File file, String base, List<SourceEntry> entries) throws IOException {
+        // 如果文件不存在抛出异常
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath() + "文件不存在");
+        }
+        //文件在zip包下的位置
+        String zipPath = base + File.separator + file.getName();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                //该文件夹为空目录，最后拼接"/"是为了防止空目录不会被写入到zip文件中
+                if (files.length == 0) {
+                    entries.add(new SourceEntry(file, zipPath + "/", true, 0, file.lastModified()));
+                } else {
+                    for (File f : files) {
+                        scan(f, zipPath, entries);
+                    }
+                }
+            }
+        } else if (targetPaths.isEmpty() || !targetPaths.contains(file.getCanonicalPath())) {
+            entries.add(new SourceEntry(file, zipPath, false, file.length(), file.lastModified()));
+        }
+    }
+
+    /**
+     * @param entries 条目清单
+     * @return 所有文件的总大小
+     */
+    static long totalSize(List<SourceEntry> entries) {
+        long total = 0;
+        for (SourceEntry entry : entries) {
+            total += entry.size;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,153 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * 暂存一个条目的压缩数据，等待写入线程按顺序写入zip文件
+ * 数据保存在内存块中，每个内存块都向内存预算申请；超过阈值后转存到临时文件，并释放已占用的内存
+ *
+ * @author Ni187
+ */
+class SpillableBuffer implements EntryDeflater.Output, Closeable {
+
+    private final MemoryGovernor governor;
+
+    /**
+     * 条目序号
+     */
+    private final long sequence;
+
+    private final int chunkSize;
+
+    /**
+     * 超过该大小后转存到临时文件
+     */
+    private final long spillThreshold;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    private Path spillFile;
+
+    private FileChannel spillChannel;
+
+    private long size;
+
+    SpillableBuffer(MemoryGovernor governor, long sequence, int chunkSize, long spillThreshold) {
+        this.governor = governor;
+        this.sequence = sequence;
+        this.chunkSize = chunkSize;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        size += data.remaining();
+        if (spillChannel != null) {
+            while (data.hasRemaining()) {
+                spillChannel.write(data);
+            }
+            return;
+        }
+        while (data.hasRemaining()) {
+            ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (chunk == null || !chunk.hasRemaining()) {
+                try {
+                    governor.acquire(chunkSize, sequence);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("等待内存时被中断");
+                }
+                chunk = ByteBuffer.allocate(chunkSize);
+                chunks.add(chunk);
+            }
+            int length = Math.min(chunk.remaining(), data.remaining());
+            ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + length);
+            chunk.put(slice);
+            data.position(data.position() + length);
+        }
+        if (spillThreshold > 0 && size > spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * 将内存中的数据转存到临时文件，之后的数据直接写入临时文件
+     */
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("zip-spill", ".tmp");
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        for (ByteBuffer chunk : chunks) {
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                spillChannel.write(chunk);
+            }
+        }
+        releaseChunks();
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isSpilled() {
+        return spillChannel != null;
+    }
+
+    /**
+     * 将暂存的数据写入zip文件的当前条目
+     *
+     * @param writer zip写入器
+     * @throws IOException 读写异常
+     */
+    void writeTo(ZipArchiveWriter writer) throws IOException {
+        if (spillChannel != null) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize);
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+                int n = spillChannel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("临时文件意外结束");
+                }
+                position += n;
+                buffer.flip();
+                writer.write(buffer);
+            }
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer data = chunk.duplicate();
+            data.flip();
+            writer.write(data);
+        }
+    }
+
+    private void releaseChunks() {
+        governor.release((long) chunks.size() * chunkSize);
+        chunks.clear();
+    }
+
+    /**
+     * 释放内存并删除临时文件
+     *
+     * @throws IOException 删除临时文件异常
+     */
+    @Override
+    public void close() throws IOException {
+        releaseChunks();
+        if (spillChannel != null) {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
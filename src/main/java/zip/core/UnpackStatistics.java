@@ -0,0 +1,69 @@
+package zip.core;
+
+/**
+ * 解压统计信息：记录一次解压任务中新写入、跳过、替换的文件数量
+ *
+ * @author Ni187
+ */
+public class UnpackStatistics {
+
+    /**
+     * 目标位置原本不存在，新写入的文件数量
+     */
+    private long written;
+
+    /**
+     * 因内容相同或者非覆盖模式而跳过的文件数量
+     */
+    private long skipped;
+
+    /**
+     * 目标位置已存在且内容不同，被覆盖的文件数量
+     */
+    private long replaced;
+
+    /**
+     * 因读写限速而等待的时间
+     */
+    private long throttledNanos;
+
+    synchronized void written() {
+        written++;
+    }
+
+    synchronized void skipped() {
+        skipped++;
+    }
+
+    synchronized void replaced() {
+        replaced++;
+    }
+
+    synchronized void throttled(long nanos) {
+        throttledNanos += nanos;
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    public synchronized long getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * @return 因读写限速而等待的时间，毫秒
+     */
+    public synchronized long getThrottledMillis() {
+        return throttledNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "写入：" + written + "，跳过：" + skipped + "，替换：" + replaced + "，限速等待：" + getThrottledMillis() + "ms";
+    }
+}
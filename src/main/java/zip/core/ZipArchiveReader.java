@@ -0,0 +1,329 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+
+/**
+ * 直接读取zip文件的中央目录，得到每个条目压缩数据在文件中的位置，
+ * 使解压时可以通过FileChannel直接读取压缩数据，而不经过ZipFile的输入流
+ * 支持Zip64
+ *
+ * @author Ni187
+ */
+class ZipArchiveReader implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+
+    /**
+     * 标志位：文件名使用UTF-8编码
+     */
+    static final int UTF8_FLAG = 0x800;
+
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * 中央目录中的一个条目
+     */
+    static class RawEntry {
+        String name;
+        int flags;
+        int method;
+        long dosTime;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+
+        /**
+         * 压缩数据起始位置，读取本地文件头后才能确定，-1表示未读取
+         */
+        long dataOffset = -1;
+
+        /**
+         * 可定位的deflate数据的检查点索引，没有时为null
+         */
+        SeekIndex seekIndex;
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return 修改时间，无法解析时为-1
+         */
+        long getTime() {
+            return dosToJavaTime(dosTime);
+        }
+    }
+
+    private final FileChannel channel;
+
+    private final List<RawEntry> entries = new ArrayList<>();
+
+    private final Map<String, RawEntry> entryMap = new HashMap<>();
+
+    ZipArchiveReader(File source, Charset charset) throws IOException {
+        this.channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory(charset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    List<RawEntry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    RawEntry getEntry(String name) {
+        return entryMap.get(name);
+    }
+
+    /**
+     * 读取本地文件头，计算条目压缩数据的起始位置
+     *
+     * @param entry 条目
+     * @return 压缩数据在zip文件中的位置
+     * @throws IOException 读取异常或本地文件头损坏
+     */
+    long dataOffset(RawEntry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("本地文件头损坏：“" + entry.name + "”");
+            }
+            int nameLength = Short.toUnsignedInt(header.getShort(26));
+            int extraLength = Short.toUnsignedInt(header.getShort(28));
+            entry.dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        }
+        return entry.dataOffset;
+    }
+
+    /**
+     * 读取条目的压缩数据，多个线程可以同时读取不同的条目
+     *
+     * @param entry 条目
+     * @return 压缩数据的输入流，在压缩数据结束处结束
+     * @throws IOException 读取本地文件头异常
+     */
+    InputStream rawInput(RawEntry entry) throws IOException {
+        return rawInput(entry, 0, entry.compressedSize);
+    }
+
+    /**
+     * 读取条目压缩数据中的一段
+     *
+     * @param entry 条目
+     * @param from  起始位置，相对于压缩数据的开始
+     * @param to    结束位置（不包含），相对于压缩数据的开始
+     * @return 该段压缩数据的输入流
+     * @throws IOException 读取本地文件头异常
+     */
+    InputStream rawInput(RawEntry entry, long from, long to) throws IOException {
+        long dataOffset = dataOffset(entry);
+        long start = dataOffset + from;
+        long end = dataOffset + Math.min(to, entry.compressedSize);
+        return new InputStream() {
+            private long position = start;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+                if (n < 0) {
+                    throw new ZipException("zip文件意外结束");
+                }
+                position += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(end - position, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    /**
+     * 将DOS格式的时间转换为毫秒
+     *
+     * @param dosTime DOS格式的时间
+     * @return 毫秒，无法解析时为-1
+     */
+    static long dosToJavaTime(long dosTime) {
+        try {
+            LocalDateTime dateTime = LocalDateTime.of(
+                    (int) ((dosTime >> 25) & 0x7F) + 1980,
+                    (int) ((dosTime >> 21) & 0x0F),
+                    (int) ((dosTime >> 16) & 0x1F),
+                    (int) ((dosTime >> 11) & 0x1F),
+                    (int) ((dosTime >> 5) & 0x3F),
+                    (int) ((dosTime << 1) & 0x3E));
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 查找中央目录结束标志（可能带有注释，需要从文件末尾向前搜索），再读取全部中央目录
+     *
+     * @param charset 文件名未标记UTF-8时使用的编码
+     * @throws IOException 读取异常或文件格式错误
+     */
+    private void readCentralDirectory(Charset charset) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+        ByteBuffer tail = read(fileSize - tailSize, tailSize);
+        int endPos = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) {
+            throw new ZipException("未找到中央目录结束标志");
+        }
+        long total = Short.toUnsignedLong(tail.getShort(endPos + 10));
+        long centralSize = Integer.toUnsignedLong(tail.getInt(endPos + 12));
+        long centralOffset = Integer.toUnsignedLong(tail.getInt(endPos + 16));
+
+        //Zip64: 结束标志前为Zip64定位器，指向Zip64中央目录结束记录
+        long endOffset = fileSize - tailSize + endPos;
+        if (endOffset >= ZIP64_LOCATOR_SIZE) {
+            ByteBuffer locator = read(endOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64End = read(locator.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Zip64中央目录结束记录损坏");
+                }
+                total = zip64End.getLong(32);
+                centralSize = zip64End.getLong(40);
+                centralOffset = zip64End.getLong(48);
+            }
+        }
+
+        if (centralSize > Integer.MAX_VALUE) {
+            throw new ZipException("中央目录过大");
+        }
+        ByteBuffer central = channel.map(FileChannel.MapMode.READ_ONLY, centralOffset, centralSize);
+        central.order(ByteOrder.LITTLE_ENDIAN);
+        int pos = 0;
+        for (long i = 0; i < total; i++) {
+            if (central.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("中央目录损坏");
+            }
+            RawEntry entry = new RawEntry();
+            entry.flags = Short.toUnsignedInt(central.getShort(pos + 8));
+            entry.method = Short.toUnsignedInt(central.getShort(pos + 10));
+            entry.dosTime = Integer.toUnsignedLong(central.getInt(pos + 12));
+            entry.crc = Integer.toUnsignedLong(central.getInt(pos + 16));
+            entry.compressedSize = Integer.toUnsignedLong(central.getInt(pos + 20));
+            entry.size = Integer.toUnsignedLong(central.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(central.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(central.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(central.getShort(pos + 32));
+            entry.localHeaderOffset = Integer.toUnsignedLong(central.getInt(pos + 42));
+
+            byte[] name = new byte[nameLength];
+            central.position(pos + CENTRAL_HEADER_SIZE);
+            central.get(name);
+            entry.name = new String(name, (entry.flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : charset);
+            readExtra(entry, central, pos + CENTRAL_HEADER_SIZE + nameLength, extraLength);
+
+            entries.add(entry);
+            entryMap.put(entry.name, entry);
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * 读取扩展字段：
+     * Zip64扩展字段中只有值为0xFFFFFFFF的字段才会出现，且顺序固定；检查点索引见SeekIndex
+     */
+    private static void readExtra(RawEntry entry, ByteBuffer buffer, int offset, int length) {
+        int end = offset + length;
+        while (offset + 4 <= end) {
+            int id = Short.toUnsignedInt(buffer.getShort(offset));
+            int size = Short.toUnsignedInt(buffer.getShort(offset + 2));
+            int pos = offset + 4;
+            if (id == ZIP64_EXTRA_ID) {
+                if (entry.size == ZIP64_MAGIC && pos + 8 <= end) {
+                    entry.size = buffer.getLong(pos);
+                    pos += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC && pos + 8 <= end) {
+                    entry.compressedSize = buffer.getLong(pos);
+                    pos += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC && pos + 8 <= end) {
+                    entry.localHeaderOffset = buffer.getLong(pos);
+                }
+            } else if (id == SeekIndex.EXTRA_ID && pos + size <= end) {
+                entry.seekIndex = SeekIndex.read(buffer, pos, size);
+            }
+            offset += 4 + size;
+        }
+    }
+
+    /**
+     * 从指定位置读取固定长度的数据
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("zip文件意外结束");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
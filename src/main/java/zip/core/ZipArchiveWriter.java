@@ -0,0 +1,474 @@
+package zip.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static zip.core.ZipArchiveReader.*;
+
+
+/**
+ * zip文件写入器：
+ * 与ZipOutputStream不同，条目数据由调用者自行压缩后以ByteBuffer的形式写入，
+ * 因此可以直接使用Deflater.setInput(ByteBuffer)等方式压缩，不经过额外的拷贝
+ * 条目大小未知时使用数据描述符，支持Zip64
+ * 已结束条目的中央目录记录保存在CentralDirectory中，堆内存占用与条目数量无关
+ *
+ * @author Ni187
+ */
+class ZipArchiveWriter implements Closeable {
+
+    static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    /**
+     * 标志位：条目的CRC与大小记录在数据之后的数据描述符中
+     */
+    static final int DATA_DESCRIPTOR_FLAG = 0x8;
+
+    static final int VERSION = 20;
+    static final int ZIP64_VERSION = 45;
+
+    /**
+     * 正在写入的条目的中央目录记录，条目结束后编码到CentralDirectory中
+     */
+    static class CentralRecord {
+        byte[] name;
+        int flags;
+        int method;
+        long dosTime;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+        /**
+         * 只写入中央目录的扩展字段（包含扩展字段头），为null时没有
+         */
+        byte[] extra;
+    }
+
+    private final WritableByteChannel out;
+
+    private final Charset charset;
+
+    /**
+     * 写缓冲区，合并文件头与较小的数据块，减少写调用
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * 已写入的字节数，即下一个字节在zip文件中的位置
+     */
+    private long position;
+
+    private final CentralDirectory centralDirectory;
+
+    /**
+     * 当前正在写入的条目
+     */
+    private CentralRecord current;
+
+    /**
+     * 当前条目数据的起始位置
+     */
+    private long dataStart;
+
+    /**
+     * 当前条目的本地文件头是否包含Zip64扩展字段，数据描述符的格式必须与之一致
+     */
+    private boolean localZip64;
+
+    private boolean closed;
+
+    ZipArchiveWriter(WritableByteChannel out, Charset charset, int bufferSize) {
+        this(out, charset, bufferSize, CentralDirectory.DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param centralSpillThreshold 中央目录在内存中保留的最大字节数，超过后转存到临时文件，小于等于0时不转存
+     */
+    ZipArchiveWriter(WritableByteChannel out, Charset charset, int bufferSize, long centralSpillThreshold) {
+        this.out = out;
+        this.charset = charset;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 512)).order(ByteOrder.LITTLE_ENDIAN);
+        this.centralDirectory = new CentralDirectory(centralSpillThreshold);
+    }
+
+    /**
+     * @return 已写入的字节数
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * @return 已结束的条目数量
+     */
+    long count() {
+        return centralDirectory.count();
+    }
+
+    /**
+     * 写入目录条目
+     *
+     * @param name 以"/"结尾的目录名
+     * @param time 修改时间
+     * @throws IOException 写入异常
+     */
+    void putDirectory(String name, long time) throws IOException {
+        putEntry(name, ZipEntry.STORED, time, 0, 0, 0);
+        closeEntry();
+    }
+
+    /**
+     * 开始写入一个大小未知的条目，CRC与大小在endEntry时写入数据描述符
+     *
+     * @param name         条目名
+     * @param method       压缩方式
+     * @param time         修改时间
+     * @param expectedSize 预计的原始大小，压缩后可能接近或超过4GB时在本地文件头中预留Zip64扩展字段
+     * @throws IOException 写入异常
+     */
+    void beginEntry(String name, int method, long time, long expectedSize) throws IOException {
+        ensureOpen();
+        current = newRecord(name, method, time);
+        current.flags |= DATA_DESCRIPTOR_FLAG;
+        //不可压缩的数据压缩后会略微变大（deflate每个块多出几个字节，LZ4约为1/255），按1/128加64KB预留余量
+        writeLocalHeader(current, expectedSize + (expectedSize >> 7) + (64 << 10) >= ZIP64_MAGIC);
+        dataStart = position;
+    }
+
+    /**
+     * 写入一个CRC与大小已知的条目的文件头，之后写入的数据长度必须与compressedSize一致
+     *
+     * @throws IOException 写入异常
+     */
+    void putEntry(String name, int method, long time, long crc, long compressedSize, long size) throws IOException {
+        ensureOpen();
+        current = newRecord(name, method, time);
+        current.crc = crc;
+        current.compressedSize = compressedSize;
+        current.size = size;
+        writeLocalHeader(current, size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC);
+        dataStart = position;
+    }
+
+    /**
+     * 写入当前条目的（已压缩的）数据
+     *
+     * @param data 数据
+     * @throws IOException 写入异常
+     */
+    void write(ByteBuffer data) throws IOException {
+        if (current == null) {
+            throw new ZipException("没有正在写入的条目");
+        }
+        writeRaw(data);
+    }
+
+    /**
+     * 设置当前条目在中央目录中的扩展字段，需要在条目结束之前调用
+     *
+     * @param extra 包含扩展字段头的完整扩展字段
+     */
+    void setCentralExtra(byte[] extra) throws IOException {
+        if (current == null) {
+            throw new ZipException("没有正在写入的条目");
+        }
+        current.extra = extra;
+    }
+
+    /**
+     * 结束大小未知的条目，写入数据描述符
+     * 流式读取时按本地文件头是否包含Zip64扩展字段判断数据描述符的长度，因此数据描述符的格式与本地文件头一致
+     *
+     * @param crc  原始数据CRC32
+     * @param size 原始数据大小
+     * @throws IOException 写入异常，或者本地文件头中没有Zip64扩展字段而实际大小超过4GB（例如读取时文件变大）
+     */
+    void endEntry(long crc, long size) throws IOException {
+        CentralRecord record = current;
+        record.crc = crc;
+        record.size = size;
+        record.compressedSize = position - dataStart;
+        boolean zip64 = localZip64;
+        if (!zip64 && (record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC)) {
+            throw new ZipException("条目“" + new String(record.name, charset)
+                    + "”超过4GB，但本地文件头中没有Zip64扩展字段，文件可能在压缩时被修改");
+        }
+        reserve(zip64 ? 24 : 16);
+        buffer.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        buffer.putInt((int) crc);
+        if (zip64) {
+            buffer.putLong(record.compressedSize);
+            buffer.putLong(record.size);
+        } else {
+            buffer.putInt((int) record.compressedSize);
+            buffer.putInt((int) record.size);
+        }
+        centralDirectory.add(record);
+        current = null;
+    }
+
+    /**
+     * 结束大小已知的条目
+     *
+     * @throws IOException 写入的数据长度与文件头不一致
+     */
+    void closeEntry() throws IOException {
+        if (position - dataStart != current.compressedSize) {
+            throw new ZipException("条目“" + new String(current.name, charset) + "”数据长度与文件头不一致");
+        }
+        centralDirectory.add(current);
+        current = null;
+    }
+
+    /**
+     * 原样复制另一个zip文件中的条目：保留压缩方式、CRC、大小与DOS时间，压缩数据不经过解压，
+     * 直接从源文件通道传输到输出通道；带数据描述符的加密条目同样以数据描述符结束
+     *
+     * @param entry  源zip文件中的条目
+     * @param source 源zip文件通道
+     * @param offset 条目压缩数据在源zip文件中的位置
+     * @throws IOException 读写异常
+     */
+    void copyEntry(RawEntry entry, FileChannel source, long offset) throws IOException {
+        ensureOpen();
+        current = newRecord(entry.name, entry.method, 0);
+        //传统加密的密码校验字节由数据描述符标志决定：有数据描述符时为DOS时间的高字节，否则为CRC的高字节，
+        //因此带数据描述符的加密条目保留该标志并在数据之后写入数据描述符
+        boolean descriptor = (entry.flags & 1) != 0 && (entry.flags & DATA_DESCRIPTOR_FLAG) != 0;
+        //保留加密与压缩选项标志，文件名编码标志按当前写入方式重新设置
+        current.flags |= entry.flags & ~(descriptor ? UTF8_FLAG : DATA_DESCRIPTOR_FLAG | UTF8_FLAG);
+        current.dosTime = entry.dosTime;
+        current.crc = entry.crc;
+        current.compressedSize = entry.compressedSize;
+        current.size = entry.size;
+        current.extra = entry.seekIndex == null ? null : entry.seekIndex.toExtra();
+        writeLocalHeader(current, entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC);
+        dataStart = position;
+        flush();
+        long transferred = 0;
+        while (transferred < entry.compressedSize) {
+            long count = source.transferTo(offset + transferred, entry.compressedSize - transferred, out);
+            if (count <= 0) {
+                throw new ZipException("条目“" + entry.name + "”数据不完整");
+            }
+            transferred += count;
+        }
+        position += transferred;
+        if (descriptor) {
+            endEntry(entry.crc, entry.size);
+        } else {
+            closeEntry();
+        }
+    }
+
+    private CentralRecord newRecord(String name, int method, long time) {
+        CentralRecord record = new CentralRecord();
+        record.name = name.getBytes(charset);
+        record.flags = StandardCharsets.UTF_8.equals(charset) ? UTF8_FLAG : 0;
+        record.method = method;
+        record.dosTime = javaToDosTime(time);
+        record.offset = position;
+        return record;
+    }
+
+    private void writeLocalHeader(CentralRecord record, boolean zip64) throws IOException {
+        boolean descriptor = (record.flags & DATA_DESCRIPTOR_FLAG) != 0;
+        if (record.name.length > 0xFFFF) {
+            throw new ZipException("条目名称过长：" + record.name.length + "字节");
+        }
+        localZip64 = zip64;
+        int length = LOCAL_HEADER_SIZE + record.name.length + (zip64 ? 20 : 0);
+        //超过写缓冲区的文件头（很长的路径）使用单独的缓冲区编码后写入
+        ByteBuffer buffer = length > this.buffer.capacity()
+                ? ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN) : this.buffer;
+        if (buffer == this.buffer) {
+            reserve(length);
+        }
+        buffer.putInt(LOCAL_HEADER_SIGNATURE);
+        buffer.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+        buffer.putShort((short) record.flags);
+        buffer.putShort((short) record.method);
+        buffer.putInt((int) record.dosTime);
+        if (descriptor) {
+            buffer.putInt(0);
+            buffer.putInt(zip64 ? (int) ZIP64_MAGIC : 0);
+            buffer.putInt(zip64 ? (int) ZIP64_MAGIC : 0);
+        } else {
+            buffer.putInt((int) record.crc);
+            buffer.putInt(zip64 ? (int) ZIP64_MAGIC : (int) record.compressedSize);
+            buffer.putInt(zip64 ? (int) ZIP64_MAGIC : (int) record.size);
+        }
+        buffer.putShort((short) record.name.length);
+        buffer.putShort((short) (zip64 ? 20 : 0));
+        buffer.put(record.name);
+        if (zip64) {
+            buffer.putShort((short) ZIP64_EXTRA_ID);
+            buffer.putShort((short) 16);
+            buffer.putLong(descriptor ? 0 : record.size);
+            buffer.putLong(descriptor ? 0 : record.compressedSize);
+        }
+        if (buffer != this.buffer) {
+            buffer.flip();
+            writeRaw(buffer);
+        }
+    }
+
+    /**
+     * 写入中央目录与结束标志，数量或位置超出范围时写入Zip64结束记录
+     *
+     * @throws IOException 写入异常
+     */
+    void finish() throws IOException {
+        ensureOpen();
+        if (current != null) {
+            throw new ZipException("条目“" + new String(current.name, charset) + "”未结束");
+        }
+        long centralOffset = position;
+        flush();
+        centralDirectory.writeTo(out);
+        position += centralDirectory.size();
+        long centralSize = centralDirectory.size();
+        long total = centralDirectory.count();
+        boolean zip64 = total >= 0xFFFF || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = position;
+            reserve(56 + ZIP64_LOCATOR_SIZE);
+            buffer.putInt(ZIP64_END_SIGNATURE);
+            buffer.putLong(44);
+            buffer.putShort((short) ZIP64_VERSION);
+            buffer.putShort((short) ZIP64_VERSION);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(total);
+            buffer.putLong(total);
+            buffer.putLong(centralSize);
+            buffer.putLong(centralOffset);
+            buffer.putInt(ZIP64_LOCATOR_SIGNATURE);
+            buffer.putInt(0);
+            buffer.putLong(zip64EndOffset);
+            buffer.putInt(1);
+        }
+        reserve(END_SIZE);
+        buffer.putInt(END_SIGNATURE);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) (zip64 ? 0xFFFF : total));
+        buffer.putShort((short) (zip64 ? 0xFFFF : total));
+        buffer.putInt((int) (zip64 ? ZIP64_MAGIC : centralSize));
+        buffer.putInt((int) (zip64 ? ZIP64_MAGIC : centralOffset));
+        buffer.putShort((short) 0);
+        flush();
+        closed = true;
+    }
+
+    /**
+     * 保证写缓冲区有足够的空间写入文件头
+     */
+    private void reserve(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+        if (buffer.remaining() < length) {
+            throw new ZipException("文件头过长");
+        }
+        position += length;
+    }
+
+    /**
+     * 较小的数据合并到写缓冲区，较大的数据直接写入
+     */
+    private void writeRaw(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (length <= buffer.remaining()) {
+            buffer.put(data);
+        } else {
+            flush();
+            if (length < buffer.capacity()) {
+                buffer.put(data);
+            } else {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+        }
+        position += length;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ZipException("zip文件已经结束");
+        }
+    }
+
+    /**
+     * 转换为DOS格式的时间，1980年之前的时间使用1980-01-01
+     */
+    static long javaToDosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(
+                java.time.Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = dateTime.getYear() - 1980;
+        if (year < 0) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year << 25)
+                | (dateTime.getMonthValue() << 21)
+                | (dateTime.getDayOfMonth() << 16)
+                | (dateTime.getHour() << 11)
+                | (dateTime.getMinute() << 5)
+                | (dateTime.getSecond() >> 1);
+    }
+
+    /**
+     * 放弃zip文件：不写入中央目录，直接释放中央目录并关闭输出通道，用于写入失败或者上传已取消时
+     *
+     * @throws IOException 关闭异常
+     */
+    void abort() throws IOException {
+        closed = true;
+        try {
+            centralDirectory.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 未结束时先写入中央目录，再关闭输出通道
+     *
+     * @throws IOException 写入或关闭异常
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!closed && current == null) {
+                finish();
+            }
+        } finally {
+            closed = true;
+            try {
+                centralDirectory.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package zip.core;
+
+import zip.config.FsyncPolicy;
+import zip.config.ZipConfigurator;
+import zip.config.ZipSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+/**
+ * 根据当前机器校准配置：
+ * 在指定目录下生成合成的测试文件，分别以不同的缓冲区大小、线程数与读写方式进行压缩与解压，
+ * 取最快的组合作为配置方案写入配置文件，之后可以通过 Profile = 方案名 或者 ZipConfigurator.useProfile 使用
+ * 测试文件与结果在校准结束后删除
+ *
+ * @author Ni187
+ */
+public class ZipCalibrator {
+
+    /**
+     * 测试的缓冲区设置值，实际使用的缓冲区大小经过ZipConfigurator.bufferSize换算，输出与写入配置方案的都是换算后的大小
+     */
+    private static final int[] BUFFER_SIZES = {4 * 1024, 16 * 1024, 64 * 1024};
+
+    /**
+     * 内存映射模式下使用的映射阈值，使测试文件中的中等与较大的文件都通过映射读取
+     */
+    private static final long MAPPED_THRESHOLD = 1 << 20;
+
+    private static final int SMALL_FILES = 256;
+    private static final int SMALL_FILE_SIZE = 16 * 1024;
+    private static final int MEDIUM_FILES = 16;
+    private static final int MEDIUM_FILE_SIZE = 1 << 20;
+    private static final int LARGE_FILE_SIZE = 24 << 20;
+
+    private static final String[] WORDS = {
+            "zip", "deflate", "archive", "entry", "buffer", "channel", "level", "charset",
+            "config", "thread", "memory", "window", "stream", "header", "central", "directory"};
+
+    private final File workDir;
+
+    /**
+     * 校准开始时的配置快照，未参与测试的设置使用其中的值
+     */
+    private final ZipSettings settings;
+
+    /**
+     * 校准时使用的进度监听器，不做任何处理，代替压缩时逐个条目的控制台输出
+     */
+    private static final ProgressListener SILENT = new ProgressListener() {
+        @Override
+        public void planned(long entries, long bytes) {
+        }
+
+        @Override
+        public void entryDone(String name, long bytes) {
+        }
+    };
+
+    public ZipCalibrator(File workDir) {
+        this.workDir = workDir;
+        this.settings = ZipConfigurator.snapshot();
+    }
+
+    /**
+     * 用法：ZipCalibrator 工作目录 方案名 配置文件
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("用法：ZipCalibrator <工作目录> <方案名> <配置文件>");
+            return;
+        }
+        Map<String, String> profile = new ZipCalibrator(new File(args[0])).calibrate();
+        ZipConfigurator.saveProfile(new File(args[2]), args[1], profile);
+        System.out.println("已写入配置方案“" + args[1] + "”：" + profile);
+        System.out.println("在配置文件中设置 Profile = " + args[1] + " 以使用该方案");
+    }
+
+    /**
+     * 生成测试文件并依次测试各个组合
+     *
+     * @return 最快的设置，配置名 -> 配置值
+     * @throws IOException 读写异常
+     */
+    public Map<String, String> calibrate() throws IOException {
+        File corpus = new File(workDir, "corpus");
+        File archive = new File(workDir, "calibration.zip");
+        File unpackDir = new File(workDir, "unpack");
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = IntStream.of(1, 2, cores).filter(n -> n <= cores).distinct().toArray();
+        try {
+            long totalSize = generateCorpus(corpus);
+            System.out.println("测试文件：" + (totalSize >> 20) + "MB，处理器：" + cores);
+            //预热，不计入结果
+            pack(corpus, archive, BUFFER_SIZES[0], 1, false);
+
+            double bestPack = 0;
+            int bestBufferSize = BUFFER_SIZES[0];
+            int bestThreads = 1;
+            boolean bestMapped = false;
+            for (int size : BUFFER_SIZES) {
+                int bufferSize = ZipConfigurator.bufferSize(size);
+                for (int threads : threadCounts) {
+                    for (boolean mapped : new boolean[]{false, true}) {
+                        double throughput = throughput(totalSize, pack(corpus, archive, size, threads, mapped));
+                        System.out.printf("压缩 bufferSize=%d threads=%d mapped=%b：%.2fMB/s%n",
+                                bufferSize, threads, mapped, throughput);
+                        if (throughput > bestPack) {
+                            bestPack = throughput;
+                            bestBufferSize = size;
+                            bestThreads = threads;
+                            bestMapped = mapped;
+                        }
+                    }
+                }
+            }
+
+            pack(corpus, archive, bestBufferSize, bestThreads, bestMapped);
+            double bestUnpack = 0;
+            boolean bestChannel = true;
+            for (boolean channel : new boolean[]{false, true}) {
+                double throughput = throughput(totalSize, unpack(archive, unpackDir, bestBufferSize, channel));
+                System.out.printf("解压 bufferSize=%d channel=%b：%.2fMB/s%n",
+                        ZipConfigurator.bufferSize(bestBufferSize), channel, throughput);
+                if (throughput > bestUnpack) {
+                    bestUnpack = throughput;
+                    bestChannel = channel;
+                }
+            }
+
+            Map<String, String> profile = new LinkedHashMap<>();
+            profile.put("bufferSize", String.valueOf(ZipConfigurator.bufferSize(bestBufferSize)));
+            profile.put("Threads", String.valueOf(bestThreads));
+            profile.put("MappedThreshold", String.valueOf(bestMapped ? MAPPED_THRESHOLD : 0));
+            profile.put("ChannelMode", String.valueOf(bestChannel));
+            return profile;
+        } finally {
+            delete(corpus.toPath());
+            delete(unpackDir.toPath());
+            Files.deleteIfExists(archive.toPath());
+        }
+    }
+
+    /**
+     * @return 耗时（纳秒）
+     */
+    private long pack(File corpus, File archive, int bufferSize, int threads, boolean mapped) throws IOException {
+        ZipCompressor compressor = new ZipCompressor(settings);
+        compressor.reset(bufferSize, settings.getLevel(), true, settings.getCharset());
+        compressor.setMappedModel(mapped ? MAPPED_THRESHOLD : 0, settings.getMapWindowSize());
+        compressor.setParallelModel(threads, settings.getMemoryBudget(), settings.getSpillThreshold());
+        compressor.setProgressListener(SILENT);
+        long startTime = System.nanoTime();
+        compressor.pack(corpus, archive);
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * @return 耗时（纳秒）
+     */
+    private long unpack(File archive, File unpackDir, int bufferSize, boolean channel) throws IOException {
+        delete(unpackDir.toPath());
+        ZipDecompressor decompressor = new ZipDecompressor(settings);
+        decompressor.reset(bufferSize, true, settings.getCharset());
+        decompressor.setIncrementalModel(false, false);
+        decompressor.setChannelModel(channel, FsyncPolicy.NONE, settings.getPreallocateThreshold());
+        decompressor.setProgressListener(SILENT);
+        long startTime = System.nanoTime();
+        decompressor.unpack(archive, unpackDir);
+        return System.nanoTime() - startTime;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes / 1048576.0 / (nanos / 1e9);
+    }
+
+    /**
+     * 生成测试文件：大量可压缩的小文件、少量中等文件，以及一个可压缩与一个不可压缩的较大文件
+     *
+     * @return 总大小
+     */
+    private static long generateCorpus(File corpus) throws IOException {
+        delete(corpus.toPath());
+        Random random = new Random(187);
+        long total = 0;
+        File small = new File(corpus, "small");
+        File medium = new File(corpus, "medium");
+        if (!small.mkdirs() || !medium.mkdirs()) {
+            throw new IOException("创建文件夹：“" + corpus.getCanonicalPath() + "”失败");
+        }
+        for (int i = 0; i < SMALL_FILES; i++) {
+            total += write(new File(small, i + ".txt"), text(random, SMALL_FILE_SIZE));
+        }
+        for (int i = 0; i < MEDIUM_FILES; i++) {
+            total += write(new File(medium, i + ".txt"), text(random, MEDIUM_FILE_SIZE));
+        }
+        total += write(new File(corpus, "large.txt"), text(random, LARGE_FILE_SIZE));
+        byte[] noise = new byte[LARGE_FILE_SIZE];
+        random.nextBytes(noise);
+        total += write(new File(corpus, "large.bin"), noise);
+        return total;
+    }
+
+    private static byte[] text(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size + 16);
+        while (builder.length() < size) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+            builder.append(random.nextInt(16) == 0 ? '\n' : ' ');
+            if (random.nextInt(8) == 0) {
+                builder.append(random.nextInt(100000));
+            }
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes(Charset.forName("US-ASCII"));
+    }
+
+    private static long write(File file, byte[] data) throws IOException {
+        Files.write(file.toPath(), data);
+        return data.length;
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
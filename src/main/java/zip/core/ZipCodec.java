@@ -0,0 +1,49 @@
+package zip.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * 条目数据的压缩方式：
+ * 每种压缩方式对应zip中的一个压缩方式编号，压缩时按配置为每个条目选择，解压时按条目记录的编号选择
+ * 除内置的 stored、deflate 与 lz4 之外，可以通过 java.util.ServiceLoader 提供其他实现
+ * （在 META-INF/services/zip.core.ZipCodec 中列出实现类），实现类需要有公开的无参构造器，且线程安全
+ *
+ * @author Ni187
+ * @see ZipCodecs
+ */
+public interface ZipCodec {
+
+    /**
+     * @return zip中的压缩方式编号
+     */
+    int getMethod();
+
+    /**
+     * @return 名称，配置文件中使用，不区分大小写
+     */
+    String getName();
+
+    /**
+     * 创建压缩输出流：写入原始数据，压缩后写入out
+     * 关闭返回的输出流时写出剩余的压缩数据并关闭out
+     *
+     * @param out   压缩数据的输出
+     * @param level 压缩等级，不支持压缩等级的实现可以忽略
+     * @return 原始数据的输出流
+     * @throws IOException 写入异常
+     */
+    OutputStream encoder(OutputStream out, int level) throws IOException;
+
+    /**
+     * 创建解压输入流：从in读取压缩数据，解压后返回原始数据
+     * 关闭返回的输入流时关闭in
+     *
+     * @param in 压缩数据，在条目的压缩数据结束处结束
+     * @return 原始数据的输入流
+     * @throws IOException 读取异常
+     */
+    InputStream decoder(InputStream in) throws IOException;
+}
@@ -0,0 +1,192 @@
+package zip.core;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+
+/**
+ * 压缩方式的注册表：内置 stored、deflate 与 lz4，再加上通过 ServiceLoader 找到的实现
+ * 编号或名称与已注册的压缩方式重复的实现被忽略
+ *
+ * @author Ni187
+ */
+public final class ZipCodecs {
+
+    public static final ZipCodec STORED = new StoredCodec();
+
+    public static final ZipCodec DEFLATE = new DeflateCodec();
+
+    public static final ZipCodec LZ4 = new Lz4Codec();
+
+    /**
+     * 压缩方式编号 -> 压缩方式
+     */
+    private static final Map<Integer, ZipCodec> BY_METHOD = new LinkedHashMap<>();
+
+    /**
+     * 小写的名称 -> 压缩方式
+     */
+    private static final Map<String, ZipCodec> BY_NAME = new LinkedHashMap<>();
+
+    static {
+        register(STORED);
+        register(DEFLATE);
+        register(LZ4);
+        try {
+            for (ZipCodec codec : ServiceLoader.load(ZipCodec.class)) {
+                register(codec);
+            }
+        } catch (ServiceConfigurationError e) {
+            System.err.println("加载压缩方式实现时发生异常，只使用内置的压缩方式");
+            e.printStackTrace();
+        }
+    }
+
+    private ZipCodecs() {
+    }
+
+    private static void register(ZipCodec codec) {
+        String name = codec.getName().toLowerCase(Locale.ROOT);
+        if (BY_METHOD.containsKey(codec.getMethod()) || BY_NAME.containsKey(name)) {
+            System.err.println("压缩方式“" + codec.getName() + "”（" + codec.getMethod() + "）与已有的压缩方式重复，已忽略");
+            return;
+        }
+        BY_METHOD.put(codec.getMethod(), codec);
+        BY_NAME.put(name, codec);
+    }
+
+    /**
+     * @param method zip中的压缩方式编号
+     * @return 压缩方式，不支持时返回null
+     */
+    public static ZipCodec forMethod(int method) {
+        return BY_METHOD.get(method);
+    }
+
+    /**
+     * @param name 名称，不区分大小写
+     * @return 压缩方式，不支持时返回null
+     */
+    public static ZipCodec forName(String name) {
+        return name == null ? null : BY_NAME.get(name.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return 所有已注册的压缩方式
+     */
+    public static Collection<ZipCodec> all() {
+        return Collections.unmodifiableCollection(BY_METHOD.values());
+    }
+
+    /**
+     * 不压缩
+     */
+    private static class StoredCodec implements ZipCodec {
+        @Override
+        public int getMethod() {
+            return ZipEntry.STORED;
+        }
+
+        @Override
+        public String getName() {
+            return "stored";
+        }
+
+        @Override
+        public OutputStream encoder(OutputStream out, int level) {
+            //FilterOutputStream默认逐字节写入，这里直接写入整个数组
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decoder(InputStream in) {
+            return in;
+        }
+    }
+
+    /**
+     * DEFLATED，不带zlib头
+     * 压缩时引擎直接使用EntryDeflater，FileChannel模式解压时使用ChannelEntryWriter，其余情况使用这里的流
+     */
+    private static class DeflateCodec implements ZipCodec {
+        @Override
+        public int getMethod() {
+            return ZipEntry.DEFLATED;
+        }
+
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream encoder(OutputStream out, int level) {
+            Deflater deflater = new Deflater(level, true);
+            return new DeflaterOutputStream(out, deflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decoder(InputStream in) {
+            Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(in, inflater, 8192) {
+                private boolean eof;
+
+                /**
+                 * nowrap模式下Inflater可能需要在数据结束后多读取一个字节，
+                 * 压缩数据恰好结束时补充一个空字节，与ZipFile的处理方式相同
+                 */
+                @Override
+                protected void fill() throws IOException {
+                    if (eof) {
+                        throw new EOFException("压缩数据意外结束");
+                    }
+                    len = this.in.read(buf, 0, buf.length);
+                    if (len == -1) {
+                        buf[0] = 0;
+                        len = 1;
+                        eof = true;
+                    }
+                    inf.setInput(buf, 0, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+}
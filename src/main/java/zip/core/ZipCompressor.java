@@ -1,12 +1,31 @@
 package zip.core;
 
 import zip.config.ZipConfigurator;
+import zip.config.ZipSettings;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipException;
 
 
 /**
@@ -30,9 +49,99 @@ public class ZipCompressor {
     private boolean coverageModel;
 
     /**
-     * Zip压缩流，初始化延迟至执行压缩方法时
+     * 不小于该大小的源文件通过内存映射读取，直接交给Deflater，小于等于0时不使用映射
      */
-    private ZipOutputStream zipOutputStream;
+    private long mappedThreshold;
+
+    /**
+     * 内存映射时每个窗口的大小
+     */
+    private long mapWindowSize;
+
+    /**
+     * zip写入器，初始化延迟至执行压缩方法时
+     */
+    private ZipArchiveWriter archiveWriter;
+
+    /**
+     * 单线程压缩时，所有条目复用的压缩器
+     */
+    private EntryDeflater deflater;
+
+    /**
+     * 压缩线程数，大于1时并行压缩
+     */
+    private int threads;
+
+    /**
+     * 并行压缩时，尚未写入zip文件的压缩数据共享的内存预算
+     */
+    private long memoryBudget;
+
+    /**
+     * 并行压缩时，压缩后超过该大小的条目转存到临时文件
+     */
+    private long spillThreshold;
+
+    /**
+     * 增量压缩时，大小相同但修改时间不同的文件是否通过CRC32确认
+     */
+    private boolean crcCheck;
+
+    /**
+     * 并行压缩时，暂存压缩数据的内存块大小
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 自适应压缩等级的目标吞吐量，MB/s，小于等于0表示不使用
+     */
+    private double targetThroughput;
+
+    /**
+     * 自适应压缩等级的时间预算，毫秒，小于等于0表示不使用
+     */
+    private long timeBudget;
+
+    /**
+     * 最近一次压缩任务的统计信息
+     */
+    private PackStatistics statistics = new PackStatistics();
+
+    /**
+     * 进程中所有压缩任务共用的JMX指标
+     */
+    private static final ArchiveMetrics METRICS = ArchiveMetrics.compress();
+
+    /**
+     * 读取源文件与写入zip文件时的限速
+     */
+    private IoThrottle throttle = IoThrottle.shared();
+
+    /**
+     * 按条目名选择压缩方式
+     */
+    private CodecSelector codecs;
+
+    /**
+     * deflate检查点间隔，小于等于0时不记录检查点
+     */
+    private long seekInterval;
+
+    /**
+     * 小文件预读：同时进行的读取数量，小于等于0时不预读
+     */
+    private int prefetchDepth;
+
+    /**
+     * 不大于该大小的文件才预读
+     */
+    private int prefetchThreshold;
+
+    /**
+     * 进度监听器，为null时在控制台逐个输出条目
+     */
+    private volatile ProgressListener progressListener;
 
     /**
      * 可重入锁，在该对象进行解压开始时锁定，在解压结束后解锁，防止其它线程在该对象进行解压时修改参数
@@ -40,20 +149,42 @@ public class ZipCompressor {
     ReentrantLock reentrantLock = new ReentrantLock();
 
     public ZipCompressor(int bufferSize, int level, Charset charSet, boolean coverageModel) {
-        this.bufferSize = ZipConfigurator.bufferSize(bufferSize);
-        this.level = ZipConfigurator.level(level);
-        this.charset = charSet;
-        this.coverageModel = coverageModel;
+        this(ZipConfigurator.snapshot(), bufferSize, level, charSet, coverageModel);
+    }
+
+    /**
+     * 从配置快照构造，构造之后修改配置不影响该对象
+     *
+     * @param settings 配置快照
+     */
+    public ZipCompressor(ZipSettings settings) {
+        this(settings, settings.getBufferSize(), settings.getLevel(), settings.getCharset(), settings.isCoverageMode());
     }
 
     /**
      * 从配置文件构造
      */
     public ZipCompressor() {
-        this(ZipConfigurator.getBufferSize()
-                , ZipConfigurator.getLevel()
-                , ZipConfigurator.getCharset()
-                , ZipConfigurator.isCoverageMode());
+        this(ZipConfigurator.snapshot());
+    }
+
+    private ZipCompressor(ZipSettings settings, int bufferSize, int level, Charset charSet, boolean coverageModel) {
+        this.bufferSize = ZipConfigurator.bufferSize(bufferSize);
+        this.level = ZipConfigurator.level(level);
+        this.charset = charSet;
+        this.coverageModel = coverageModel;
+        this.mappedThreshold = settings.getMappedThreshold();
+        this.mapWindowSize = settings.getMapWindowSize();
+        this.targetThroughput = settings.getTargetThroughput();
+        this.timeBudget = settings.getTimeBudget();
+        this.threads = settings.getThreads();
+        this.memoryBudget = settings.getMemoryBudget();
+        this.spillThreshold = settings.getSpillThreshold();
+        this.crcCheck = settings.isCrcCheck();
+        this.codecs = new CodecSelector(settings.getCodec(), settings.getCodecRules());
+        this.seekInterval = settings.getSeekInterval();
+        this.prefetchDepth = settings.getPrefetchDepth();
+        this.prefetchThreshold = settings.getPrefetchThreshold();
     }
 
 
@@ -67,6 +198,133 @@ public class ZipCompressor {
     }
 
 
+    /**
+     * 设置内存映射读取
+     *
+     * @param mappedThreshold 不小于该大小的源文件通过内存映射读取，小于等于0时不使用映射
+     * @param mapWindowSize   每个映射窗口的大小
+     */
+    public void setMappedModel(long mappedThreshold, long mapWindowSize) {
+        reentrantLock.lock();
+        try {
+            this.mappedThreshold = mappedThreshold;
+            this.mapWindowSize = mapWindowSize;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置自适应压缩等级，两者都小于等于0时使用固定的压缩等级
+     *
+     * @param targetThroughput 目标吞吐量，MB/s
+     * @param timeBudget       整个任务的时间预算，毫秒，同时设置时以时间预算为准
+     */
+    public void setAdaptiveLevel(double targetThroughput, long timeBudget) {
+        reentrantLock.lock();
+        try {
+            this.targetThroughput = targetThroughput;
+            this.timeBudget = timeBudget;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置并行压缩
+     *
+     * @param threads        压缩线程数，大于1时并行压缩
+     * @param memoryBudget   尚未写入zip文件的压缩数据共享的内存预算
+     * @param spillThreshold 压缩后超过该大小的条目转存到临时文件，小于等于0时不转存
+     */
+    public void setParallelModel(int threads, long memoryBudget, long spillThreshold) {
+        reentrantLock.lock();
+        try {
+            this.threads = Math.max(threads, 1);
+            this.memoryBudget = memoryBudget;
+            this.spillThreshold = spillThreshold;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置压缩方式
+     *
+     * @param codec 默认的压缩方式名称，如 deflate、lz4、stored，见 {@link ZipCodecs}
+     * @param rules 按条目名选择压缩方式的规则，格式为 "模式:压缩方式"，以逗号分隔，可以为null
+     */
+    public void setCodec(String codec, String rules) {
+        reentrantLock.lock();
+        try {
+            this.codecs = new CodecSelector(codec, rules);
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置deflate检查点间隔：大条目每压缩该长度的原始数据记录一个检查点，索引保存在中央目录的扩展字段中，
+     * 解压时可以从检查点开始并行解压或者只读取其中一段，见 {@link ZipDecompressor#readRange}
+     *
+     * @param seekInterval 检查点间隔，小于等于0时不记录
+     */
+    public void setSeekInterval(long seekInterval) {
+        reentrantLock.lock();
+        try {
+            this.seekInterval = seekInterval;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置小文件预读：逐个压缩条目时，提前将后面的小文件整个读取到内存中，同时进行多个读取，
+     * 适用于打开与读取文件延迟较高的网络文件系统；并行压缩时工作线程各自读取，不使用预读
+     *
+     * @param depth     同时进行的读取数量，小于等于0时不预读
+     * @param threshold 不大于该大小的文件才预读
+     */
+    public void setPrefetchModel(int depth, int threshold) {
+        reentrantLock.lock();
+        try {
+            this.prefetchDepth = depth;
+            this.prefetchThreshold = threshold;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置读写限速，默认使用JVM内共享的 {@link IoThrottle#shared()}
+     *
+     * @param throttle 限速
+     */
+    public void setThrottle(IoThrottle throttle) {
+        reentrantLock.lock();
+        try {
+            this.throttle = throttle;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 设置进度监听器，设置后不再在控制台逐个输出条目
+     *
+     * @param progressListener 进度监听器，为null时恢复控制台输出
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return 最近一次压缩任务的统计信息
+     */
+    public PackStatistics getStatistics() {
+        return statistics;
+    }
+
     public void reset(int size, boolean coverageModel) {
         reset(this.bufferSize
                 , this.level
@@ -99,25 +357,30 @@ public class ZipCompressor {
     }
 
     /**
-     * 初始化ZipOutStream对象
+     * 初始化zip写入器与压缩器
      *
      * @param target 目标文件
      * @throws IOException 初始化异常
      */
-    private void initializeZipOutputStream(File target) throws IOException {
-        //如果为null，进行初始化操作
-        if (this.zipOutputStream == null) {
-            this.zipOutputStream =
-                    new ZipOutputStream(
-                            new BufferedOutputStream(
-                                    new FileOutputStream(target), bufferSize), charset);
+    private void initializeArchiveWriter(File target) throws IOException {
+        initializeArchiveWriter(openTarget(target));
+    }
 
-            this.zipOutputStream.setLevel(this.level);
+    /**
+     * 初始化写入指定通道的zip写入器与压缩器
+     *
+     * @param out 输出通道，关闭zip写入器时关闭
+     */
+    private void initializeArchiveWriter(WritableByteChannel out) {
+        //如果为null，进行初始化操作
+        if (this.archiveWriter == null) {
+            this.archiveWriter = new ZipArchiveWriter(out, charset, bufferSize);
+            this.deflater = newDeflater(level, mappedThreshold, mapWindowSize);
         }
-        // 如果不为null,需要先对流对象进行关闭处理,再次进行初始化
+        // 如果不为null,需要先对写入器进行关闭处理,再次进行初始化
         else {
-            close();
-            initializeZipOutputStream(target);
+            closeArchiveWriter();
+            initializeArchiveWriter(out);
         }
     }
 
@@ -148,97 +411,782 @@ public class ZipCompressor {
             return ;
         }
 
+        if (sources == null || sources.length == 0) {
+            throw new FileNotFoundException("未指定文件");
+        }
         //加锁
         reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        try {
+            //扫描得到条目清单，使用各文件的父目录作为在zip文件夹下的根目录
+            List<SourceEntry> entries = new SourceScanner(target).scan(sources);
+            packEntries(entries, openTarget(target), target);
+            succeeded = true;
+        } finally {
+            //释放文件资源并解锁
+            close(succeeded);
+        }
+    }
+
+    /**
+     * 压缩已经确定的条目清单，不扫描目录，供按文件变化增量归档时使用
+     *
+     * @param entries 条目清单
+     * @param target  目标文件，已存在时覆盖
+     * @throws IOException 打开目标文件异常，或者有条目没有写入
+     */
+    void packBatch(List<SourceEntry> entries, File target) throws IOException {
+        //加锁
+        reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        try {
+            packEntries(entries, openTarget(target), target);
+            //文件头写入失败的条目只打印异常并跳过，调用者依赖清单中的条目全部写入，因此数量不一致时失败
+            if (archiveWriter.count() != entries.size()) {
+                throw new ZipException("写入“" + target.getPath() + "”的条目数量为" + archiveWriter.count()
+                        + "，清单中为" + entries.size());
+            }
+            succeeded = true;
+        } finally {
+            //写入中央目录，释放文件资源并解锁
+            close(succeeded);
+        }
+    }
+
+    /**
+     * 压缩并上传到对象存储：zip文件的数据边生成边分段上传，不写入本地磁盘，上传与压缩同时进行
+     * 压缩完成后关闭sink，合并所有分段；压缩过程中发生异常时取消上传，不会留下不完整的对象
+     *
+     * @param sources 被压缩的文件或目录数组
+     * @param sink    分段上传
+     * @throws IOException 压缩或上传异常
+     */
+    public void packFiles(File[] sources, MultipartUploadSink sink) throws IOException {
         if (sources == null || sources.length == 0) {
             throw new FileNotFoundException("未指定文件");
         }
+        //加锁
+        reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
         try {
-            //初始化zip流
-            initializeZipOutputStream(target);
-            for (File source : sources) {
-                //使用改文件的父目录作为在zip文件夹下的根目录
-                compress(source,source.getCanonicalFile().getParentFile().getName(), target);
+            List<SourceEntry> entries = new SourceScanner().scan(sources);
+            packEntries(entries, throttle.channel(sink, this::throttled), new File(sink.getObject().getPath()));
+            succeeded = true;
+        } catch (IOException | RuntimeException e) {
+            sink.abort();
+            //取消上传后不再写入中央目录，关闭时的异常不覆盖原来的异常
+            try {
+                closeArchiveWriter(true);
+            } catch (RuntimeException closeException) {
+                e.addSuppressed(closeException);
             }
+            throw e;
         } finally {
-            //释放文件资源并解锁
-            close();
+            //写入中央目录，关闭sink时合并分段，并解锁
+            close(succeeded);
+        }
+    }
+
+    /**
+     * 将条目清单压缩到输出通道
+     *
+     * @param entries 条目清单
+     * @param out     输出通道
+     * @param target  目标文件，用于显示进度
+     */
+    private void packEntries(List<SourceEntry> entries, WritableByteChannel out, File target) {
+        statistics = new PackStatistics();
+        planned(entries);
+        AdaptiveLevelController controller = null;
+        if (targetThroughput > 0 || timeBudget > 0) {
+            controller = new AdaptiveLevelController(level, targetThroughput, timeBudget);
+            controller.start(SourceScanner.totalSize(entries));
+        }
+        //初始化zip写入器
+        initializeArchiveWriter(out);
+        if (threads > 1) {
+            compressParallel(entries, target, controller);
+        } else {
+            try (SmallFilePrefetcher prefetcher = newPrefetcher(entries)) {
+                for (int i = 0; i < entries.size(); i++) {
+                    compress(archiveWriter, deflater, entries.get(i), prefetcher, i, target, controller, 1);
+                }
+            }
         }
+        statistics.finish();
     }
 
     /**
-     * 递归算法，将文件或者文件目录压缩到target路径下
+     * 预估压缩结果：不写入zip文件，扫描源文件后按当前的压缩等级、缓冲区大小与线程数抽样压缩，
+     * 推算zip文件大小、压缩率与耗时，以及95%置信区间
+     * 抽样最多 samples 个文件或数据块，且不超过 budgetMillis 毫秒
      *
-     * @param file 要被压缩的文件或目录
-     * @param base zip下目录
-     * @throws FileNotFoundException 未找到文件
+     * @param sources      被压缩的文件或目录数组
+     * @param samples      最大样本数
+     * @param budgetMillis 抽样时间上限，毫秒
+     * @return 预估结果
+     * @throws IOException 文件不存在或读取异常
      */
-    private void compress(File file, String base, File target) throws FileNotFoundException {
-        // 如果文件不存在抛出异常
-        if (!file.exists()) {
-            throw new FileNotFoundException(file.getPath() + "文件不存在");
+    public PackEstimate estimate(File[] sources, int samples, long budgetMillis) throws IOException {
+        if (sources == null || sources.length == 0) {
+            throw new FileNotFoundException("未指定文件");
         }
+        long startTime = System.nanoTime();
+        List<SourceEntry> entries = new SourceScanner().scan(sources);
+        long scanNanos = System.nanoTime() - startTime;
+        PackEstimator estimator = new PackEstimator(level, bufferSize, charset, threads, throttle.getRateLimit(),
+                samples, budgetMillis);
+        return estimator.estimate(entries, scanNanos);
+    }
+
+    /**
+     * 预估压缩结果，最多抽样400个文件或数据块，抽样时间不超过3秒
+     *
+     * @param sources 被压缩的文件或目录数组
+     * @return 预估结果
+     * @throws IOException 文件不存在或读取异常
+     */
+    public PackEstimate estimate(File... sources) throws IOException {
+        return estimate(sources, 400, 3000);
+    }
+
+    /**
+     * 分片压缩：按大小将条目清单均衡地分为多份，并行写入多个互相独立的标准zip文件，
+     * 并生成记录每个条目所在分片的索引文件
+     * 例如 target 为 backup.zip 时，生成 backup.001.zip ... 与索引文件 backup.zipidx
+     *
+     * @param sources 被压缩的文件或目录数组
+     * @param target  目标文件，用于确定分片与索引文件的名称
+     * @param shards  分片数量
+     * @throws IOException 压缩异常
+     */
+    public void packSharded(File[] sources, File target, int shards) throws IOException {
+        File indexFile = ShardIndex.indexFile(target);
+        //如果索引文件存在，且不是覆盖模式，提出警告直接返回
+        if (indexFile.exists() && !coverageModel) {
+            System.err.println("压缩未开始，文件：“"
+                    + indexFile.getCanonicalPath()
+                    + "” 已经存在, 请尝试重设目标路径 或者 修改配置文件（Now：CoverageModel = false）");
+            return;
+        }
+        if (sources == null || sources.length == 0) {
+            throw new FileNotFoundException("未指定文件");
+        }
+        shards = Math.max(shards, 1);
+        File[] shardFiles = ShardIndex.shardFiles(target, shards);
+        //加锁
+        reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
         try {
-            String canonicalPath = file.getCanonicalPath();
-            //文件在zip包下的位置
-            String zipPath = base + File.separator + file.getName();
-            System.out.println(target + " <- " + zipPath);
-            //如果该路径为文件夹
-            if (file.isDirectory()) {
-                File[] files = file.listFiles();
-                if (files != null) {
-                    //该文件夹为空目录
-                    if (files.length == 0) {
-                        //最后拼接"/"是为了防止空目录不会被写入到zip文件中
-                        zipOutputStream.putNextEntry(new ZipEntry(zipPath + "/"));
+            List<SourceEntry> entries = new SourceScanner(shardFiles).scan(sources);
+            statistics = new PackStatistics();
+            planned(entries);
+            AdaptiveLevelController controller = null;
+            if (targetThroughput > 0 || timeBudget > 0) {
+                controller = new AdaptiveLevelController(level, targetThroughput, timeBudget);
+                controller.start(SourceScanner.totalSize(entries));
+            }
+            List<List<SourceEntry>> partition = ShardIndex.partition(entries, shards);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                List<SourceEntry> shardEntries = partition.get(i);
+                File shardFile = shardFiles[i];
+                AdaptiveLevelController shardController = controller;
+                int parallelism = shards;
+                futures.add(executor.submit(() -> {
+                    writeShard(shardEntries, shardFile, shardController, parallelism);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            ShardIndex.write(indexFile, shardFiles, partition);
+            statistics.finish();
+            succeeded = true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            //条目压缩时的读写异常被包装为RuntimeException，取出原来的IOException
+            if (cause instanceof RuntimeException && cause.getCause() instanceof IOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("压缩分片时发生异常", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("压缩分片时被中断", e);
+        } finally {
+            executor.shutdownNow();
+            METRICS.jobFinished(succeeded);
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 增量压缩：读取基准（完整压缩包、增量压缩包或者清单文件）的清单，与当前文件比较，
+     * 只压缩新增或者修改过的文件，并在压缩包中保存当前的完整清单与被删除的条目
+     * 大小与修改时间都相同的文件认为未修改；开启CRC校验时，大小相同但修改时间不同的文件以CRC32为准
+     *
+     * @param sources 被压缩的文件或目录数组
+     * @param base    基准
+     * @param target  增量压缩包
+     * @throws IOException 压缩异常
+     */
+    public void packDelta(File[] sources, File base, File target) throws IOException {
+        //如果目标文件存在，且不是覆盖模式，提出警告直接返回
+        if (target.exists() && !coverageModel) {
+            System.err.println("压缩未开始，文件：“"
+                    + target.getCanonicalPath()
+                    + "” 已经存在, 请尝试重设目标路径 或者 修改配置文件（Now：CoverageModel = false）");
+            return;
+        }
+        if (sources == null || sources.length == 0) {
+            throw new FileNotFoundException("未指定文件");
+        }
+        ArchiveManifest baseManifest = ArchiveManifest.read(base, charset);
+        //加锁
+        reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        try {
+            List<SourceEntry> entries = new SourceScanner(target).scan(sources);
+            statistics = new PackStatistics();
+            ArchiveManifest manifest = new ArchiveManifest();
+            List<SourceEntry> changed = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            byte[] buffer = new byte[bufferSize];
+            for (SourceEntry entry : entries) {
+                names.add(entry.zipPath);
+                ArchiveManifest.Record record = baseManifest.get(entry.zipPath);
+                if (record != null && (record.matches(entry.size, entry.lastModified)
+                        || (crcCheck && !entry.directory && record.size == entry.size
+                        && record.crc == crc(entry.file, buffer)))) {
+                    manifest.put(entry.zipPath, entry.size, entry.lastModified, record.crc);
+                } else {
+                    changed.add(entry);
+                }
+            }
+            for (String name : baseManifest.names()) {
+                if (!names.contains(name) && !name.equals(ArchiveManifest.ENTRY_NAME)) {
+                    manifest.delete(name);
+                }
+            }
+
+            planned(changed);
+            //初始化zip写入器
+            initializeArchiveWriter(target);
+            try (SmallFilePrefetcher prefetcher = newPrefetcher(changed)) {
+                for (int i = 0; i < changed.size(); i++) {
+                    SourceEntry entry = changed.get(i);
+                    compress(archiveWriter, deflater, entry, prefetcher, i, target, null, 1);
+                    manifest.put(entry.zipPath, entry.size, entry.lastModified, entry.directory ? 0 : deflater.getCrc());
+                }
+            }
+            //保存清单
+            byte[] manifestBytes = manifest.toBytes();
+            CRC32 manifestCrc = new CRC32();
+            manifestCrc.update(manifestBytes);
+            archiveWriter.putEntry(ArchiveManifest.ENTRY_NAME, ZipEntry.STORED, System.currentTimeMillis(),
+                    manifestCrc.getValue(), manifestBytes.length, manifestBytes.length);
+            archiveWriter.write(ByteBuffer.wrap(manifestBytes));
+            archiveWriter.closeEntry();
+            System.out.println("增量压缩：修改或新增 " + changed.size() + "，删除 " + manifest.deleted().size());
+            statistics.finish();
+            succeeded = true;
+        } finally {
+            //释放文件资源并解锁
+            close(succeeded);
+        }
+    }
+
+    /**
+     * 转换压缩包：将源zip文件中的条目直接写入新的zip文件，不解压到磁盘
+     * 压缩方式不变（且未指定新的压缩等级）的条目原样复制压缩数据；
+     * 其余条目在内存中解压后按新的方式重新压缩，多线程时并行处理，仍按源文件中的顺序写入
+     * 加密或者使用不支持的压缩方式的条目总是原样复制
+     *
+     * @param source 源zip文件
+     * @param target 目标zip文件
+     * @param method 目标压缩方式编号，需要是 {@link ZipCodecs} 中已注册的压缩方式
+     * @param level  重新压缩的等级，小于0时已压缩（DEFLATED）的条目保持原样
+     * @throws IOException 读写异常
+     */
+    public void transcode(File source, File target, int method, int level) throws IOException {
+        //如果目标文件存在，且不是覆盖模式，提出警告直接返回
+        if (target.exists() && !coverageModel) {
+            System.err.println("转换未开始，文件：“"
+                    + target.getCanonicalPath()
+                    + "” 已经存在, 请尝试重设目标路径 或者 修改配置文件（Now：CoverageModel = false）");
+            return;
+        }
+        if (!source.exists()) {
+            throw new FileNotFoundException("未找到文件“" + source.getCanonicalPath() + "”");
+        }
+        ZipCodec codec = ZipCodecs.forMethod(method);
+        if (codec == null) {
+            throw new IllegalArgumentException("不支持的压缩方式：" + method);
+        }
+        int entryLevel = level < 0 ? this.level : Math.min(level, 9);
+        boolean keepDeflated = level < 0;
+        //加锁
+        reentrantLock.lock();
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        try (ZipArchiveReader reader = new ZipArchiveReader(source, charset)) {
+            statistics = new PackStatistics();
+            initializeArchiveWriter(target);
+            List<ZipArchiveReader.RawEntry> entries = reader.entries();
+            if (progressListener != null) {
+                long totalSize = 0;
+                for (ZipArchiveReader.RawEntry entry : entries) {
+                    totalSize += entry.size;
+                }
+                progressListener.planned(entries.size(), totalSize);
+            }
+            MemoryGovernor governor = new MemoryGovernor(memoryBudget);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+            Queue<EntryDeflater> deflaters = new ConcurrentLinkedQueue<>();
+            ThreadLocal<EntryDeflater> localDeflater = ThreadLocal.withInitial(() -> {
+                EntryDeflater entryDeflater = newDeflater(entryLevel, 0, 0);
+                deflaters.add(entryDeflater);
+                return entryDeflater;
+            });
+            Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+            int window = Math.max(threads, 1) * 4;
+            int submitted = 0;
+            long spilled = 0;
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    while (submitted < entries.size() && submitted - i < window) {
+                        ZipArchiveReader.RawEntry entry = entries.get(submitted);
+                        boolean copy = entry.isDirectory()
+                                || (entry.flags & 1) != 0
+                                || ZipCodecs.forMethod(entry.method) == null
+                                || (entry.method == method && (method != ZipEntry.DEFLATED || keepDeflated));
+                        //原样复制的条目由当前线程直接写入
+                        pending.add(copy ? CompletableFuture.completedFuture(null)
+                                : transcodeEntry(executor, reader, entry, submitted, codec, entryLevel,
+                                governor, localDeflater));
+                        submitted++;
+                    }
+                    ZipArchiveReader.RawEntry entry = entries.get(i);
+                    CompressedEntry compressed = pending.poll().get();
+                    if (compressed == null) {
+                        archiveWriter.copyEntry(entry, reader.channel(), reader.dataOffset(entry));
+                        //原样复制的条目，压缩等级记为-1
+                        statistics.record(entry.name, -1, entry.size, entry.compressedSize);
                     } else {
-                        //遍历该文件夹下的每个文件
-                        for (File f : files) {
-                            compress(f, zipPath, target);
+                        try {
+                            compressed.writeTo(archiveWriter);
+                            statistics.record(compressed.name, compressed.level, compressed.size,
+                                    compressed.compressedSize());
+                            spilled += compressed.data.isSpilled() ? 1 : 0;
+                        } finally {
+                            compressed.close();
                         }
                     }
+                    progress(target, entry.name, entry.size);
+                    governor.advance(i + 1);
                 }
-            }
-            //该路径为文件,且不是目标文件（如果缺少这一步比较，可能会发生自己不断压缩自己的现象）
-            else if (!target.getCanonicalPath().equals(file.getCanonicalPath())) {
-                zipOutputStream.putNextEntry(new ZipEntry(zipPath));
-                BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(file), this.bufferSize);
-                byte[] bytes = new byte[bufferSize];
-                int len;
-                try {
-                    while ((len = bufferedInputStream.read(bytes)) != -1) {
-                        zipOutputStream.write(bytes, 0, len);
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException("压缩过程发生异常");
-                } finally {
+            } catch (ExecutionException e) {
+                throw new RuntimeException("转换过程发生异常", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("转换过程被中断", e);
+            } finally {
+                //取消尚未开始的任务，否则下面等待其结果时会一直阻塞
+                for (Runnable task : executor.shutdownNow()) {
+                    ((Future<?>) task).cancel(false);
+                }
+                //释放未写入的条目
+                for (Future<CompressedEntry> future : pending) {
                     try {
-                        bufferedInputStream.close();
-                    } catch (IOException ioException) {
-                        System.err.println("关闭文件：“" + canonicalPath + "” 时，发生异常：");
-                        ioException.printStackTrace();
+                        CompressedEntry compressed = future.get();
+                        if (compressed != null) {
+                            compressed.close();
+                        }
+                    } catch (Exception ignored) {
+                        //条目压缩失败或者已被取消，没有需要释放的资源
                     }
                 }
+                for (EntryDeflater entryDeflater : deflaters) {
+                    entryDeflater.end();
+                }
+                statistics.memory(governor.getPeak(), spilled);
+            }
+            statistics.finish();
+            succeeded = true;
+        } finally {
+            //释放文件资源并解锁
+            close(succeeded);
+        }
+    }
+
+    /**
+     * 提交一个条目的转换任务：按条目的压缩方式解压，再按目标压缩方式写入缓冲区
+     */
+    private Future<CompressedEntry> transcodeEntry(ExecutorService executor, ZipArchiveReader reader,
+                                                   ZipArchiveReader.RawEntry entry, long sequence, ZipCodec codec,
+                                                   int level, MemoryGovernor governor,
+                                                   ThreadLocal<EntryDeflater> localDeflater) {
+        return executor.submit(() -> {
+            long startTime = System.nanoTime();
+            EntryDeflater entryDeflater = localDeflater.get();
+            SpillableBuffer buffer = new SpillableBuffer(governor, sequence, CHUNK_SIZE, spillThreshold);
+            try (InputStream in = throttle.input(
+                    ZipCodecs.forMethod(entry.method).decoder(reader.rawInput(entry)), this::throttled)) {
+                if (codec == ZipCodecs.STORED) {
+                    entryDeflater.store(in, buffer);
+                } else if (codec == ZipCodecs.DEFLATE) {
+                    entryDeflater.deflate(in, level, buffer);
+                } else {
+                    entryDeflater.encode(codec, in, level, buffer);
+                }
+                if (entryDeflater.getCrc() != entry.crc) {
+                    throw new ZipException("条目“" + entry.name + "”CRC校验失败");
+                }
+            } catch (IOException | RuntimeException e) {
+                METRICS.entryFailed();
+                buffer.close();
+                throw e;
+            }
+            METRICS.entryDone(entry.size, entry.compressedSize, buffer.size(), System.nanoTime() - startTime);
+            return new CompressedEntry(entry.name, entry.getTime(), codec.getMethod(), levelOf(codec, level),
+                    entryDeflater.getCrc(), entryDeflater.getBytesRead(), buffer, entryDeflater.getSeekIndex());
+        });
+    }
+
+    /**
+     * @return 统计信息中记录的压缩等级，deflate之外的压缩方式记为0
+     */
+    private static int levelOf(ZipCodec codec, int level) {
+        return codec == ZipCodecs.DEFLATE ? level : 0;
+    }
+
+    /**
+     * 计算文件的CRC32
+     */
+    private long crc(File file, byte[] buffer) throws IOException {
+        CRC32 crc32 = new CRC32();
+        try (InputStream in = throttle.input(new FileInputStream(file), this::throttled)) {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc32.update(buffer, 0, len);
             }
+        }
+        return crc32.getValue();
+    }
+
+    /**
+     * 以创建或截断的方式打开目标文件，写入经过限速
+     */
+    private WritableByteChannel openTarget(File target) throws IOException {
+        return throttle.channel(FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), this::throttled);
+    }
+
+    /**
+     * 创建读取源文件时经过限速的压缩器
+     */
+    private EntryDeflater newDeflater(int level, long mappedThreshold, long mapWindowSize) {
+        EntryDeflater entryDeflater = new EntryDeflater(level, bufferSize, mappedThreshold, mapWindowSize);
+        entryDeflater.setThrottle(throttle, this::throttled);
+        entryDeflater.setSeekInterval(seekInterval);
+        return entryDeflater;
+    }
+
+    /**
+     * 创建按当前设置预读条目清单中小文件的预读器，未开启预读时不读取
+     */
+    private SmallFilePrefetcher newPrefetcher(List<SourceEntry> entries) {
+        return new SmallFilePrefetcher(entries, prefetchDepth, prefetchThreshold, throttle, this::throttled);
+    }
+
+    /**
+     * 通知进度监听器需要压缩的条目
+     */
+    private void planned(List<SourceEntry> entries) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.planned(entries.size(), SourceScanner.totalSize(entries));
+        }
+    }
+
+    /**
+     * 一个条目写入完成，通知进度监听器，没有监听器时输出到控制台
+     */
+    private void progress(File target, String name, long bytes) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.entryDone(name, bytes);
+        } else {
+            System.out.println(target + " <- " + name);
+        }
+    }
+
+    /**
+     * 记录限速等待时间
+     */
+    private void throttled(long nanos) {
+        statistics.throttled(nanos);
+    }
+
+    /**
+     * 将一个分片的条目依次写入一个zip文件
+     */
+    private void writeShard(List<SourceEntry> entries, File shardFile, AdaptiveLevelController controller,
+                            int parallelism) throws IOException {
+        EntryDeflater shardDeflater = newDeflater(level, mappedThreshold, mapWindowSize);
+        try (ZipArchiveWriter shardWriter = new ZipArchiveWriter(openTarget(shardFile), charset, bufferSize);
+             SmallFilePrefetcher prefetcher = newPrefetcher(entries)) {
+            for (int i = 0; i < entries.size(); i++) {
+                compress(shardWriter, shardDeflater, entries.get(i), prefetcher, i, shardFile, controller,
+                        parallelism);
+            }
+        } finally {
+            shardDeflater.end();
+        }
+    }
+
+    /**
+     * 将清单中的一个条目压缩到target路径下
+     *
+     * @param archiveWriter zip写入器
+     * @param deflater      压缩器
+     * @param entry         文件或空目录
+     * @param prefetcher    小文件预读
+     * @param index         条目在清单中的序号
+     * @param target        目标文件
+     * @param controller    自适应压缩等级，为null时使用固定的压缩等级
+     * @param parallelism   同时写入的zip文件数，用于将单个条目的耗时折算为整体吞吐量
+     */
+    private void compress(ZipArchiveWriter archiveWriter, EntryDeflater deflater, SourceEntry entry,
+                          SmallFilePrefetcher prefetcher, int index, File target,
+                          AdaptiveLevelController controller, int parallelism) {
+        ByteBuffer data = null;
+        try {
+            if (entry.directory) {
+                archiveWriter.putDirectory(entry.zipPath, entry.lastModified);
+                progress(target, entry.zipPath, 0);
+                return;
+            }
+            long startTime = System.nanoTime();
+            ZipCodec codec = codecs.select(entry.zipPath);
+            //自适应压缩等级只用于deflate
+            boolean adaptive = controller != null && codec == ZipCodecs.DEFLATE;
+            int entryLevel = adaptive ? controller.nextLevel() : level;
+            //先取出预读的数据，文件头写入失败时也在最后归还缓冲区，否则预读会因缓冲区耗尽而一直等待
+            data = prefetcher.take(index);
+            archiveWriter.beginEntry(entry.zipPath, codec.getMethod(), entry.lastModified, entry.size);
+            try {
+                //已经预读的小文件直接压缩内存中的数据
+                if (data != null && codec == ZipCodecs.DEFLATE) {
+                    deflater.deflate(data, entryLevel, archiveWriter::write);
+                } else if (data != null) {
+                    deflater.encode(codec, new ByteArrayInputStream(data.array(), 0, data.limit()), entryLevel,
+                            archiveWriter::write);
+                } else if (codec == ZipCodecs.DEFLATE) {
+                    deflater.deflate(entry.file, entry.size, entryLevel, archiveWriter::write);
+                } else {
+                    deflater.encode(codec, entry.file, entryLevel, archiveWriter::write);
+                }
+                SeekIndex seekIndex = deflater.getSeekIndex();
+                if (seekIndex != null) {
+                    archiveWriter.setCentralExtra(seekIndex.toExtra());
+                }
+                archiveWriter.endEntry(deflater.getCrc(), deflater.getBytesRead());
+                statistics.record(entry.zipPath, levelOf(codec, entryLevel), deflater.getBytesRead(),
+                        deflater.getBytesWritten());
+                METRICS.entryDone(deflater.getBytesRead(), deflater.getBytesRead(), deflater.getBytesWritten(),
+                        System.nanoTime() - startTime);
+                progress(target, entry.zipPath, entry.size);
+                if (adaptive) {
+                    controller.record(deflater.getBytesRead(), (System.nanoTime() - startTime) / parallelism);
+                }
+            } catch (IOException e) {
+                METRICS.entryFailed();
+                throw new RuntimeException("压缩过程发生异常", e);
+            }
+        } catch (InterruptedIOException e) {
+            METRICS.entryFailed();
+            throw new RuntimeException("压缩过程被中断", e);
         } catch (IOException ioException) {
+            METRICS.entryFailed();
             ioException.printStackTrace();
+        } finally {
+            prefetcher.release(data);
         }
     }
 
     /**
-     * 关闭zip输出流，置为null 并 解锁
+     * 并行压缩：
+     * 工作线程各自压缩条目并暂存压缩数据（受内存预算限制，过大的条目转存到临时文件），
+     * 当前线程按清单顺序依次取出并写入zip文件；同时提交的条目数量有上限，避免为全部条目创建任务
+     *
+     * @param entries    条目清单
+     * @param target     目标文件
+     * @param controller 自适应压缩等级，为null时使用固定的压缩等级
+     */
+    private void compressParallel(List<SourceEntry> entries, File target, AdaptiveLevelController controller) {
+        MemoryGovernor governor = new MemoryGovernor(memoryBudget);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Queue<EntryDeflater> deflaters = new ConcurrentLinkedQueue<>();
+        ThreadLocal<EntryDeflater> localDeflater = ThreadLocal.withInitial(() -> {
+            EntryDeflater entryDeflater = newDeflater(level, mappedThreshold, mapWindowSize);
+            deflaters.add(entryDeflater);
+            return entryDeflater;
+        });
+        Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+        int window = threads * 4;
+        int submitted = 0;
+        long spilled = 0;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                while (submitted < entries.size() && submitted - i < window) {
+                    pending.add(submit(executor, entries.get(submitted), submitted, governor, localDeflater, controller));
+                    submitted++;
+                }
+                CompressedEntry compressed = pending.poll().get();
+                try {
+                    compressed.writeTo(archiveWriter);
+                    progress(target, compressed.name, compressed.size);
+                    if (compressed.data != null) {
+                        statistics.record(compressed.name, compressed.level, compressed.size, compressed.compressedSize());
+                        spilled += compressed.data.isSpilled() ? 1 : 0;
+                    }
+                } finally {
+                    compressed.close();
+                }
+                governor.advance(i + 1);
+            }
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException("压缩过程发生异常", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("压缩过程被中断", e);
+        } finally {
+            //取消尚未开始的任务，否则下面等待其结果时会一直阻塞
+            for (Runnable task : executor.shutdownNow()) {
+                ((Future<?>) task).cancel(false);
+            }
+            //释放未写入的条目
+            for (Future<CompressedEntry> future : pending) {
+                try {
+                    future.get().close();
+                } catch (Exception ignored) {
+                    //条目压缩失败或者已被取消，没有需要释放的资源
+                }
+            }
+            for (EntryDeflater entryDeflater : deflaters) {
+                entryDeflater.end();
+            }
+            statistics.memory(governor.getPeak(), spilled);
+        }
+    }
+
+    /**
+     * 提交一个条目的压缩任务，空目录不需要压缩
+     */
+    private Future<CompressedEntry> submit(ExecutorService executor, SourceEntry entry, long sequence,
+                                           MemoryGovernor governor, ThreadLocal<EntryDeflater> localDeflater,
+                                           AdaptiveLevelController controller) {
+        if (entry.directory) {
+            return CompletableFuture.completedFuture(new CompressedEntry(entry.zipPath, entry.lastModified));
+        }
+        ZipCodec codec = codecs.select(entry.zipPath);
+        boolean adaptive = controller != null && codec == ZipCodecs.DEFLATE;
+        return executor.submit(() -> {
+            long startTime = System.nanoTime();
+            EntryDeflater entryDeflater = localDeflater.get();
+            int entryLevel = adaptive ? controller.nextLevel() : level;
+            SpillableBuffer buffer = new SpillableBuffer(governor, sequence, CHUNK_SIZE, spillThreshold);
+            try {
+                if (codec == ZipCodecs.DEFLATE) {
+                    entryDeflater.deflate(entry.file, entry.size, entryLevel, buffer);
+                } else {
+                    entryDeflater.encode(codec, entry.file, entryLevel, buffer);
+                }
+            } catch (IOException | RuntimeException e) {
+                METRICS.entryFailed();
+                buffer.close();
+                throw e;
+            }
+            METRICS.entryDone(entryDeflater.getBytesRead(), entryDeflater.getBytesRead(), buffer.size(),
+                    System.nanoTime() - startTime);
+            if (adaptive) {
+                //多个线程同时压缩，按线程数折算为整体吞吐量
+                controller.record(entryDeflater.getBytesRead(), (System.nanoTime() - startTime) / threads);
+            }
+            return new CompressedEntry(entry.zipPath, entry.lastModified, codec.getMethod(),
+                    levelOf(codec, entryLevel), entryDeflater.getCrc(), entryDeflater.getBytesRead(), buffer,
+                    entryDeflater.getSeekIndex());
+        });
+    }
+
+    /**
+     * 结束一个压缩任务：关闭zip写入器（写入中央目录失败时任务也算失败），记录任务结果并解锁
+     *
+     * @param succeeded 任务是否已经成功完成
+     */
+    private void close(boolean succeeded) {
+        boolean closed = false;
+        try {
+            closeArchiveWriter();
+            closed = true;
+        } finally {
+            METRICS.jobFinished(succeeded && closed);
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭zip写入器，置为null 并 解锁
      */
     private void close() {
         try {
-            if (this.zipOutputStream != null) {
-                this.zipOutputStream.close();
-                this.zipOutputStream = null;
+            closeArchiveWriter();
+        } finally {
+            //只有当zip写入器close的时候，才会认为压缩已经结束，可以释放锁
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * 写入中央目录并关闭zip写入器，释放压缩器
+     */
+    private void closeArchiveWriter() {
+        closeArchiveWriter(false);
+    }
+
+    /**
+     * 关闭zip写入器，释放压缩器
+     *
+     * @param abort 是否放弃zip文件，不写入中央目录
+     */
+    private void closeArchiveWriter(boolean abort) {
+        try {
+            if (this.archiveWriter != null) {
+                if (abort) {
+                    this.archiveWriter.abort();
+                } else {
+                    this.archiveWriter.close();
+                }
             }
         } catch (IOException ioException) {
-            throw new RuntimeException("文件关闭时发生异常");
+            throw new RuntimeException("文件关闭时发生异常", ioException);
         } finally {
-            //只有当zipOutput对象close的时候，才会认为压缩已经结束，可以释放锁
-            reentrantLock.unlock();
+            this.archiveWriter = null;
+            if (this.deflater != null) {
+                this.deflater.end();
+                this.deflater = null;
+            }
         }
     }
 
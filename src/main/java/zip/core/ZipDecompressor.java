@@ -1,14 +1,32 @@
 package zip.core;
 
 
+import zip.config.FsyncPolicy;
 import zip.config.ZipConfigurator;
+import zip.config.ZipSettings;
 
 import java.io.*;
 import java.nio.charset.Charset;
-import java.util.Enumeration;
-import java.util.zip.ZipEntry;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 
 /**
@@ -24,16 +42,89 @@ public class ZipDecompressor {
 
     private boolean coverageModel;
 
+    /**
+     * 增量模式：目标文件已存在时，先比较大小与修改时间，相同则跳过，不再打开写入
+     */
+    private boolean incrementalModel;
+
+    /**
+     * 增量模式下，大小相同但修改时间不同时，是否再通过CRC32确认内容是否相同
+     */
+    private boolean crcCheck;
+
+    /**
+     * 是否通过FileChannel直接解压写入
+     */
+    private boolean channelModel;
+
+    /**
+     * FileChannel模式下的刷盘策略
+     */
+    private FsyncPolicy fsyncPolicy;
+
+    /**
+     * FileChannel模式下，解压后不小于该大小的文件预先设置文件长度
+     */
+    private long preallocateThreshold;
+
+    /**
+     * 解压带检查点索引的大条目时的线程数，大于1时按段并行解压
+     */
+    private int threads;
+
+    /**
+     * zip中记录的修改时间为DOS格式，精度为2秒
+     */
+    private static final long DOS_TIME_PRECISION = 2000;
+
+    /**
+     * 最近一次解压任务的统计信息
+     */
+    private UnpackStatistics statistics = new UnpackStatistics();
+
+    /**
+     * 进程中所有解压任务共用的JMX指标
+     */
+    private static final ArchiveMetrics METRICS = ArchiveMetrics.extract();
+
+    /**
+     * 读取zip文件与写入解压文件时的限速
+     */
+    private IoThrottle throttle = IoThrottle.shared();
+
+    /**
+     * 进度监听器，可以为null
+     */
+    private volatile ProgressListener progressListener;
+
     private ZipDecompressor(int bufferSize, Charset charset, boolean coverageModel) {
         this.bufferSize = bufferSize;
         this.charset = charset;
         this.coverageModel = coverageModel;
     }
 
+    /**
+     * 从配置快照构造，构造之后修改配置不影响该对象
+     *
+     * @param settings 配置快照
+     */
+    public ZipDecompressor(ZipSettings settings) {
+        this(settings.getBufferSize()
+                , settings.getCharset()
+                , settings.isCoverageMode());
+        this.incrementalModel = settings.isIncrementalMode();
+        this.crcCheck = settings.isCrcCheck();
+        this.channelModel = settings.isChannelMode();
+        this.fsyncPolicy = settings.getFsyncPolicy();
+        this.preallocateThreshold = settings.getPreallocateThreshold();
+        this.threads = settings.getThreads();
+    }
+
+    /**
+     * 从配置文件构造
+     */
     public ZipDecompressor() {
-        this(ZipConfigurator.getBufferSize()
-                , ZipConfigurator.getCharset()
-                , ZipConfigurator.isCoverageMode());
+        this(ZipConfigurator.snapshot());
     }
 
 
@@ -54,6 +145,108 @@ public class ZipDecompressor {
         this.coverageModel = coverageModel;
     }
 
+    /**
+     * 设置增量解压模式
+     *
+     * @param incrementalModel 是否跳过与zip条目相同的已存在文件
+     * @param crcCheck         大小相同但修改时间不同时，是否通过CRC32确认
+     */
+    public void setIncrementalModel(boolean incrementalModel, boolean crcCheck) {
+        this.incrementalModel = incrementalModel;
+        this.crcCheck = crcCheck;
+    }
+
+    /**
+     * 设置FileChannel写入模式
+     *
+     * @param channelModel         是否通过FileChannel直接解压写入
+     * @param fsyncPolicy          刷盘策略
+     * @param preallocateThreshold 预分配阈值，小于等于0表示不预分配
+     */
+    public void setChannelModel(boolean channelModel, FsyncPolicy fsyncPolicy, long preallocateThreshold) {
+        this.channelModel = channelModel;
+        this.fsyncPolicy = fsyncPolicy;
+        this.preallocateThreshold = preallocateThreshold;
+    }
+
+    /**
+     * 设置并行解压：FileChannel模式下，带检查点索引的条目（见 {@link ZipCompressor#setSeekInterval}）
+     * 按段并行解压，其余条目仍然依次解压
+     *
+     * @param threads 线程数，大于1时并行解压
+     */
+    public void setParallelModel(int threads) {
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * 设置读写限速，默认使用JVM内共享的 {@link IoThrottle#shared()}
+     *
+     * @param throttle 限速
+     */
+    public void setThrottle(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 设置进度监听器
+     *
+     * @param progressListener 进度监听器，为null时不通知
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 创建只读的条目访问缓存，使用当前的编码
+     *
+     * @param capacity 缓存容量（字节）
+     * @param offHeap  是否将条目数据缓存在堆外内存
+     * @return 条目访问缓存，使用完毕后需要关闭
+     */
+    public ArchiveCache openCache(long capacity, boolean offHeap) {
+        return new ArchiveCache(capacity, offHeap, charset);
+    }
+
+    /**
+     * 以Flow.Publisher的形式读取压缩包，条目与解压后的数据按订阅者的请求发布，不写入磁盘，
+     * 数据块大小为当前的缓冲区大小，使用当前的编码与限速
+     *
+     * @param archive 压缩包
+     * @return 条目的Publisher，订阅时才打开压缩包
+     */
+    public ArchivePublisher publish(File archive) {
+        return new ArchivePublisher(archive, charset, bufferSize, throttle, this::throttled);
+    }
+
+    /**
+     * @return 最近一次解压任务的统计信息
+     */
+    public UnpackStatistics getStatistics() {
+        return statistics;
+    }
+
+
+    /**
+     * 读取压缩包中一个条目解压后的一段数据，不解压整个条目：
+     * 带检查点索引的条目从最近的检查点开始解压，STORED条目直接读取
+     *
+     * @param archive 压缩包
+     * @param name    条目名
+     * @param offset  解压后数据中的起始位置
+     * @param length  读取长度，超出条目结尾的部分被忽略
+     * @return 读取到的数据
+     * @throws IOException 条目不存在、读取异常或者数据损坏
+     */
+    public byte[] readRange(File archive, String name, long offset, int length) throws IOException {
+        try (ZipArchiveReader reader = new ZipArchiveReader(archive, charset)) {
+            ZipArchiveReader.RawEntry entry = reader.getEntry(name);
+            if (entry == null || entry.isDirectory()) {
+                throw new FileNotFoundException("压缩包中不存在条目“" + name + "”");
+            }
+            return new SeekableInflater(reader, bufferSize, throttle, this::throttled).read(entry, offset, length);
+        }
+    }
 
     /**
      * 解压多个文件到目标文件夹
@@ -61,12 +254,13 @@ public class ZipDecompressor {
      * @param targetDir 到目标文件夹
      */
     public void unpackFiles(File[] sources,File targetDir) {
+        statistics = new UnpackStatistics();
         if (sources == null || sources.length == 0) {
             return;
         }
         for (File source : sources) {
             try {
-                unpack(source, targetDir);
+                doUnpack(source, targetDir);
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
@@ -106,6 +300,17 @@ public class ZipDecompressor {
      * @param targetDir 解压目录
      */
     public void unpack(File source, File targetDir) throws IOException {
+        statistics = new UnpackStatistics();
+        doUnpack(source, targetDir);
+    }
+
+    /**
+     * 解压zip文件至指定目录，统计信息累加到当前任务
+     *
+     * @param source    zip文件
+     * @param targetDir 解压目录
+     */
+    private void doUnpack(File source, File targetDir) throws IOException {
 
         if (!source.exists()) {
             System.err.println("未找到压缩文件“" + source.getCanonicalPath() + "”");
@@ -117,67 +322,349 @@ public class ZipDecompressor {
                 throw new IOException("创建文件夹失败");
             }
         }
-        decompress(source, targetDir);
+        decompress(source, targetDir, null);
+
+    }
+
+    /**
+     * 解压分片压缩生成的多个zip文件，每个分片使用一个线程并行解压
+     *
+     * @param indexFile 分片索引文件（.zipidx）
+     * @param targetDir 解压目录
+     * @throws IOException 读取索引或解压异常
+     */
+    public void unpackSharded(File indexFile, File targetDir) throws IOException {
+        statistics = new UnpackStatistics();
+        ShardIndex index = ShardIndex.read(indexFile);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(index.shards.length, 1));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File shard : index.shards) {
+                futures.add(executor.submit(() -> {
+                    doUnpack(shard, targetDir);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("解压分片时发生异常", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解压分片时被中断", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 通过分片索引找到条目所在的分片，只解压该条目
+     *
+     * @param indexFile 分片索引文件（.zipidx）
+     * @param name      条目名
+     * @param targetDir 解压目录
+     * @throws IOException 条目不存在或解压异常
+     */
+    public void unpackEntry(File indexFile, String name, File targetDir) throws IOException {
+        statistics = new UnpackStatistics();
+        File shard = ShardIndex.read(indexFile).shardOf(name);
+        if (shard == null) {
+            throw new FileNotFoundException("索引中不存在条目“" + name + "”");
+        }
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new IOException("创建文件夹失败");
+        }
+        decompress(shard, targetDir, name::equals);
+    }
+
+    /**
+     * 在一次解压中应用基准压缩包与一系列增量压缩包：
+     * 先根据各压缩包的条目与增量清单计算每个条目的最终来源，再从各压缩包中只解压最终版本的条目，
+     * 并删除目标目录中已被删除的文件
+     *
+     * @param base      基准压缩包
+     * @param deltas    按时间顺序排列的增量压缩包
+     * @param targetDir 解压目录
+     * @throws IOException 读取或解压异常
+     */
+    public void applyDeltas(File base, File[] deltas, File targetDir) throws IOException {
+        statistics = new UnpackStatistics();
+        File[] archives = new File[deltas.length + 1];
+        archives[0] = base;
+        System.arraycopy(deltas, 0, archives, 1, deltas.length);
+
+        //条目名 -> 最终版本所在的压缩包序号
+        Map<String, Integer> sources = new HashMap<>();
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < archives.length; i++) {
+            try (ZipArchiveReader reader = new ZipArchiveReader(archives[i], charset)) {
+                for (ZipArchiveReader.RawEntry entry : reader.entries()) {
+                    if (!entry.name.equals(ArchiveManifest.ENTRY_NAME)) {
+                        sources.put(entry.name, i);
+                        deleted.remove(entry.name);
+                    }
+                }
+            }
+            if (i > 0) {
+                for (String name : ArchiveManifest.read(archives[i], charset).deleted()) {
+                    sources.remove(name);
+                    deleted.add(name);
+                }
+            }
+        }
 
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new IOException("创建文件夹失败");
+        }
+        for (int i = 0; i < archives.length; i++) {
+            int index = i;
+            decompress(archives[i], targetDir, name -> Integer.valueOf(index).equals(sources.get(name)));
+        }
+        //删除目标目录中已被删除的文件
+        ExtractionPlanner planner = new ExtractionPlanner(targetDir.toPath());
+        for (String name : deleted) {
+            try {
+                Files.deleteIfExists(planner.resolve(name));
+            } catch (DirectoryNotEmptyException e) {
+                System.err.println("目录“" + e.getFile() + "”不为空，未删除");
+            }
+        }
     }
 
     /**
      * 解压zip文件到目标文件夹
+     * 直接读取中央目录，按每个条目的压缩方式编号选择解压方式（见 {@link ZipCodecs}），
+     * 因此也可以解压ZipFile不支持的压缩方式
      *
      * @param source    源文件
      * @param targetDir 目标文件夹
+     * @param filter    只解压名称满足条件的条目，为null时解压全部条目
      * @throws IOException IO异常
      */
-    private void decompress(File source, File targetDir) throws IOException {
-
-        try (ZipFile zipFile = new ZipFile(source, charset)) {
-            Enumeration entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = (ZipEntry) entries.nextElement();
-                //如果为文件夹,直接创建文件夹
-                if (entry.isDirectory()) {
-                    File dir = new File(targetDir + "/" + entry.getName());
-                    if (!dir.mkdirs()) {
-                        System.err.println("解压时：“" + source.getCanonicalPath() + "”创建文件夹：“" + dir.getName() + "”失败");
-                    }
+    private void decompress(File source, File targetDir, Predicate<String> filter) throws IOException {
+
+        //按段并行解压的线程池，在第一次使用时创建
+        ExecutorService segmentExecutor = null;
+        METRICS.jobStarted();
+        boolean succeeded = false;
+        //只有打开zip文件时的格式异常按原来的方式提示，条目数据的异常向上抛出
+        ZipArchiveReader archiveReader;
+        try {
+            archiveReader = new ZipArchiveReader(source, charset);
+        } catch (ZipException zipException) {
+            zipException.printStackTrace();
+            System.err.println("解压时发生异常");
+            METRICS.jobFinished(false);
+            return;
+        }
+        try (ZipArchiveReader reader = archiveReader;
+             ChannelEntryWriter channelWriter = channelModel
+                     ? new ChannelEntryWriter(reader, bufferSize, preallocateThreshold, fsyncPolicy,
+                     throttle, this::throttled) : null) {
+            SeekableInflater seekableInflater = new SeekableInflater(reader, bufferSize, throttle, this::throttled);
+            List<ZipArchiveReader.RawEntry> entries = reader.entries();
+            //先根据中央目录一次性创建所有目录
+            ExtractionPlanner planner = new ExtractionPlanner(targetDir.toPath());
+            planner.plan(entries, filter);
+            ProgressListener listener = progressListener;
+            if (listener != null) {
+                planned(entries, filter, listener);
+            }
+            for (ZipArchiveReader.RawEntry entry : entries) {
+                //文件夹已经在计划阶段创建
+                if (entry.isDirectory() || (filter != null && !filter.test(entry.name))) {
+                    continue;
                 }
-                //如果为文件
-                else {
-                    // 如果是文件，就先创建一个文件，然后用io流把内容copy过去
-                    File targetFile = new File(targetDir + "/" + entry.getName());
-                    // 保证这个文件的父文件夹必须要存在
-                    File targetParent = targetFile.getParentFile();
-                    if (!targetParent.exists()) {
-                        if (!targetParent.mkdirs()) {
-                            System.err.println("解压时：“" + source.getCanonicalPath() + "”创建文件夹：“" + targetParent.getName() + "”失败");
+                Path targetFile = planner.resolve(entry.name);
+                //父目录为本次新建时，文件一定不存在，无需检查
+                BasicFileAttributes attributes = planner.prepareFile(targetFile) ? null : readAttributes(targetFile);
+
+                //目标文件已存在
+                if (attributes != null) {
+                    //增量模式下，内容相同的文件直接跳过，不打开写入
+                    if (incrementalModel && isUnchanged(entry, targetFile, attributes)) {
+                        statistics.skipped();
+                        if (listener != null) {
+                            listener.entryDone(entry.name, entry.size);
                         }
+                        continue;
                     }
-
-                    //创建文件
-                    if (!targetFile.createNewFile()) {
-                        //如果不是覆盖模式，将会提出警告，并跳过
-                        if (!coverageModel) {
-                            System.err.println("非覆盖模式，跳过“" + targetFile.getCanonicalPath() + "”");
+                    //如果不是覆盖模式，将会提出警告，并跳过
+                    if (!coverageModel) {
+                        System.err.println("非覆盖模式，跳过“" + targetFile + "”");
+                        statistics.skipped();
+                        if (listener != null) {
+                            listener.entryDone(entry.name, entry.size);
                         }
+                        continue;
                     }
+                    statistics.replaced();
+                } else {
+                    statistics.written();
+                }
 
-                    //开始读取Zip文件并写入
-                    try (
-                            BufferedInputStream bin = new BufferedInputStream(zipFile.getInputStream(entry), bufferSize);
-                            BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(targetFile), bufferSize)
-                    ) {
-                        int len;
-                        byte[] buf = new byte[bufferSize];
-                        while ((len = bin.read(buf)) != -1) {
-                            bout.write(buf, 0, len);
+                //FileChannel模式下直接读取压缩数据解压写入，不支持的条目使用流的方式
+                long startTime = System.nanoTime();
+                try {
+                    if (channelWriter != null && threads > 1 && SeekableInflater.supports(entry)) {
+                        if (segmentExecutor == null) {
+                            segmentExecutor = Executors.newFixedThreadPool(threads);
                         }
+                        channelWriter.writeSegments(entry, targetFile, seekableInflater, segmentExecutor);
+                    } else if (channelWriter != null && channelWriter.supports(entry)) {
+                        channelWriter.write(entry, targetFile);
+                    } else {
+                        writeStream(reader, entry, targetFile);
                     }
+                } catch (IOException | RuntimeException e) {
+                    METRICS.entryFailed();
+                    //删除写了一部分的文件，不留下损坏的数据
+                    try {
+                        Files.deleteIfExists(targetFile);
+                    } catch (IOException deleteException) {
+                        e.addSuppressed(deleteException);
+                    }
+                    throw e;
+                }
+                METRICS.entryDone(entry.size, entry.compressedSize, entry.size, System.nanoTime() - startTime);
+                //还原修改时间，下次增量解压时可以直接通过大小与修改时间判断
+                long time = entry.getTime();
+                if (time != -1) {
+                    Files.setLastModifiedTime(targetFile, FileTime.fromMillis(time));
+                }
+                if (listener != null) {
+                    listener.entryDone(entry.name, entry.size);
                 }
             }
-        } catch (ZipException zipException) {
-            zipException.printStackTrace();
-            System.err.println("解压时发生异常");
+            if (channelWriter != null && fsyncPolicy == FsyncPolicy.ARCHIVE) {
+                channelWriter.sync();
+            }
+            succeeded = true;
+        } finally {
+            if (segmentExecutor != null) {
+                segmentExecutor.shutdown();
+            }
+            METRICS.jobFinished(succeeded);
+        }
+    }
+
+    /**
+     * 通知进度监听器需要解压的文件条目数量与大小
+     */
+    private static void planned(List<ZipArchiveReader.RawEntry> entries, Predicate<String> filter,
+                                ProgressListener listener) {
+        long count = 0;
+        long bytes = 0;
+        for (ZipArchiveReader.RawEntry entry : entries) {
+            if (!entry.isDirectory() && (filter == null || filter.test(entry.name))) {
+                count++;
+                bytes += entry.size;
+            }
+        }
+        listener.planned(count, bytes);
+    }
+
+    /**
+     * 按条目的压缩方式解压并写入，同时校验CRC32，直接以创建或截断的方式打开
+     *
+     * @param reader     zip文件
+     * @param entry      条目
+     * @param targetFile 目标文件
+     * @throws IOException 读写异常、不支持的压缩方式或者CRC校验失败
+     */
+    private void writeStream(ZipArchiveReader reader, ZipArchiveReader.RawEntry entry, Path targetFile)
+            throws IOException {
+        if ((entry.flags & 1) != 0) {
+            throw new ZipException("不支持加密的条目“" + entry.name + "”");
+        }
+        ZipCodec codec = ZipCodecs.forMethod(entry.method);
+        if (codec == null) {
+            throw new ZipException("条目“" + entry.name + "”使用了不支持的压缩方式：" + entry.method);
+        }
+        CRC32 crc32 = new CRC32();
+        try (
+                InputStream in = throttle.input(codec.decoder(reader.rawInput(entry)), this::throttled);
+                BufferedOutputStream bout = new BufferedOutputStream(throttle.output(Files.newOutputStream(targetFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                        this::throttled), bufferSize)
+        ) {
+            int len;
+            byte[] buf = new byte[bufferSize];
+            while ((len = in.read(buf)) != -1) {
+                crc32.update(buf, 0, len);
+                bout.write(buf, 0, len);
+            }
+        }
+        if (crc32.getValue() != entry.crc) {
+            throw new ZipException("条目“" + entry.name + "”CRC校验失败");
+        }
+    }
+
+    /**
+     * 记录限速等待时间
+     */
+    private void throttled(long nanos) {
+        statistics.throttled(nanos);
+    }
+
+    /**
+     * 读取文件属性，一次系统调用同时得到是否存在、大小与修改时间
+     *
+     * @param path 文件路径
+     * @return 文件属性，文件不存在时返回null
+     * @throws IOException 读取异常
+     */
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 判断已存在的文件与zip条目是否相同：
+     * 大小不同则认为不同；大小与修改时间都相同则认为相同；
+     * 大小相同但修改时间不同时，如果开启了CRC校验，以CRC32为准
+     *
+     * @param entry      zip条目
+     * @param targetFile 已存在的目标文件
+     * @param attributes 目标文件属性
+     * @return 是否相同
+     * @throws IOException 读取目标文件异常
+     */
+    private boolean isUnchanged(ZipArchiveReader.RawEntry entry, Path targetFile, BasicFileAttributes attributes)
+            throws IOException {
+        if (entry.size != attributes.size()) {
+            return false;
+        }
+        long time = entry.getTime();
+        if (time != -1 && Math.abs(time - attributes.lastModifiedTime().toMillis()) < DOS_TIME_PRECISION) {
+            return true;
+        }
+        if (!crcCheck) {
+            return false;
+        }
+        CRC32 crc32 = new CRC32();
+        try (InputStream in = Files.newInputStream(targetFile)) {
+            int len;
+            byte[] buf = new byte[bufferSize];
+            while ((len = in.read(buf)) != -1) {
+                crc32.update(buf, 0, len);
+            }
+        }
+        if (crc32.getValue() != entry.crc) {
+            return false;
+        }
+        //内容相同，同步修改时间，下次无需再计算CRC
+        if (time != -1) {
+            Files.setLastModifiedTime(targetFile, FileTime.fromMillis(time));
         }
+        return true;
     }
 
 
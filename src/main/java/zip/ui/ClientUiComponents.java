@@ -94,5 +94,17 @@ public class ClientUiComponents {
     @FXML
     protected Text errMsg;
 
+    /**
+     * 任务进度
+     */
+    @FXML
+    protected ProgressBar progressBar;
+
+    /**
+     * 已完成条目数、速度与当前条目
+     */
+    @FXML
+    protected Label progressLabel;
+
 
 }
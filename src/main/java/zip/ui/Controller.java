@@ -8,6 +8,7 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import zip.Main;
 import zip.config.ZipConfigurator;
+import zip.config.ZipSettings;
 import zip.core.ZipCompressor;
 import zip.core.ZipDecompressor;
 
@@ -41,6 +42,16 @@ public class Controller extends ClientUiComponents implements Initializable {
      */
     private ObservableList<File> fileList;
 
+    /**
+     * 消息框保留的最大行数
+     */
+    private static final int LOG_CAPACITY = 500;
+
+    /**
+     * 工作线程通过该对象更新界面，不直接操作界面组件
+     */
+    private ProgressBridge progress;
+
     public Controller() {
         workLock = new ReentrantLock();
     }
@@ -54,6 +65,7 @@ public class Controller extends ClientUiComponents implements Initializable {
         fixedThreadPool = Executors.newFixedThreadPool(1);
         // 消息框不可写
         msgBox.setWrapText(true);
+        progress = new ProgressBridge(progressBar, progressLabel, msgBox, errMsg, LOG_CAPACITY);
     }
 
     /**
@@ -72,22 +84,21 @@ public class Controller extends ClientUiComponents implements Initializable {
             // 上锁
             workLock.lock();
             try {
-                this.errMsg.setText("running");
+                progress.start();
+                progress.status("running");
                 // 如果没有选择文件提示后，直接退出
                 if (fileList.size() == 0) {
                     String noFileMsg = "压缩时，未选择文件，请重试。\n";
                     System.err.println(noFileMsg);
-                    msgBox.appendText(noFileMsg);
+                    progress.log(noFileMsg);
                     return;
                 }
+                // 本次任务使用的配置，任务执行期间修改配置不影响本次任务
+                ZipSettings settings = ZipConfigurator.snapshot();
                 String beginMsg = "开始压缩：“" + fileList + ".\n”" +
-                        "target=" + targetDir.getText() + "，" +
-                        "buffersize=" + ZipConfigurator.getBufferSize() + "， " +
-                        "level=" + ZipConfigurator.getLevel() + "， " +
-                        "charset=" + ZipConfigurator.getCharset() + ", " +
-                        "coverageModel=" + ZipConfigurator.isCoverageMode() + "\n";
+                        "target=" + targetDir.getText() + "，" + settings + "\n";
                 System.out.println(beginMsg);
-                msgBox.appendText(beginMsg);
+                progress.log(beginMsg);
 
                 // 获取压缩目标路径
                 String targetPath = this.targetDir.getText();
@@ -97,18 +108,19 @@ public class Controller extends ClientUiComponents implements Initializable {
                     target = new File(targetPath+File.separator+System.currentTimeMillis()+".zip");
                 }
                 // 构造压缩器
-                ZipCompressor zipCompressor = new ZipCompressor();
+                ZipCompressor zipCompressor = new ZipCompressor(settings);
+                zipCompressor.setProgressListener(progress);
                 try {
                     // 开始对文件集合压缩到目标文件
                     zipCompressor.packFiles(fileList.toArray(new File[0]), target);
                     System.out.println("解压完成");
-                    msgBox.appendText("解压完成\n");
+                    progress.log("解压完成\n");
                 } catch (IOException ioException) {
-                    msgBox.appendText("压缩时，出现异常。");
+                    progress.log("压缩时，出现异常。");
                     ioException.printStackTrace();
                 }
             }catch (Exception e){
-                msgBox.appendText("出现未知异常。");
+                progress.log("出现未知异常。");
                 e.printStackTrace();
             }finally {
                 // 解锁
@@ -117,7 +129,8 @@ public class Controller extends ClientUiComponents implements Initializable {
                 long endTime = System.currentTimeMillis();
                 String timeCost = "共耗时："+(double)(endTime-startTime)/1000+"s\n";
                 System.out.println(timeCost);
-                msgBox.appendText(timeCost);
+                progress.log(timeCost);
+                progress.finish();
             }
         });
 
@@ -137,23 +150,22 @@ public class Controller extends ClientUiComponents implements Initializable {
             // 上锁
             workLock.lock();
             try{
-                this.errMsg.setText("running");
+                progress.start();
+                progress.status("running");
 
                 // 如果没有选择文件提示后，直接退出
                 if (fileList.size() == 0) {
                     String noFileMsg = "解压时，未选择文件，请重试。\n";
                     System.err.println(noFileMsg);
-                    msgBox.appendText(noFileMsg);
+                    progress.log(noFileMsg);
                     return;
                 }
+                // 本次任务使用的配置，任务执行期间修改配置不影响本次任务
+                ZipSettings settings = ZipConfigurator.snapshot();
                 String beginMsg = "开始解压：“" + fileList + ".\n”" +
-                        "target=" + targetDir.getText() + "，" +
-                        "buffersize=" + ZipConfigurator.getBufferSize() + "， " +
-                        "level=" + ZipConfigurator.getLevel() + "， " +
-                        "charset=" + ZipConfigurator.getCharset() + ", " +
-                        "coverageModel=" + ZipConfigurator.isCoverageMode() + "\n";
+                        "target=" + targetDir.getText() + "，" + settings + "\n";
                 System.out.println(beginMsg);
-                msgBox.appendText(beginMsg);
+                progress.log(beginMsg);
 
                 // 开始构造解压对象，进行解压操作
                 String targetPath = this.targetDir.getText();
@@ -161,15 +173,16 @@ public class Controller extends ClientUiComponents implements Initializable {
                 // 如果目标不是目录
                 if(target.exists()&&!target.isDirectory()){
                     System.err.println("输出路径为文件");
-                    msgBox.appendText("输出路径为文件/n");
+                    progress.log("输出路径为文件/n");
                     return;
                 }
-                ZipDecompressor zipDecompressor = new ZipDecompressor();
+                ZipDecompressor zipDecompressor = new ZipDecompressor(settings);
+                zipDecompressor.setProgressListener(progress);
                 zipDecompressor.unpackFiles(fileList.toArray(new File[0]), target);
 
                 String finishMsg = "解压完成\n";
                 System.out.println(finishMsg);
-                msgBox.appendText(finishMsg);
+                progress.log(finishMsg);
             }catch (Exception e){
                 e.printStackTrace();
             }finally {
@@ -179,7 +192,8 @@ public class Controller extends ClientUiComponents implements Initializable {
                 long endTime = System.currentTimeMillis();
                 String timeCost = "共耗时："+(double)(endTime-startTime)/1000+"s\n";
                 System.out.println(timeCost);
-                msgBox.appendText(timeCost);
+                progress.log(timeCost);
+                progress.finish();
             }
         });
 
@@ -267,7 +281,7 @@ public class Controller extends ClientUiComponents implements Initializable {
      * @param event
      */
     public void clearMsg(ActionEvent event){
-        this.msgBox.setText("");
+        progress.clearLog();
     }
 
     /**
@@ -278,11 +292,10 @@ public class Controller extends ClientUiComponents implements Initializable {
         StringBuffer msg = new StringBuffer();
         try {
             String level;
-            System.out.println(msg.append(this.levelTextField.getText()));
             if ((level = this.levelTextField.getText()) != null && !"".equals(level.trim())) {
                 ZipConfigurator.setLevel(Integer.parseInt(level));
                 level = String.valueOf(ZipConfigurator.getLevel());
-                System.out.println(msg.append("设置压缩等级：").append(level).append("\n"));
+                msg.append("设置压缩等级：").append(level).append("\n");
                 this.levelTextField.setText(level);
             }
 
@@ -290,27 +303,35 @@ public class Controller extends ClientUiComponents implements Initializable {
             if ((charset = this.charSetTextField.getText()) != null && !"".equals(charset.trim())) {
                 ZipConfigurator.setCharset(Charset.forName(charset));
                 charset = ZipConfigurator.getCharset().name();
-                System.out.println(msg.append("设置编码格式：").append(charset).append("\n"));
+                msg.append("设置编码格式：").append(charset).append("\n");
                 this.charSetTextField.setText(charset);
             }
             String bufferSize;
             if ((bufferSize = this.bufferSizeTextField.getText()) != null && !"".equals(bufferSize.trim())) {
                 ZipConfigurator.setBufferSize(Integer.parseInt(bufferSize));
                 bufferSize = String.valueOf(ZipConfigurator.getBufferSize());
-                System.out.println(msg.append("设置缓冲区大小：").append(bufferSize).append("\n"));
+                msg.append("设置缓冲区大小：").append(bufferSize).append("\n");
                 this.bufferSizeTextField.setText(bufferSize);
             }
             boolean coverageModel = this.coverageModelCB.isSelected();
             ZipConfigurator.setCoverageModel(coverageModel);
-            System.out.println(msg.append("覆盖模式：").append(ZipConfigurator.isCoverageMode() ? "开启" : "关闭"+"\n"));
+            msg.append("覆盖模式：").append(ZipConfigurator.isCoverageMode() ? "开启" : "关闭").append("\n");
         } catch (NumberFormatException e) {
-            msgBox.appendText("设置错误，请重新检查\n");
+            progress.log("设置错误，请重新检查\n");
             System.err.println("设置错误，请重新检查\n");
         }
-        msgBox.appendText(msg.toString());
+        progress.log(msg.toString());
         event.consume();
     }
 
+    /**
+     * 应用退出时停止进度刷新与任务线程
+     */
+    public void close(){
+        progress.close();
+        fixedThreadPool.shutdown();
+    }
+
     private boolean isWork(){
         if(workLock.isLocked()){
             String lockedMsg = "当前任务忙，请稍后再试\n";
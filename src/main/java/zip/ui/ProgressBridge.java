@@ -0,0 +1,257 @@
+package zip.ui;
+
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextArea;
+import javafx.scene.text.Text;
+import zip.core.ProgressListener;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * 工作线程与界面之间的进度桥接：
+ * 工作线程只更新计数与日志缓冲区，不直接操作界面；
+ * 每一帧最多通过 Platform.runLater 提交一次合并后的更新，刷新进度条、速度、当前条目与消息框
+ * 消息框只保留最近的若干行，因此界面的开销与条目数量无关
+ * 只在任务进行期间（start到finish之间）按帧检查，没有任务时的消息与状态直接提交更新；
+ * 定时线程空闲一段时间后退出，应用退出时通过close停止
+ *
+ * @author Ni187
+ */
+public class ProgressBridge implements ProgressListener {
+
+    /**
+     * 每帧的间隔，约60帧每秒
+     */
+    private static final long FRAME_MILLIS = 16;
+
+    private final ProgressBar progressBar;
+
+    private final Label progressLabel;
+
+    private final TextArea logArea;
+
+    private final Text statusText;
+
+    /**
+     * 消息框保留的最大行数
+     */
+    private final int logCapacity;
+
+    private final AtomicLong totalEntries = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong doneEntries = new AtomicLong();
+    private final AtomicLong doneBytes = new AtomicLong();
+
+    private volatile String currentEntry = "";
+
+    private volatile String status;
+
+    private volatile long startTime = System.nanoTime();
+
+    /**
+     * 最近的消息，访问时需要同步
+     */
+    private final ArrayDeque<String> lines = new ArrayDeque<>();
+
+    /**
+     * 自上次刷新以来是否有变化
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private boolean logDirty;
+
+    /**
+     * 是否已经提交了尚未执行的界面更新
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * 按帧检查是否有变化，没有变化时不提交更新
+     */
+    private final ScheduledThreadPoolExecutor frameTimer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "progress-frame");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 当前任务的按帧检查，没有任务时为null，访问时需要同步
+     */
+    private ScheduledFuture<?> frames;
+
+    public ProgressBridge(ProgressBar progressBar, Label progressLabel, TextArea logArea, Text statusText,
+                          int logCapacity) {
+        this.progressBar = progressBar;
+        this.progressLabel = progressLabel;
+        this.logArea = logArea;
+        this.statusText = statusText;
+        this.logCapacity = Math.max(logCapacity, 1);
+        frameTimer.setKeepAliveTime(1, TimeUnit.SECONDS);
+        frameTimer.allowCoreThreadTimeOut(true);
+        frameTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 开始一个任务：清零计数与速度，开始按帧检查
+     */
+    public void start() {
+        totalEntries.set(0);
+        totalBytes.set(0);
+        doneEntries.set(0);
+        doneBytes.set(0);
+        currentEntry = "";
+        startTime = System.nanoTime();
+        dirty.set(true);
+        synchronized (this) {
+            if (frames == null && !frameTimer.isShutdown()) {
+                frames = frameTimer.scheduleAtFixedRate(this::frame, FRAME_MILLIS, FRAME_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 结束任务：停止按帧检查，立即提交最后一次更新
+     */
+    public void finish() {
+        synchronized (this) {
+            if (frames != null) {
+                frames.cancel(false);
+                frames = null;
+            }
+        }
+        dirty.set(true);
+        frame();
+    }
+
+    /**
+     * 停止定时线程，应用退出时调用
+     */
+    public void close() {
+        finish();
+        frameTimer.shutdownNow();
+    }
+
+    @Override
+    public void planned(long entries, long bytes) {
+        totalEntries.addAndGet(entries);
+        totalBytes.addAndGet(bytes);
+        dirty.set(true);
+    }
+
+    @Override
+    public void entryDone(String name, long bytes) {
+        doneEntries.incrementAndGet();
+        doneBytes.addAndGet(bytes);
+        currentEntry = name;
+        dirty.set(true);
+    }
+
+    /**
+     * 添加一条消息，超出容量时丢弃最早的消息
+     *
+     * @param message 消息，可以包含多行
+     */
+    public void log(String message) {
+        synchronized (lines) {
+            for (String line : message.split("\n")) {
+                if (lines.size() == logCapacity) {
+                    lines.pollFirst();
+                }
+                lines.addLast(line);
+            }
+            logDirty = true;
+        }
+        changed();
+    }
+
+    /**
+     * 清空消息
+     */
+    public void clearLog() {
+        synchronized (lines) {
+            lines.clear();
+            logDirty = true;
+        }
+        changed();
+    }
+
+    /**
+     * 设置状态信息
+     *
+     * @param status 状态
+     */
+    public void status(String status) {
+        this.status = status;
+        changed();
+    }
+
+    /**
+     * 标记有变化，没有任务进行（不按帧检查）时直接提交更新
+     */
+    private void changed() {
+        dirty.set(true);
+        boolean idle;
+        synchronized (this) {
+            idle = frames == null;
+        }
+        if (idle) {
+            frame();
+        }
+    }
+
+    /**
+     * 有变化且没有尚未执行的更新时，提交一次界面更新
+     */
+    private void frame() {
+        if (dirty.get() && scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::render);
+        }
+    }
+
+    /**
+     * 在FX线程中执行，一次性刷新所有组件
+     */
+    private void render() {
+        scheduled.set(false);
+        dirty.set(false);
+        long entries = totalEntries.get();
+        long bytes = totalBytes.get();
+        long finishedEntries = doneEntries.get();
+        long finishedBytes = doneBytes.get();
+        if (bytes > 0) {
+            progressBar.setProgress(Math.min((double) finishedBytes / bytes, 1));
+        } else if (entries > 0) {
+            progressBar.setProgress(Math.min((double) finishedEntries / entries, 1));
+        } else {
+            progressBar.setProgress(0);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double throughput = seconds > 0 ? finishedBytes / 1048576.0 / seconds : 0;
+        progressLabel.setText(String.format("%d/%d，%.2fMB/s，%s", finishedEntries, entries, throughput, currentEntry));
+
+        String text = null;
+        synchronized (lines) {
+            if (logDirty) {
+                text = String.join("\n", lines);
+                logDirty = false;
+            }
+        }
+        if (text != null) {
+            logArea.setText(text);
+            logArea.setScrollTop(Double.MAX_VALUE);
+        }
+        String currentStatus = status;
+        if (currentStatus != null) {
+            statusText.setText(currentStatus);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ZipTest;
+
+import zip.core.ArchiveCache;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.data;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 条目访问缓存：超出容量时按最久未访问的顺序淘汰，已缓存的字节数不超过容量，大于容量的条目不缓存；
+ * 多个线程同时读取同一个未缓存的条目时只解压一次
+ */
+public class ArchiveCacheTest {
+
+    private static final int SIZE = 100_000;
+
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("archive-cache");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            run(dir, executor);
+        } finally {
+            executor.shutdownNow();
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir, ExecutorService executor) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source);
+        for (int i = 0; i < 10; i++) {
+            Files.write(source.resolve("file" + i + ".bin"), data(SIZE, i + 1));
+        }
+        Files.write(source.resolve("large.bin"), data(300_000, 3));
+        Files.write(source.resolve("shared.bin"), data(8 << 20, 5));
+        File archive = dir.resolve("test.zip").toFile();
+        newCompressor().packFiles(new File[]{source.toFile()}, archive);
+        String prefix = dir.getFileName() + "/src/";
+
+        ZipDecompressor decompressor = newDecompressor();
+        long capacity = 2 * SIZE + SIZE / 2;
+        try (ArchiveCache cache = decompressor.openCache(capacity, false)) {
+            for (int i = 0; i < 10; i++) {
+                check(Arrays.equals(data(SIZE, i + 1), cache.readBytes(archive, prefix + "file" + i + ".bin")),
+                        "file" + i + ".bin内容不一致");
+                check(cache.getCachedBytes() <= capacity, "已缓存的字节数超过容量：" + cache);
+            }
+            check(cache.getEvictions() == 8 && cache.getCachedBytes() == 2 * SIZE, "淘汰数量错误：" + cache);
+
+            //此时缓存中为file8、file9；访问file8后再读入file7，淘汰的应当是file9
+            cache.read(archive, prefix + "file8.bin");
+            cache.read(archive, prefix + "file7.bin");
+            long hits = cache.getHits();
+            cache.read(archive, prefix + "file8.bin");
+            check(cache.getHits() == hits + 1, "最近访问过的条目被淘汰：" + cache);
+            long misses = cache.getMisses();
+            cache.read(archive, prefix + "file9.bin");
+            check(cache.getMisses() == misses + 1, "最久未访问的条目没有被淘汰：" + cache);
+
+            //大于容量的条目可以读取，但不缓存
+            long cached = cache.getCachedBytes();
+            check(Arrays.equals(data(300_000, 3), cache.readBytes(archive, prefix + "large.bin")), "large.bin内容不一致");
+            check(cache.getCachedBytes() == cached, "大于容量的条目被缓存：" + cache);
+        }
+
+        //多个线程同时读取同一个较大的条目
+        byte[] expected = data(8 << 20, 5);
+        try (ArchiveCache cache = decompressor.openCache(16 << 20, true)) {
+            CountDownLatch ready = new CountDownLatch(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return cache.readBytes(archive, prefix + "shared.bin");
+                }));
+            }
+            ready.await();
+            start.countDown();
+            for (Future<byte[]> result : results) {
+                check(Arrays.equals(expected, result.get()), "并发读取的内容不一致");
+            }
+            check(cache.getLoads() == 1, "同一个条目被解压了" + cache.getLoads() + "次");
+            check(cache.getHits() + cache.getMisses() == THREADS, "读取次数错误：" + cache);
+        }
+    }
+}
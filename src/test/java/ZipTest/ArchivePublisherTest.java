@@ -0,0 +1,278 @@
+package ZipTest;
+
+import zip.core.ArchivePublisher;
+import zip.core.ZipDecompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 条目发布：订阅者在其他线程中逐个请求条目与数据块，检查发布的数量不超过请求的数量，
+ * 每个条目的数据与原文件一致；取消后不再发布，请求数量不大于0时通过onError通知
+ */
+public class ArchivePublisherTest {
+
+    private static final ExecutorService consumer = Executors.newFixedThreadPool(2);
+
+    private static final AtomicReference<String> violation = new AtomicReference<>();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("archive-publisher");
+        try {
+            run(dir);
+        } finally {
+            consumer.shutdownNow();
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source.resolve("sub"));
+        Map<String, byte[]> files = new ConcurrentHashMap<>();
+        Random random = new Random(7);
+        int[] sizes = {0, 1, 100, 4096, 65_537, 300_000};
+        for (int i = 0; i < 30; i++) {
+            byte[] data = new byte[sizes[i % sizes.length]];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = i % 2 == 0 ? (byte) (j % 13) : (byte) random.nextInt();
+            }
+            Path file = source.resolve(i % 3 == 0 ? "sub" : ".").resolve("file" + i + ".bin").normalize();
+            Files.write(file, data);
+            files.put(dir.getFileName() + "/" + dir.relativize(file).toString(), data);
+        }
+        File archive = dir.resolve("test.zip").toFile();
+        newCompressor(1024).packFiles(new File[]{source.toFile()}, archive);
+
+        ZipDecompressor decompressor = newDecompressor();
+        decompressor.reset(1024, true, StandardCharsets.UTF_8);
+        ArchivePublisher publisher = decompressor.publish(archive);
+
+        //逐个请求条目，每个条目的数据块也逐个异步请求
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger compared = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        publisher.subscribe(new Flow.Subscriber<ArchivePublisher.Entry>() {
+            private Flow.Subscription subscription;
+            private final AtomicLong outstanding = new AtomicLong();
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                request();
+            }
+
+            private void request() {
+                outstanding.incrementAndGet();
+                consumer.execute(() -> subscription.request(1));
+            }
+
+            @Override
+            public void onNext(ArchivePublisher.Entry entry) {
+                if (outstanding.decrementAndGet() < 0) {
+                    violation.set("条目发布超过了请求数量：" + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    request();
+                    return;
+                }
+                entry.subscribe(new ChunkCollector(entry, data -> {
+                    byte[] expected = files.get(entry.getName());
+                    if (expected == null || !Arrays.equals(expected, data)) {
+                        violation.compareAndSet(null, "条目“" + entry.getName() + "”内容不一致");
+                    }
+                    compared.incrementAndGet();
+                    request();
+                }, error::set));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+                finished.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                finished.countDown();
+            }
+        });
+        check(finished.await(60, TimeUnit.SECONDS), "发布没有结束");
+        check(error.get() == null, "发布出错：" + error.get());
+        check(violation.get() == null, violation.get());
+        check(compared.get() == files.size(), "比较的条目数量错误：" + compared.get());
+
+        //取消后不再发布
+        ArchivePublisher.Entry[] large = new ArchivePublisher.Entry[1];
+        CountDownLatch found = new CountDownLatch(1);
+        publisher.subscribe(new Flow.Subscriber<ArchivePublisher.Entry>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ArchivePublisher.Entry entry) {
+                if (entry.getSize() == 300_000 && large[0] == null) {
+                    large[0] = entry;
+                    subscription.cancel();
+                    found.countDown();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        check(found.await(10, TimeUnit.SECONDS), "没有找到较大的条目");
+        AtomicInteger afterCancel = new AtomicInteger();
+        large[0].subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+            private boolean cancelled;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                if (cancelled) {
+                    afterCancel.incrementAndGet();
+                }
+                cancelled = true;
+                subscription.cancel();
+                subscription.request(5);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                afterCancel.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                afterCancel.incrementAndGet();
+            }
+        });
+        Thread.sleep(200);
+        check(afterCancel.get() == 0, "取消后仍然发布了" + afterCancel.get() + "次");
+
+        //请求数量为0
+        CountDownLatch rejected = new CountDownLatch(1);
+        large[0].subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(0);
+            }
+
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                violation.set("request(0)之后发布了数据");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                if (throwable instanceof IllegalArgumentException) {
+                    rejected.countDown();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        check(rejected.await(10, TimeUnit.SECONDS), "request(0)没有通过onError通知");
+        check(violation.get() == null, violation.get());
+    }
+
+    /**
+     * 逐个异步请求数据块，数据块只在onNext中有效，需要复制
+     */
+    private static class ChunkCollector implements Flow.Subscriber<ByteBuffer> {
+
+        private final ArchivePublisher.Entry entry;
+
+        private final Consumer<byte[]> done;
+
+        private final Consumer<Throwable> failed;
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private final AtomicLong outstanding = new AtomicLong();
+
+        private Flow.Subscription subscription;
+
+        ChunkCollector(ArchivePublisher.Entry entry, Consumer<byte[]> done,
+                       Consumer<Throwable> failed) {
+            this.entry = entry;
+            this.done = done;
+            this.failed = failed;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            request();
+        }
+
+        private void request() {
+            outstanding.incrementAndGet();
+            consumer.execute(() -> subscription.request(1));
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            if (outstanding.decrementAndGet() < 0) {
+                violation.set("数据块发布超过了请求数量：" + entry.getName());
+            }
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            data.write(bytes, 0, bytes.length);
+            request();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failed.accept(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.accept(data.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ZipTest;
+
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 压缩后解压：大文件通过内存映射窗口压缩，很深的中文路径（文件头超过写缓冲区）正常写入，
+ * 文件系统不支持中文文件名时改用ASCII路径，
+ * 结果同时通过JDK的ZipFile读取校验
+ */
+public class ArchiveWriterTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("archive-writer");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+
+        //每层约240字节，总长度超过3KB；文件系统的编码不支持中文时使用同样长度的ASCII路径
+        boolean cjk = Charset.forName(System.getProperty("sun.jnu.encoding", Charset.defaultCharset().name()))
+                .newEncoder().canEncode("压缩文件");
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < (cjk ? 80 : 240); i++) {
+            segment.append(cjk ? (char) ('压' + i % 20) : (char) ('a' + i % 26));
+        }
+        Path deep = source;
+        for (int i = 0; i < 12; i++) {
+            deep = deep.resolve(segment.toString() + i);
+        }
+        Files.createDirectories(deep);
+        byte[] small = "深层目录中的文件".getBytes(StandardCharsets.UTF_8);
+        String fileName = cjk ? "文件.txt" : "file.txt";
+        Files.write(deep.resolve(fileName), small);
+
+        //超过映射阈值，按3个窗口压缩
+        byte[] large = new byte[5 << 20];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i % 251 ^ i >>> 12);
+        }
+        Files.write(source.resolve("large.bin"), large);
+
+        File archive = dir.resolve("test.zip").toFile();
+        ZipCompressor compressor = newCompressor(1024);
+        compressor.setMappedModel(1 << 20, 2 << 20);
+        compressor.packFiles(new File[]{source.toFile()}, archive);
+
+        int files = 0;
+        try (ZipFile zipFile = new ZipFile(archive, StandardCharsets.UTF_8)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                files++;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    byte[] data = in.readAllBytes();
+                    byte[] expected = entry.getName().endsWith("large.bin") ? large : small;
+                    check(Arrays.equals(expected, data), "ZipFile读取“" + entry.getName() + "”内容不一致");
+                }
+            }
+        }
+        check(files == 2, "文件条目数量错误：" + files);
+
+        ZipDecompressor decompressor = newDecompressor();
+        Path out = dir.resolve("out");
+        decompressor.unpack(archive, out.toFile());
+        Path root = out.resolve(dir.getFileName()).resolve("src");
+        check(Arrays.equals(large, Files.readAllBytes(root.resolve("large.bin"))), "解压large.bin内容不一致");
+        check(Arrays.equals(small, Files.readAllBytes(root.resolve(source.relativize(deep))
+                .resolve(fileName))), "解压深层文件内容不一致");
+    }
+}
@@ -0,0 +1,92 @@
+package ZipTest;
+
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 中央目录：70000个长文件名的条目，条目数量超过0xFFFF需要Zip64结束记录，
+ * 中央目录超过16MB，压缩时转存到临时文件；结果通过JDK的ZipFile与解压检查
+ */
+public class CentralDirectoryTest {
+
+    private static final int FILES = 70_000;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("central-directory");
+        try {
+            run(dir);
+        } finally {
+            //删除14万个测试文件
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        String padding = "n".repeat(200);
+        for (int i = 0; i < FILES; i++) {
+            Path sub = source.resolve("d" + i / 5000);
+            if (i % 5000 == 0) {
+                Files.createDirectories(sub);
+            }
+            Files.write(sub.resolve(padding + i), i % 100 == 0 ? ("第" + i + "个").getBytes(StandardCharsets.UTF_8)
+                    : new byte[0]);
+        }
+
+        File archive = dir.resolve("test.zip").toFile();
+        new ZipCompressor(4096, 1, StandardCharsets.UTF_8, true).packFiles(new File[]{source.toFile()}, archive);
+
+        long[] end = readZip64End(archive);
+        check(end[0] >= FILES, "Zip64结束记录中的条目数量错误：" + end[0]);
+        check(end[1] > 16 << 20, "中央目录没有超过转存阈值：" + end[1]);
+
+        try (ZipFile zipFile = new ZipFile(archive, StandardCharsets.UTF_8)) {
+            check(zipFile.stream().filter(entry -> !entry.isDirectory()).count() == FILES, "ZipFile读取的条目数量错误");
+        }
+
+        ZipDecompressor decompressor = newDecompressor();
+        Path out = dir.resolve("out");
+        decompressor.unpack(archive, out.toFile());
+        Path root = out.resolve(dir.getFileName()).resolve("src");
+        try (Stream<Path> files = Files.walk(root)) {
+            check(files.filter(Files::isRegularFile).count() == FILES, "解压的文件数量错误");
+        }
+        check(new String(Files.readAllBytes(root.resolve("d13").resolve(padding + 65_100)), StandardCharsets.UTF_8)
+                .equals("第65100个"), "解压的文件内容错误");
+    }
+
+    /**
+     * 读取Zip64结束记录
+     *
+     * @return 条目数量与中央目录大小
+     */
+    private static long[] readZip64End(File archive) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            ByteBuffer buffer = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+            //没有注释时，结束标志之前是20字节的Zip64定位记录
+            file.getChannel().read(buffer, file.length() - 22 - 20);
+            check(buffer.getInt(0) == 0x07064b50, "没有Zip64定位记录");
+            long zip64End = buffer.getLong(8);
+            buffer.clear();
+            file.getChannel().read(buffer, zip64End);
+            check(buffer.getInt(0) == 0x06064b50, "没有Zip64结束记录");
+            return new long[]{buffer.getLong(32), buffer.getLong(40)};
+        }
+    }
+}
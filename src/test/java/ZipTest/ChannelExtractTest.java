@@ -0,0 +1,116 @@
+package ZipTest;
+
+import zip.config.FsyncPolicy;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.data;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * FileChannel解压与流解压：STORED、DEFLATED条目解压后内容一致，数据损坏时抛出ZipException且不留下目标文件
+ */
+public class ChannelExtractTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("channel-extract");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        byte[] stored = data(200_000, 7);
+        byte[] deflated = data(300_000, 13);
+        File archive = dir.resolve("test.zip").toFile();
+        writeArchive(archive, stored, deflated);
+
+        for (boolean channel : new boolean[]{true, false}) {
+            ZipDecompressor decompressor = new ZipDecompressor();
+            decompressor.reset(4096, true);
+            decompressor.setChannelModel(channel, FsyncPolicy.NONE, 64 << 10);
+
+            Path out = dir.resolve("out-" + channel);
+            decompressor.unpack(archive, out.toFile());
+            check(Arrays.equals(stored, Files.readAllBytes(out.resolve("s.bin"))), "STORED内容不一致");
+            check(Arrays.equals(deflated, Files.readAllBytes(out.resolve("d.bin"))), "DEFLATED内容不一致");
+
+            //改动STORED条目中间的一个字节，只能通过CRC32发现
+            File corruptStored = corrupt(archive, dir.resolve("stored-" + channel + ".zip"), stored);
+            expectFailure(decompressor, corruptStored, dir.resolve("bad-stored-" + channel), "s.bin");
+
+            //改动DEFLATED条目的一段压缩数据
+            File corruptDeflated = dir.resolve("deflated-" + channel + ".zip").toFile();
+            byte[] bytes = Files.readAllBytes(archive.toPath());
+            int start = indexOf(bytes, "d.bin".getBytes()) + 5;
+            for (int i = start + 100; i < start + 200; i++) {
+                bytes[i] ^= 0x5A;
+            }
+            Files.write(corruptDeflated.toPath(), bytes);
+            expectFailure(decompressor, corruptDeflated, dir.resolve("bad-deflated-" + channel), "d.bin");
+        }
+    }
+
+    private static void expectFailure(ZipDecompressor decompressor, File archive, Path out, String name)
+            throws IOException {
+        try {
+            decompressor.unpack(archive, out.toFile());
+            throw new IllegalStateException("损坏的条目“" + name + "”没有抛出异常：" + archive);
+        } catch (ZipException e) {
+            System.out.println("预期的异常：" + e.getMessage());
+        }
+        check(!Files.exists(out.resolve(name)), "损坏的条目“" + name + "”留下了目标文件");
+    }
+
+    private static File corrupt(File archive, Path target, byte[] content) throws IOException {
+        byte[] bytes = Files.readAllBytes(archive.toPath());
+        int offset = indexOf(bytes, Arrays.copyOfRange(content, 0, 64)) + content.length / 2;
+        bytes[offset] ^= 1;
+        Files.write(target, bytes);
+        return target.toFile();
+    }
+
+    private static void writeArchive(File archive, byte[] stored, byte[] deflated) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            ZipEntry entry = new ZipEntry("s.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            CRC32 crc32 = new CRC32();
+            crc32.update(stored);
+            entry.setCrc(crc32.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("d.bin"));
+            out.write(deflated);
+            out.closeEntry();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new IllegalStateException("未找到数据");
+    }
+}
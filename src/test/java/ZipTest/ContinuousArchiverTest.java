@@ -0,0 +1,105 @@
+package ZipTest;
+
+import zip.core.ContinuousArchiver;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 持续归档：第一次启动归档已有的文件，运行中新建的文件与子目录被归档；
+ * 模拟中断后重新启动，日志中记录的文件即使修改时间早于时间点也会归档，未变化的旧文件不会重新归档
+ */
+public class ContinuousArchiverTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("continuous-archiver");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source.resolve("a"));
+        Files.write(source.resolve("a").resolve("existing.txt"), "existing".getBytes(StandardCharsets.UTF_8));
+        File archiveDir = dir.resolve("archives").toFile();
+        String prefix = dir.getFileName() + "/src/";
+
+        //第一次启动，运行中新建文件与子目录
+        ContinuousArchiver archiver = newArchiver(source, archiveDir);
+        Thread thread = archiver.start();
+        Thread.sleep(1500);
+        Files.write(source.resolve("a").resolve("new.txt"), "new".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(source.resolve("b").resolve("c"));
+        Files.write(source.resolve("b").resolve("c").resolve("deep.txt"), "deep".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(2500);
+        archiver.close();
+        thread.join(10_000);
+        Set<String> names = archivedNames(archiveDir);
+        check(names.contains(prefix + "a/existing.txt"), "第一次启动没有归档已有的文件：" + names);
+        check(names.contains(prefix + "a/new.txt"), "没有归档新建的文件：" + names);
+        check(names.contains(prefix + "b/c/deep.txt"), "没有归档新建子目录中的文件：" + names);
+        check(archiver.getArchivedFiles() >= 3, "归档文件数量错误：" + archiver.getArchivedFiles());
+
+        //模拟中断：日志中记录了尚未归档的文件，其修改时间早于日志中的时间点
+        long old = System.currentTimeMillis() - 3_600_000;
+        Path pending = source.resolve("a").resolve("pending.txt");
+        Files.write(pending, "pending".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(pending, FileTime.fromMillis(old));
+        Path untouched = source.resolve("a").resolve("untouched.txt");
+        Files.write(untouched, "untouched".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(untouched, FileTime.fromMillis(old));
+        for (File file : archiveDir.listFiles((d, name) -> name.endsWith(".zip"))) {
+            Files.delete(file.toPath());
+        }
+        Path journal = archiveDir.toPath().resolve("archiver.journal");
+        Files.write(journal, ("@" + (old + 60_000) + "\n+" + pending.toRealPath() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        archiver = newArchiver(source, archiveDir);
+        thread = archiver.start();
+        Thread.sleep(2000);
+        archiver.close();
+        thread.join(10_000);
+        names = archivedNames(archiveDir);
+        check(names.contains(prefix + "a/pending.txt"), "重新启动后没有归档日志中的文件：" + names);
+        check(!names.contains(prefix + "a/untouched.txt"), "重新启动后归档了未变化的文件：" + names);
+        String content = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8);
+        check(content.startsWith("@") && !content.contains("pending.txt"), "归档后日志没有更新：" + content);
+    }
+
+    private static ContinuousArchiver newArchiver(Path source, File archiveDir) throws Exception {
+        ContinuousArchiver archiver = new ContinuousArchiver(
+                newCompressor(1024), source.toFile(), archiveDir);
+        archiver.setDebounce(200);
+        archiver.setRollPolicy(1 << 20, 500);
+        return archiver;
+    }
+
+    /**
+     * @return 归档目录中所有zip文件的条目名
+     */
+    private static Set<String> archivedNames(File archiveDir) throws Exception {
+        Set<String> names = new HashSet<>();
+        for (File file : archiveDir.listFiles((dir, name) -> name.endsWith(".zip"))) {
+            try (ZipFile zipFile = new ZipFile(file, StandardCharsets.UTF_8)) {
+                zipFile.stream().forEach(entry -> names.add(entry.getName()));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,119 @@
+package ZipTest;
+
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 增量压缩与合并：完整压缩包之后生成两个增量压缩包，增量包中只有修改或新增的文件；
+ * 依次合并到空目录与已解压基准的目录，结果都与最终的源目录一致，被删除的文件不再存在，删除后重新添加的文件保留
+ */
+public class DeltaArchiveTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("delta-archive");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source.resolve("sub"));
+        long time = System.currentTimeMillis() - 3_600_000;
+        write(source.resolve("keep.txt"), "不变的文件", time);
+        write(source.resolve("modify.txt"), "第一版", time);
+        write(source.resolve("sub").resolve("gone.txt"), "将被删除", time);
+        write(source.resolve("back.txt"), "删除后重新添加", time);
+
+        ZipCompressor compressor = newCompressor();
+        File base = dir.resolve("base.zip").toFile();
+        compressor.packFiles(new File[]{source.toFile()}, base);
+
+        //第一次增量：修改、删除、新增
+        write(source.resolve("modify.txt"), "第二版，长度不同", time + 60_000);
+        Files.delete(source.resolve("sub").resolve("gone.txt"));
+        Files.delete(source.resolve("back.txt"));
+        write(source.resolve("new.txt"), "新增的文件", time + 60_000);
+        File delta1 = dir.resolve("delta1.zip").toFile();
+        compressor.packDelta(new File[]{source.toFile()}, base, delta1);
+        check(fileNames(delta1).equals(Set.of("modify.txt", "new.txt")), "第一个增量包的条目错误：" + fileNames(delta1));
+
+        //第二次增量：再次修改，重新添加被删除的文件
+        write(source.resolve("modify.txt"), "第三版", time + 120_000);
+        write(source.resolve("back.txt"), "重新添加的内容", time + 120_000);
+        File delta2 = dir.resolve("delta2.zip").toFile();
+        compressor.packDelta(new File[]{source.toFile()}, delta1, delta2);
+        check(fileNames(delta2).equals(Set.of("modify.txt", "back.txt")), "第二个增量包的条目错误：" + fileNames(delta2));
+
+        Map<String, String> expected = snapshot(source);
+        File[] deltas = {delta1, delta2};
+
+        //合并到空目录
+        ZipDecompressor decompressor = newDecompressor();
+        Path empty = dir.resolve("empty");
+        decompressor.applyDeltas(base, deltas, empty.toFile());
+        Map<String, String> merged = snapshot(empty.resolve(dir.getFileName()).resolve("src"));
+        check(expected.equals(merged), "合并到空目录的结果不一致：" + merged);
+
+        //合并到已解压基准的目录，被删除的文件需要删除
+        Path existing = dir.resolve("existing");
+        decompressor.unpack(base, existing.toFile());
+        Path root = existing.resolve(dir.getFileName()).resolve("src");
+        check(Files.exists(root.resolve("sub").resolve("gone.txt")), "基准中没有将被删除的文件");
+        decompressor.applyDeltas(base, deltas, existing.toFile());
+        merged = snapshot(root);
+        check(expected.equals(merged), "合并到已解压目录的结果不一致：" + merged);
+    }
+
+    private static void write(Path file, String content, long time) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+    }
+
+    /**
+     * @return 压缩包中文件条目的文件名，不包括清单
+     */
+    private static Set<String> fileNames(File archive) throws Exception {
+        try (ZipFile zipFile = new ZipFile(archive, StandardCharsets.UTF_8)) {
+            return zipFile.stream()
+                    .filter(entry -> !entry.isDirectory() && entry.getName().contains("/src/"))
+                    .map(entry -> entry.getName().substring(entry.getName().lastIndexOf('/') + 1))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * @return 目录中所有文件的相对路径与内容
+     */
+    private static Map<String, String> snapshot(Path root) throws Exception {
+        Map<String, String> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isRegularFile).toArray(Path[]::new)) {
+                files.put(root.relativize(path).toString().replace(File.separatorChar, '/'),
+                        new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+}
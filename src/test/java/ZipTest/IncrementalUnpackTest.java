@@ -0,0 +1,83 @@
+package ZipTest;
+
+import zip.core.UnpackStatistics;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 增量解压：再次解压到同一目录时，大小与修改时间相同的文件被跳过；
+ * 开启CRC校验时，只有修改时间不同的文件以CRC32为准跳过，内容被改动的文件重新写入
+ */
+public class IncrementalUnpackTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("incremental-unpack");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source.resolve("sub"));
+        String[] names = {"a.txt", "b.txt", "c.txt", "sub/d.txt"};
+        for (String name : names) {
+            Files.write(source.resolve(name), ("内容：" + name).repeat(100).getBytes(StandardCharsets.UTF_8));
+        }
+        File archive = dir.resolve("test.zip").toFile();
+        newCompressor().packFiles(new File[]{source.toFile()}, archive);
+
+        Path out = dir.resolve("out");
+        ZipDecompressor decompressor = newDecompressor();
+        decompressor.unpack(archive, out.toFile());
+        UnpackStatistics statistics = decompressor.getStatistics();
+        check(statistics.getWritten() == names.length, "第一次解压写入的文件数量错误：" + statistics);
+
+        //再次解压，所有文件都未变化
+        decompressor.setIncrementalModel(true, false);
+        decompressor.unpack(archive, out.toFile());
+        statistics = decompressor.getStatistics();
+        check(statistics.getSkipped() == names.length && statistics.getWritten() == 0
+                && statistics.getReplaced() == 0, "未变化的文件没有全部跳过：" + statistics);
+
+        //a.txt只修改时间不同，b.txt大小相同但内容被改动
+        Path root = out.resolve(dir.getFileName()).resolve("src");
+        long old = System.currentTimeMillis() - 3_600_000;
+        Files.setLastModifiedTime(root.resolve("a.txt"), FileTime.fromMillis(old));
+        byte[] original = Files.readAllBytes(root.resolve("b.txt"));
+        byte[] changed = original.clone();
+        changed[changed.length / 2] ^= 1;
+        Files.write(root.resolve("b.txt"), changed);
+        Files.setLastModifiedTime(root.resolve("b.txt"), FileTime.fromMillis(old));
+
+        decompressor.setIncrementalModel(true, true);
+        decompressor.unpack(archive, out.toFile());
+        statistics = decompressor.getStatistics();
+        check(statistics.getSkipped() == names.length - 1 && statistics.getReplaced() == 1,
+                "CRC校验时跳过或重新写入的文件数量错误：" + statistics);
+        check(Arrays.equals(original, Files.readAllBytes(root.resolve("b.txt"))), "被改动的文件没有恢复");
+
+        //关闭CRC校验时，修改时间不同的文件都重新写入
+        Files.setLastModifiedTime(root.resolve("a.txt"), FileTime.fromMillis(old));
+        decompressor.setIncrementalModel(true, false);
+        decompressor.unpack(archive, out.toFile());
+        statistics = decompressor.getStatistics();
+        check(statistics.getSkipped() == names.length - 1 && statistics.getReplaced() == 1,
+                "不校验CRC时跳过或重新写入的文件数量错误：" + statistics);
+    }
+}
@@ -0,0 +1,82 @@
+package ZipTest;
+
+import zip.config.FsyncPolicy;
+import zip.core.IoThrottle;
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 读写限速：按流读取、按内存映射窗口读取的压缩，以及流解压、FileChannel解压，
+ * 耗时都不少于数据量按限额计算的时间减去1秒的突发额度，并记录了限速等待时间
+ */
+public class IoThrottleTest {
+
+    /**
+     * 限额，MB/s
+     */
+    private static final double RATE = 2;
+
+    private static final int SIZE = 4 << 20;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("io-throttle");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source);
+        //随机数据几乎不能压缩，压缩与解压时读写的数据量都不少于原始大小
+        byte[] data = new byte[SIZE];
+        new Random(11).nextBytes(data);
+        Files.write(source.resolve("random.bin"), data);
+        long minMillis = (long) ((SIZE / (RATE * 1048576) - 1) * 1000);
+
+        File archive = dir.resolve("test.zip").toFile();
+        for (boolean mapped : new boolean[]{false, true}) {
+            ZipCompressor compressor = newCompressor();
+            if (mapped) {
+                compressor.setMappedModel(1 << 20, 64 << 20);
+            }
+            compressor.setThrottle(new IoThrottle(RATE, 0));
+            long start = System.nanoTime();
+            compressor.packFiles(new File[]{source.toFile()}, archive);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println((mapped ? "内存映射" : "流") + "压缩耗时：" + millis + "ms");
+            check(millis >= minMillis, "压缩没有限速：" + millis + "ms");
+            check(compressor.getStatistics().getThrottledMillis() > 0, "压缩没有记录限速等待时间");
+        }
+
+        for (boolean channel : new boolean[]{false, true}) {
+            ZipDecompressor decompressor = newDecompressor();
+            decompressor.setChannelModel(channel, FsyncPolicy.NONE, 0);
+            decompressor.setThrottle(new IoThrottle(RATE, 0));
+            Path out = dir.resolve("out-" + channel);
+            long start = System.nanoTime();
+            decompressor.unpack(archive, out.toFile());
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println((channel ? "FileChannel" : "流") + "解压耗时：" + millis + "ms");
+            check(millis >= minMillis, "解压没有限速：" + millis + "ms");
+            check(decompressor.getStatistics().getThrottledMillis() > 0, "解压没有记录限速等待时间");
+            check(Arrays.equals(data, Files.readAllBytes(out.resolve(dir.getFileName()).resolve("src")
+                    .resolve("random.bin"))), "解压内容不一致");
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ZipTest;
+
+import zip.config.FsyncPolicy;
+import zip.core.ArchiveCache;
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * LZ4压缩方式：空文件、不足一个匹配的短文件、正好一个块、一个块加1字节、高度重复以及随机（按原样保存的块）的数据，
+ * 以默认压缩方式与按规则选择两种方式压缩，通过流解压、FileChannel解压与条目访问缓存读取都与原文件一致
+ */
+public class Lz4CodecTest {
+
+    /**
+     * LZ4在zip中的压缩方式编号
+     */
+    private static final int LZ4_METHOD = 0x4C34;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("lz4-codec");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source.resolve("sub"));
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        byte[] random = new byte[300_000];
+        new Random(17).nextBytes(random);
+        byte[] repeated = "LZ4重复的内容，".repeat(40_000).getBytes(StandardCharsets.UTF_8);
+        byte[] block = new byte[64 << 10];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (i % 253 ^ i >>> 9);
+        }
+        byte[] blockPlusOne = Arrays.copyOf(block, block.length + 1);
+        blockPlusOne[block.length] = 42;
+        files.put("empty.bin", new byte[0]);
+        files.put("tiny.bin", "twelve bytes".getBytes(StandardCharsets.US_ASCII));
+        files.put("block.bin", block);
+        files.put("block1.bin", blockPlusOne);
+        files.put("repeated.txt", repeated);
+        files.put("sub/random.dat", random);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Files.write(source.resolve(file.getKey()), file.getValue());
+        }
+        String prefix = dir.getFileName() + "/src/";
+
+        //默认使用LZ4
+        File all = dir.resolve("all.zip").toFile();
+        ZipCompressor compressor = newCompressor();
+        compressor.setCodec("lz4", null);
+        compressor.packFiles(new File[]{source.toFile()}, all);
+        Map<String, long[]> entries = centralDirectory(all, prefix);
+        for (String name : files.keySet()) {
+            check(entries.get(name)[0] == LZ4_METHOD, "“" + name + "”没有使用LZ4：" + entries.get(name)[0]);
+        }
+        check(entries.get("repeated.txt")[1] < repeated.length / 10, "重复的数据没有被压缩");
+        //随机数据的块按原样保存，只多出每块8字节的块头
+        check(entries.get("sub/random.dat")[1] <= random.length + (random.length / (64 << 10) + 1) * 8,
+                "随机数据没有按原样保存：" + entries.get("sub/random.dat")[1]);
+        verify(dir, all, prefix, files);
+
+        //按规则选择：.bin与sub目录下的文件使用LZ4，其余使用deflate
+        File mixed = dir.resolve("mixed.zip").toFile();
+        compressor = newCompressor();
+        compressor.setCodec("deflate", "*.bin:lz4, **/sub/*:lz4");
+        compressor.packFiles(new File[]{source.toFile()}, mixed);
+        entries = centralDirectory(mixed, prefix);
+        for (String name : files.keySet()) {
+            int expected = name.endsWith(".txt") ? ZipEntry.DEFLATED : LZ4_METHOD;
+            check(entries.get(name)[0] == expected, "“" + name + "”的压缩方式错误：" + entries.get(name)[0]);
+        }
+        verify(dir, mixed, prefix, files);
+    }
+
+    /**
+     * 通过流解压、FileChannel解压与条目访问缓存读取，与原文件比较
+     */
+    private static void verify(Path dir, File archive, String prefix, Map<String, byte[]> files) throws Exception {
+        for (boolean channel : new boolean[]{false, true}) {
+            ZipDecompressor decompressor = newDecompressor();
+            decompressor.setChannelModel(channel, FsyncPolicy.NONE, 0);
+            Path out = dir.resolve("out-" + archive.getName() + "-" + channel);
+            decompressor.unpack(archive, out.toFile());
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                byte[] data = Files.readAllBytes(out.resolve(prefix).resolve(file.getKey()));
+                check(Arrays.equals(file.getValue(), data), (channel ? "FileChannel" : "流") + "解压“"
+                        + file.getKey() + "”内容不一致：" + archive.getName());
+            }
+        }
+        try (ArchiveCache cache = newDecompressor().openCache(1 << 20, false)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                check(Arrays.equals(file.getValue(), cache.readBytes(archive, prefix + file.getKey())),
+                        "缓存读取“" + file.getKey() + "”内容不一致：" + archive.getName());
+            }
+        }
+    }
+
+    /**
+     * 直接读取中央目录：JDK的ZipFile不接受未知的压缩方式编号
+     *
+     * @return 文件条目相对于源目录的名称与 {压缩方式编号, 压缩后大小}
+     */
+    private static Map<String, long[]> centralDirectory(File archive, String prefix) throws Exception {
+        Map<String, long[]> entries = new LinkedHashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            //没有注释时，结束标志是最后22字节
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(end, file.length() - 22);
+            check(end.getInt(0) == 0x06054b50, "没有中央目录结束标志");
+            ByteBuffer buffer = ByteBuffer.allocate(end.getInt(12)).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(buffer, end.getInt(16) & 0xFFFFFFFFL);
+            buffer.flip();
+            while (buffer.remaining() >= 46 && buffer.getInt(buffer.position()) == 0x02014b50) {
+                int start = buffer.position();
+                int method = buffer.getShort(start + 10) & 0xFFFF;
+                long compressedSize = buffer.getInt(start + 20) & 0xFFFFFFFFL;
+                int nameLength = buffer.getShort(start + 28) & 0xFFFF;
+                int extraLength = buffer.getShort(start + 30) & 0xFFFF;
+                int commentLength = buffer.getShort(start + 32) & 0xFFFF;
+                byte[] name = new byte[nameLength];
+                buffer.position(start + 46);
+                buffer.get(name);
+                String entryName = new String(name, StandardCharsets.UTF_8);
+                if (!entryName.endsWith("/")) {
+                    entries.put(entryName.substring(prefix.length()), new long[]{method, compressedSize});
+                }
+                buffer.position(start + 46 + nameLength + extraLength + commentLength);
+            }
+        }
+        return entries;
+    }
+}
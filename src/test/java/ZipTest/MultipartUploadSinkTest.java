@@ -0,0 +1,192 @@
+package ZipTest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import zip.core.MultipartUploadSink;
+import zip.core.ZipCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * 分段上传：使用本地HttpServer模拟对象存储的分段上传接口，
+ * 检查开始上传、分段上传（第2段第一次返回500后重试）、合并，以及在其他线程中取消时发送DELETE
+ */
+public class MultipartUploadSinkTest {
+
+    private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>(.*?)</ETag>");
+
+    /**
+     * 对象名 -> 分段编号 -> 数据
+     */
+    private static final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private static final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    private static final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private static final AtomicReference<String> deleted = new AtomicReference<>();
+
+    /**
+     * 对象名为 slow 的分段在该门闩打开前不返回
+     */
+    private static final CountDownLatch slow = new CountDownLatch(1);
+
+    public static void main(String[] args) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", MultipartUploadSinkTest::handle);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/bucket/";
+        Path dir = tempDirectory("multipart");
+        try {
+            //直接写入，每段1000字节
+            byte[] data = new byte[4500];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31);
+            }
+            MultipartUploadSink sink = new MultipartUploadSink(URI.create(base + "plain"), null, 1000, 2, 3);
+            for (int i = 0; i < data.length; i += 700) {
+                sink.write(ByteBuffer.wrap(data, i, Math.min(700, data.length - i)));
+            }
+            sink.close();
+            check(Arrays.equals(data, objects.get("plain")), "合并后的对象内容不一致");
+            check(attempts.get("plain-2").get() == 2, "第2段没有重试：" + attempts.get("plain-2"));
+            check(uploads.get("plain").size() == 5, "分段数量错误：" + uploads.get("plain").size());
+
+            //压缩后上传，上传的对象是完整的zip文件
+            Path source = dir.resolve("src");
+            Files.createDirectories(source);
+            for (int i = 0; i < 20; i++) {
+                Files.write(source.resolve("file" + i + ".txt"), ("内容" + i).repeat(500).getBytes(StandardCharsets.UTF_8));
+            }
+            ZipCompressor compressor = newCompressor(1024);
+            compressor.packFiles(new File[]{source.toFile()},
+                    new MultipartUploadSink(URI.create(base + "archive"), null, 4096, 2, 3));
+            Path archive = dir.resolve("archive.zip");
+            Files.write(archive, objects.get("archive"));
+            try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+                check(zipFile.stream().filter(entry -> !entry.isDirectory()).count() == 20, "上传的zip条目数量错误");
+            }
+
+            //所有分段缓冲区都在上传时写入阻塞，在其他线程中取消
+            MultipartUploadSink slowSink = new MultipartUploadSink(URI.create(base + "slow"), null, 1000, 1, 0);
+            AtomicReference<Throwable> writeError = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    slowSink.write(ByteBuffer.wrap(new byte[10_000]));
+                } catch (Throwable e) {
+                    writeError.set(e);
+                }
+            });
+            writer.start();
+            Thread.sleep(500);
+            long start = System.nanoTime();
+            slowSink.abort();
+            long abortMillis = (System.nanoTime() - start) / 1_000_000;
+            writer.join(5000);
+            slow.countDown();
+            check(abortMillis < 2000, "取消等待了阻塞中的写入：" + abortMillis + "ms");
+            check(!writer.isAlive() && writeError.get() instanceof IOException, "取消后写入没有失败：" + writeError.get());
+            check("slow-upload".equals(deleted.get()), "取消时没有发送DELETE");
+            System.out.println("取消耗时：" + abortMillis + "ms，写入异常：" + writeError.get());
+        } finally {
+            slow.countDown();
+            server.stop(0);
+            executor.shutdownNow();
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        String object = exchange.getRequestURI().getPath().substring("/bucket/".length());
+        String query = exchange.getRequestURI().getQuery();
+        byte[] body = readAll(exchange.getRequestBody());
+        String method = exchange.getRequestMethod();
+        if ("POST".equals(method) && "uploads".equals(query)) {
+            uploads.put(object, new ConcurrentHashMap<>());
+            respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + object
+                    + "-upload</UploadId></InitiateMultipartUploadResult>");
+        } else if ("PUT".equals(method)) {
+            int partNumber = Integer.parseInt(query.replaceAll(".*partNumber=(\\d+).*", "$1"));
+            int attempt = attempts.computeIfAbsent(object + "-" + partNumber, key -> new AtomicInteger()).incrementAndGet();
+            if ("slow".equals(object)) {
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (partNumber == 2 && attempt == 1) {
+                respond(exchange, 500, "<Error>InternalError</Error>");
+                return;
+            }
+            uploads.get(object).put(partNumber, body);
+            exchange.getResponseHeaders().add("ETag", "\"etag-" + partNumber + "\"");
+            respond(exchange, 200, "");
+        } else if ("POST".equals(method)) {
+            Map<Integer, byte[]> parts = uploads.get(object);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Matcher matcher = PART.matcher(new String(body, StandardCharsets.UTF_8));
+            int expected = 1;
+            while (matcher.find()) {
+                int partNumber = Integer.parseInt(matcher.group(1));
+                if (partNumber != expected++ || !matcher.group(2).contains("etag-" + partNumber)) {
+                    respond(exchange, 400, "<Error>InvalidPart</Error>");
+                    return;
+                }
+                out.write(parts.get(partNumber));
+            }
+            objects.put(object, out.toByteArray());
+            respond(exchange, 200, "<CompleteMultipartUploadResult/>");
+        } else if ("DELETE".equals(method)) {
+            deleted.set(query.replaceAll(".*uploadId=", ""));
+            uploads.remove(object);
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        } else {
+            respond(exchange, 405, "");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ZipTest;
+
+import zip.config.FsyncPolicy;
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static ZipTest.TestSupport.check;
+import static ZipTest.TestSupport.delete;
+import static ZipTest.TestSupport.newCompressor;
+import static ZipTest.TestSupport.newDecompressor;
+import static ZipTest.TestSupport.tempDirectory;
+
+/**
+ * deflate检查点：带检查点索引压缩后，按段并行解压与按范围读取的结果都与原始数据一致，
+ * 检查点之间、跨越检查点以及超出结尾的范围都需要正确处理
+ */
+public class SeekIndexTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = tempDirectory("seek-index");
+        try {
+            run(dir);
+        } finally {
+            delete(dir);
+        }
+        System.out.println("finish");
+    }
+
+    private static void run(Path dir) throws Exception {
+        Path source = dir.resolve("src");
+        Files.createDirectories(source);
+        //一半可压缩、一半随机的数据，长度不是检查点间隔的整数倍
+        byte[] data = new byte[(3 << 20) + 12345];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i % (1 << 16) < (1 << 15) ? (byte) (i % 97) : (byte) random.nextInt();
+        }
+        Files.write(source.resolve("big.bin"), data);
+
+        File archive = dir.resolve("test.zip").toFile();
+        ZipCompressor compressor = newCompressor();
+        compressor.setSeekInterval(256 << 10);
+        compressor.packFiles(new File[]{source.toFile()}, archive);
+
+        String name = dir.getFileName() + "/src/big.bin";
+        //检查点索引保存在中央目录的扩展字段中（0x534B）
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry entry = zipFile.getEntry(name);
+            byte[] extra = entry.getExtra();
+            check(extra != null && extra.length > 4 && extra[0] == 0x4B && extra[1] == 0x53, "没有写入检查点索引");
+        }
+
+        ZipDecompressor decompressor = newDecompressor();
+        decompressor.setChannelModel(true, FsyncPolicy.NONE, 1 << 20);
+        decompressor.setParallelModel(4);
+        Path out = dir.resolve("out");
+        decompressor.unpack(archive, out.toFile());
+        byte[] unpacked = Files.readAllBytes(out.resolve(dir.getFileName()).resolve("src").resolve("big.bin"));
+        check(Arrays.equals(data, unpacked), "按段并行解压的内容不一致");
+
+        long[][] ranges = {
+                {0, 100},
+                {(256 << 10) - 10, 20},
+                {(256 << 10), 256 << 10},
+                {1_000_000, 700_000},
+                {data.length - 50, 100},
+                {data.length, 10},
+        };
+        for (long[] range : ranges) {
+            byte[] read = decompressor.readRange(archive, name, range[0], (int) range[1]);
+            int from = (int) Math.min(range[0], data.length);
+            int to = (int) Math.min(range[0] + range[1], data.length);
+            check(Arrays.equals(Arrays.copyOfRange(data, from, to), read),
+                    "范围读取不一致：" + range[0] + "+" + range[1]);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ZipTest;
+
+import zip.core.ZipCompressor;
+import zip.core.ZipDecompressor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 测试共用的检查、临时目录与压缩器、解压器的创建
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * 创建临时目录，测试结束后需要通过 {@link #delete(Path)} 删除
+     */
+    static Path tempDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix);
+    }
+
+    /**
+     * 删除目录及其中的所有文件，删除失败的文件忽略
+     */
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * @return UTF-8编码、覆盖模式、压缩等级6的压缩器
+     */
+    static ZipCompressor newCompressor() {
+        return newCompressor(4096);
+    }
+
+    static ZipCompressor newCompressor(int bufferSize) {
+        return new ZipCompressor(bufferSize, 6, StandardCharsets.UTF_8, true);
+    }
+
+    /**
+     * @return UTF-8编码、覆盖模式的解压器
+     */
+    static ZipDecompressor newDecompressor() {
+        ZipDecompressor decompressor = new ZipDecompressor();
+        decompressor.reset(4096, true, StandardCharsets.UTF_8);
+        return decompressor;
+    }
+
+    /**
+     * @return 有规律的可压缩数据
+     */
+    static byte[] data(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((i / 31 * seed) ^ (i % 7));
+        }
+        return data;
+    }
+}